@@ -1,13 +1,13 @@
 package org.gammastrike.proxy.api;
 
 import java.io.Serializable;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.UUID;
 import java.util.function.Function;
 
 import javax.enterprise.inject.Instance;
 
+import org.gammastrike.util.MethodDispatcher;
 import org.gammastrike.value.BeanIdentifier;
 
 public interface BeanInvoker<T> {
@@ -21,13 +21,16 @@ public interface BeanInvoker<T> {
 		private Method method;
 		private Object[] parameters;
 
+		public Invocation(UUID proxyIdentity, BeanIdentifier<? extends T> beanIdentifier, Method method, Object[] parameters) {
+			this.proxyIdentity = proxyIdentity;
+			this.beanIdentifier = beanIdentifier;
+			this.method = method;
+			this.parameters = parameters;
+		}
+
 		@SuppressWarnings("unchecked")
 		public R performOn(T target) throws Throwable {
-			try {
-				return (R) method.invoke(target, parameters);
-			} catch (InvocationTargetException e) {
-				throw e.getCause();
-			}
+			return (R) MethodDispatcher.invoke(method, target, parameters);
 		}
 
 		public UUID getProxyIdentity() {
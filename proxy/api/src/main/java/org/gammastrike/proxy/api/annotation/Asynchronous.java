@@ -0,0 +1,17 @@
+package org.gammastrike.proxy.api.annotation;
+
+import static java.lang.annotation.ElementType.METHOD;
+import static java.lang.annotation.ElementType.TYPE;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks methods of a proxied type, or all methods of it, to be performed asynchronously, even if they do not return a future. Such methods have to return
+ * <code>void</code> and are performed without waiting for their completion.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ TYPE, METHOD })
+public @interface Asynchronous {
+}
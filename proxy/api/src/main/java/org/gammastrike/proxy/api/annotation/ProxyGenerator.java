@@ -0,0 +1,26 @@
+package org.gammastrike.proxy.api.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import javax.enterprise.util.AnnotationLiteral;
+import javax.inject.Qualifier;
+
+/**
+ * Qualifies the {@link org.gammastrike.proxy.api.ProxyFactory} implementations, that generate proxy classes. Injection points without a qualifier get the
+ * caching factory, that decorates the generator.
+ */
+@Qualifier
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.TYPE, ElementType.FIELD, ElementType.METHOD, ElementType.PARAMETER })
+public @interface ProxyGenerator {
+
+	class Literal extends AnnotationLiteral<ProxyGenerator> implements ProxyGenerator {
+
+		private static final long serialVersionUID = 1L;
+	}
+
+	ProxyGenerator INSTANCE = new Literal();
+}
@@ -6,7 +6,9 @@ import javax.enterprise.context.ApplicationScoped;
 
 import org.apache.commons.proxy.invoker.InvocationHandlerAdapter;
 import org.gammastrike.proxy.api.ProxyFactory;
+import org.gammastrike.proxy.api.annotation.ProxyGenerator;
 
+@ProxyGenerator
 @ApplicationScoped
 public class ApacheCommonsProxyFactory implements ProxyFactory {
 
@@ -0,0 +1,274 @@
+package org.gammastrike.proxy.impl;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Alternative;
+
+import org.apache.deltaspike.proxy.asm5.ClassWriter;
+import org.apache.deltaspike.proxy.asm5.Label;
+import org.apache.deltaspike.proxy.asm5.Opcodes;
+import org.apache.deltaspike.proxy.asm5.Type;
+import org.apache.deltaspike.proxy.asm5.commons.GeneratorAdapter;
+import org.gammastrike.proxy.api.ProxyFactory;
+import org.gammastrike.proxy.api.annotation.ProxyGenerator;
+
+/**
+ * A {@link ProxyFactory} generating a proxy class per class loader and interface list with ASM. Each proxied method gets a static final dispatch slot in
+ * the generated class, that holds its {@link Method}, so calls go straight to the {@link InvocationHandler} without any lookup or adapter in between. Calls
+ * still pay for the handler's generic signature, though: arguments are boxed into an <code>Object[]</code> and dispatched by {@link Method}. Like JDK
+ * proxies, checked exceptions not declared by the called method are wrapped in an {@link UndeclaredThrowableException}.
+ * <p>
+ * Generated classes are cached with weak references to both the class loader and the class, so the cache never keeps an application alive. Proxies of
+ * non-public interfaces cannot be generated into a package of their own and are created through {@link Proxy} instead.
+ * <p>
+ * Select this alternative in the application's <code>beans.xml</code> to replace {@link ApacheCommonsProxyFactory} as the {@link ProxyGenerator}, that
+ * {@link CachingProxyFactory} decorates.
+ */
+@Alternative
+@ProxyGenerator
+@ApplicationScoped
+public class AsmProxyFactory implements ProxyFactory {
+
+	private static class ProxyClassLoader extends ClassLoader {
+
+		public ProxyClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		public Class<?> define(String name, byte[] bytecode) {
+			return defineClass(name, bytecode, 0, bytecode.length);
+		}
+	}
+
+	private static final String HANDLER_FIELD = "handler";
+	private static final String SLOT_PREFIX = "slot";
+	private static final String PROXY_PACKAGE = "org/gammastrike/proxy/generated/";
+
+	private static final Type HANDLER_TYPE = Type.getType(InvocationHandler.class);
+	private static final Type METHOD_TYPE = Type.getType(Method.class);
+	private static final Type OBJECT_TYPE = Type.getType(Object.class);
+	private static final Type THROWABLE_TYPE = Type.getType(Throwable.class);
+	private static final Type UNDECLARED_TYPE = Type.getType(UndeclaredThrowableException.class);
+	private static final org.apache.deltaspike.proxy.asm5.commons.Method INVOKE = org.apache.deltaspike.proxy.asm5.commons.Method
+			.getMethod("Object invoke(Object, java.lang.reflect.Method, Object[])");
+	private static final org.apache.deltaspike.proxy.asm5.commons.Method UNDECLARED_CONSTRUCTOR = org.apache.deltaspike.proxy.asm5.commons.Method
+			.getMethod("void <init>(Throwable)");
+
+	private static final AtomicInteger PROXY_COUNTER = new AtomicInteger();
+
+	private static final ClassValue<Constructor<?>> CONSTRUCTORS = new ClassValue<Constructor<?>>() {
+
+		@Override
+		protected Constructor<?> computeValue(Class<?> type) {
+			try {
+				return type.getConstructor(InvocationHandler.class);
+			} catch (NoSuchMethodException e) {
+				throw new IllegalStateException("Generated proxy " + type + " has no handler constructor", e);
+			}
+		}
+	};
+
+	private static boolean isPublic(Class<?>[] interfaces) {
+		for (Class<?> type : interfaces) {
+			if (!type.isInterface()) {
+				throw new IllegalArgumentException(type + " is no interface");
+			}
+			if (!Modifier.isPublic(type.getModifiers())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static List<String> namesOf(Class<?>[] interfaces) {
+		String[] names = new String[interfaces.length];
+		for (int i = 0; i < interfaces.length; i++) {
+			names[i] = interfaces[i].getName();
+		}
+		return Arrays.asList(names);
+	}
+
+	private static Map<String, Method> proxiedMethods(Class<?>[] interfaces) throws NoSuchMethodException {
+		Map<String, Method> methods = new LinkedHashMap<>();
+		methods.put("hashCode()I", Object.class.getMethod("hashCode"));
+		methods.put("equals(Ljava/lang/Object;)Z", Object.class.getMethod("equals", Object.class));
+		methods.put("toString()Ljava/lang/String;", Object.class.getMethod("toString"));
+		for (Class<?> type : interfaces) {
+			for (Method method : type.getMethods()) {
+				if (!Modifier.isStatic(method.getModifiers())) {
+					methods.putIfAbsent(method.getName() + Type.getMethodDescriptor(method), method);
+				}
+			}
+		}
+		return methods;
+	}
+
+	private final Map<ClassLoader, Map<List<String>, WeakReference<Class<?>>>> proxyClasses = new WeakHashMap<>();
+
+	@Override
+	public Object createProxy(ClassLoader classLoader, InvocationHandler handler, Class<?>[] proxyClasses) {
+		if (!isPublic(proxyClasses)) {
+			return Proxy.newProxyInstance(classLoader, proxyClasses, handler);
+		}
+		try {
+			return CONSTRUCTORS.get(proxyClass(classLoader, proxyClasses)).newInstance(handler);
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException("Could not instantiate proxy for " + Arrays.toString(proxyClasses), e);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Could not generate proxy for " + Arrays.toString(proxyClasses), e);
+		}
+	}
+
+	private Class<?> generate(ClassLoader classLoader, Class<?>[] interfaces) throws ReflectiveOperationException {
+		String internalName = PROXY_PACKAGE + "Proxy$" + PROXY_COUNTER.incrementAndGet();
+		String[] interfaceNames = new String[interfaces.length];
+		for (int i = 0; i < interfaces.length; i++) {
+			interfaceNames[i] = Type.getInternalName(interfaces[i]);
+		}
+		Map<String, Method> methods = proxiedMethods(interfaces);
+
+		ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS) {
+			@Override
+			protected String getCommonSuperClass(String first, String second) {
+				return OBJECT_TYPE.getInternalName();
+			}
+		};
+		writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL | Opcodes.ACC_SUPER, internalName, null, OBJECT_TYPE.getInternalName(), interfaceNames);
+		writer.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, HANDLER_FIELD, HANDLER_TYPE.getDescriptor(), null, null).visitEnd();
+		for (int slot = 0; slot < methods.size(); slot++) {
+			writer.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, SLOT_PREFIX + slot, METHOD_TYPE.getDescriptor(), null, null).visitEnd();
+		}
+
+		Type proxyType = Type.getObjectType(internalName);
+		org.apache.deltaspike.proxy.asm5.commons.Method constructor = new org.apache.deltaspike.proxy.asm5.commons.Method("<init>", Type.VOID_TYPE,
+				new Type[] { HANDLER_TYPE });
+		GeneratorAdapter init = new GeneratorAdapter(Opcodes.ACC_PUBLIC, constructor, null, null, writer);
+		init.loadThis();
+		init.invokeConstructor(OBJECT_TYPE, org.apache.deltaspike.proxy.asm5.commons.Method.getMethod("void <init>()"));
+		init.loadThis();
+		init.loadArg(0);
+		init.putField(proxyType, HANDLER_FIELD, HANDLER_TYPE);
+		init.returnValue();
+		init.endMethod();
+
+		generateSlots(writer, proxyType, methods.values());
+		int slot = 0;
+		for (Method method : methods.values()) {
+			generateMethod(writer, proxyType, method, slot++);
+		}
+		writer.visitEnd();
+
+		ProxyClassLoader loader = new ProxyClassLoader(classLoader);
+		return loader.define(internalName.replace('/', '.'), writer.toByteArray());
+	}
+
+	private void generateMethod(ClassWriter writer, Type proxyType, Method method, int slot) {
+		org.apache.deltaspike.proxy.asm5.commons.Method signature = org.apache.deltaspike.proxy.asm5.commons.Method.getMethod(method);
+		Class<?>[] exceptionTypes = method.getExceptionTypes();
+		Type[] exceptions = new Type[exceptionTypes.length];
+		for (int i = 0; i < exceptionTypes.length; i++) {
+			exceptions[i] = Type.getType(exceptionTypes[i]);
+		}
+		GeneratorAdapter generator = new GeneratorAdapter(Opcodes.ACC_PUBLIC | Opcodes.ACC_FINAL, signature, null, exceptions, writer);
+		Label start = generator.mark();
+
+		generator.loadThis();
+		generator.getField(proxyType, HANDLER_FIELD, HANDLER_TYPE);
+		generator.loadThis();
+		generator.getStatic(proxyType, SLOT_PREFIX + slot, METHOD_TYPE);
+		if (signature.getArgumentTypes().length == 0) {
+			generator.visitInsn(Opcodes.ACONST_NULL);
+		} else {
+			generator.loadArgArray();
+		}
+		generator.invokeInterface(HANDLER_TYPE, INVOKE);
+		Type returnType = signature.getReturnType();
+		if (returnType.getSort() == Type.VOID) {
+			generator.pop();
+		} else {
+			generator.unbox(returnType);
+		}
+		generator.returnValue();
+		Label end = generator.mark();
+
+		List<Type> rethrown = new ArrayList<>();
+		rethrown.add(Type.getType(RuntimeException.class));
+		rethrown.add(Type.getType(Error.class));
+		rethrown.addAll(Arrays.asList(exceptions));
+		for (Type exception : rethrown) {
+			generator.catchException(start, end, exception);
+			generator.throwException();
+		}
+		generator.catchException(start, end, THROWABLE_TYPE);
+		int failure = generator.newLocal(THROWABLE_TYPE);
+		generator.storeLocal(failure);
+		generator.newInstance(UNDECLARED_TYPE);
+		generator.dup();
+		generator.loadLocal(failure);
+		generator.invokeConstructor(UNDECLARED_TYPE, UNDECLARED_CONSTRUCTOR);
+		generator.throwException();
+		generator.endMethod();
+	}
+
+	/**
+	 * Generates the static initializer, that looks up each slot's {@link Method} once through {@link Class#getMethod(String, Class...)}, so the slots can be
+	 * final and constant to the JIT.
+	 */
+	private void generateSlots(ClassWriter writer, Type proxyType, Iterable<Method> methods) {
+		org.apache.deltaspike.proxy.asm5.commons.Method staticInit = org.apache.deltaspike.proxy.asm5.commons.Method.getMethod("void <clinit>()");
+		org.apache.deltaspike.proxy.asm5.commons.Method getMethod = org.apache.deltaspike.proxy.asm5.commons.Method
+				.getMethod("java.lang.reflect.Method getMethod(String, Class[])");
+		Type classType = Type.getType(Class.class);
+		GeneratorAdapter generator = new GeneratorAdapter(Opcodes.ACC_STATIC, staticInit, null, null, writer);
+		int slot = 0;
+		for (Method method : methods) {
+			Class<?>[] parameterTypes = method.getParameterTypes();
+			generator.push(Type.getType(method.getDeclaringClass()));
+			generator.push(method.getName());
+			generator.push(parameterTypes.length);
+			generator.newArray(classType);
+			for (int i = 0; i < parameterTypes.length; i++) {
+				generator.dup();
+				generator.push(i);
+				generator.push(Type.getType(parameterTypes[i]));
+				generator.arrayStore(classType);
+			}
+			generator.invokeVirtual(classType, getMethod);
+			generator.putStatic(proxyType, SLOT_PREFIX + slot++, METHOD_TYPE);
+		}
+		generator.returnValue();
+		generator.endMethod();
+	}
+
+	/**
+	 * Returns the cached proxy class for the given interfaces, or generates it. The cache holds only weak references to the class loader and the class:
+	 * the class strongly reaches its {@link ProxyClassLoader} and thereby the application's class loader.
+	 */
+	private synchronized Class<?> proxyClass(ClassLoader classLoader, Class<?>[] interfaces) throws ReflectiveOperationException {
+		Map<List<String>, WeakReference<Class<?>>> classes = proxyClasses.computeIfAbsent(classLoader, loader -> new HashMap<>());
+		List<String> key = namesOf(interfaces);
+		WeakReference<Class<?>> reference = classes.get(key);
+		Class<?> proxyClass = reference == null ? null : reference.get();
+		if (proxyClass == null) {
+			proxyClass = generate(classLoader, interfaces);
+			classes.put(key, new WeakReference<>(proxyClass));
+		}
+		return proxyClass;
+	}
+}
@@ -0,0 +1,239 @@
+package org.gammastrike.proxy.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import java.lang.reflect.Method;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import javax.enterprise.inject.Instance;
+
+import org.gammastrike.proxy.api.BeanInvoker;
+import org.gammastrike.proxy.api.annotation.Asynchronous;
+
+/**
+ * A {@link BeanInvoker} decorator, that performs invocations of methods returning a {@link CompletionStage} or {@link Future} on an executor instead of the
+ * calling thread. The caller gets a {@link CompletableFuture} at once, that completes with the outcome of the future returned by the bean. {@link Asynchronous}
+ * methods returning <code>void</code> are performed without waiting for them. All other invocations are passed to the delegate synchronously, except
+ * those of other {@link Asynchronous} methods, which are rejected with an {@link IllegalArgumentException}.
+ * <p>
+ * The executor has a bounded queue. Invocations exceeding it are rejected: their future fails with a {@link RejectedExecutionException}, or, for
+ * <code>void</code> methods, the exception is thrown to the caller. By default invocations run on virtual threads, if the runtime supports them.
+ * <p>
+ * A plain {@link Future} returned by the bean does not block an executor thread: it is polled with a growing interval by a shared daemon thread, which
+ * completes the caller's future. Cancelling the caller's future cancels the bean's.
+ * <p>
+ * Invocations run on executor threads, where the CDI request, session and conversation contexts of the caller are not active. The target factory
+ * therefore fails with a {@link javax.enterprise.context.ContextNotActiveException} for targets of those scopes. Only use this invoker for application
+ * scoped or dependent targets.
+ */
+public class AsyncBeanInvoker<T> implements BeanInvoker<T> {
+
+	private enum Dispatch {
+		FIRE_AND_FORGET, FUTURE, SYNCHRONOUS
+	}
+
+	/**
+	 * @return a factory of virtual threads, if the runtime supports them, or of daemon threads otherwise
+	 */
+	public static ThreadFactory defaultThreadFactory() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+		} catch (ReflectiveOperationException e) {
+			return runnable -> {
+				Thread thread = new Thread(runnable, "bean-invoker");
+				thread.setDaemon(true);
+				return thread;
+			};
+		}
+	}
+
+	private static Dispatch dispatchOf(Method method) {
+		Class<?> returnType = method.getReturnType();
+		if (returnType != Object.class && returnType.isAssignableFrom(CompletableFuture.class)) {
+			return Dispatch.FUTURE;
+		}
+		if (!method.isAnnotationPresent(Asynchronous.class) && !method.getDeclaringClass().isAnnotationPresent(Asynchronous.class)) {
+			return Dispatch.SYNCHRONOUS;
+		}
+		if (returnType != void.class) {
+			throw new IllegalArgumentException("Asynchronous method " + method + " must return void or a future");
+		}
+		return Dispatch.FIRE_AND_FORGET;
+	}
+
+	private static final long INITIAL_POLL_INTERVAL = TimeUnit.MICROSECONDS.toNanos(100);
+	private static final long MAXIMUM_POLL_INTERVAL = TimeUnit.MILLISECONDS.toNanos(50);
+
+	private static final ScheduledExecutorService POLLER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "bean-invoker-future-poller");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Completes the given result with the outcome of the given future once it is done, checking it again after the given interval otherwise.
+	 */
+	private static void poll(Future<?> future, CompletableFuture<Object> result, long interval) {
+		if (result.isDone()) {
+			if (result.isCancelled()) {
+				future.cancel(true);
+			}
+			return;
+		}
+		if (!future.isDone()) {
+			long next = Math.min(interval * 2, MAXIMUM_POLL_INTERVAL);
+			POLLER.schedule(() -> poll(future, result, next), interval, TimeUnit.NANOSECONDS);
+			return;
+		}
+		try {
+			result.complete(future.get());
+		} catch (ExecutionException e) {
+			result.completeExceptionally(e.getCause() != null ? e.getCause() : e);
+		} catch (CancellationException | InterruptedException e) {
+			result.completeExceptionally(e);
+		}
+	}
+
+	private static void uncaught(Throwable failure) {
+		Thread thread = Thread.currentThread();
+		thread.getUncaughtExceptionHandler().uncaughtException(thread, failure);
+	}
+
+	private final BeanInvoker<T> delegate;
+	private final ThreadPoolExecutor executor;
+	private final ConcurrentMap<Method, Dispatch> dispatches;
+	private final LongAdder rejected;
+
+	/**
+	 * @param delegate the invoker performing the invocations
+	 * @param threads the maximum number of concurrently performed invocations
+	 * @param queueCapacity the maximum number of invocations waiting for a thread
+	 */
+	public AsyncBeanInvoker(BeanInvoker<T> delegate, int threads, int queueCapacity) {
+		this(delegate, new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity), defaultThreadFactory()));
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * @param delegate the invoker performing the invocations
+	 * @param executor the executor to perform asynchronous invocations on, which should have a bounded queue and must reject invocations exceeding it
+	 */
+	public AsyncBeanInvoker(BeanInvoker<T> delegate, ThreadPoolExecutor executor) {
+		this.delegate = requireNonNull(delegate);
+		this.executor = requireNonNull(executor);
+		this.dispatches = new ConcurrentHashMap<>();
+		this.rejected = new LongAdder();
+	}
+
+	/**
+	 * Stops accepting asynchronous invocations. Already queued ones are still performed.
+	 */
+	public void close() {
+		executor.shutdown();
+	}
+
+	/**
+	 * @return the number of invocations being performed right now
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+	/**
+	 * @return the number of asynchronous invocations completed so far
+	 */
+	public long getCompletedCount() {
+		return executor.getCompletedTaskCount();
+	}
+
+	/**
+	 * @return the number of invocations waiting for a thread
+	 */
+	public int getQueuedCount() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * @return the number of invocations rejected so far, because the queue was full or the invoker was closed
+	 */
+	public long getRejectedCount() {
+		return rejected.sum();
+	}
+
+	@Override
+	public void notifyDisposed(UUID identity) {
+		delegate.notifyDisposed(identity);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <R> R perform(Invocation<T, R> invocation, Function<Instance<? super T>, T> targetFactory) {
+		switch (dispatches.computeIfAbsent(invocation.getMethod(), AsyncBeanInvoker::dispatchOf)) {
+		case FUTURE:
+			CompletableFuture<Object> result = new CompletableFuture<>();
+			try {
+				executor.execute(() -> performFuture(invocation, targetFactory, result));
+			} catch (RejectedExecutionException e) {
+				rejected.increment();
+				result.completeExceptionally(e);
+			}
+			return (R) result;
+		case FIRE_AND_FORGET:
+			try {
+				executor.execute(() -> performQuietly(invocation, targetFactory));
+			} catch (RejectedExecutionException e) {
+				rejected.increment();
+				throw e;
+			}
+			return null;
+		default:
+			return delegate.perform(invocation, targetFactory);
+		}
+	}
+
+	private <R> void performFuture(Invocation<T, R> invocation, Function<Instance<? super T>, T> targetFactory, CompletableFuture<Object> result) {
+		try {
+			Object value = delegate.perform(invocation, targetFactory);
+			if (value instanceof CompletionStage) {
+				((CompletionStage<?>) value).whenComplete((completed, failure) -> {
+					if (failure != null) {
+						result.completeExceptionally(failure);
+					} else {
+						result.complete(completed);
+					}
+				});
+			} else if (value instanceof Future) {
+				poll((Future<?>) value, result, INITIAL_POLL_INTERVAL);
+			} else {
+				result.complete(value);
+			}
+		} catch (Throwable e) {
+			result.completeExceptionally(e);
+		}
+	}
+
+	private <R> void performQuietly(Invocation<T, R> invocation, Function<Instance<? super T>, T> targetFactory) {
+		try {
+			delegate.perform(invocation, targetFactory);
+		} catch (Throwable e) {
+			uncaught(e);
+		}
+	}
+}
@@ -0,0 +1,159 @@
+package org.gammastrike.proxy.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.gammastrike.proxy.api.ProxyFactory;
+import org.gammastrike.proxy.api.annotation.ProxyGenerator;
+
+/**
+ * A {@link ProxyFactory} decorator, that reuses proxy classes per class loader and interface set. The interfaces are deduplicated and sorted by name before
+ * they are handed to the delegate, so equal sets in any order share one proxy class. {@link Object}, that every proxy extends, is dropped from the set.
+ * <p>
+ * Proxy classes with a public constructor taking the {@link InvocationHandler}, like those of {@link java.lang.reflect.Proxy} and {@link AsmProxyFactory},
+ * are instantiated directly through that cached constructor. All other proxies are still created by the delegate. The cache refers to class loaders and
+ * proxy classes only weakly and is keyed by interface names, so it does not keep redeployed applications alive.
+ * <p>
+ * Before asking the delegate for a new proxy class, the {@link PrecompiledProxyRegistry} is consulted for one generated at compile time.
+ * <p>
+ * As a bean, this is the {@link ProxyFactory} injected without qualifier, decorating the {@link ProxyGenerator} enabled in the application.
+ */
+@ApplicationScoped
+public class CachingProxyFactory implements ProxyFactory {
+
+	private static final Comparator<Class<?>> BY_NAME = Comparator.comparing(Class::getName);
+
+	private static final ClassValue<Constructor<?>> CONSTRUCTORS = new ClassValue<Constructor<?>>() {
+
+		@Override
+		protected Constructor<?> computeValue(Class<?> type) {
+			try {
+				Constructor<?> constructor = type.getConstructor(InvocationHandler.class);
+				constructor.setAccessible(true);
+				return constructor;
+			} catch (NoSuchMethodException | SecurityException e) {
+				return null;
+			}
+		}
+	};
+
+	private static Class<?>[] canonicalize(Class<?>[] proxyClasses) {
+		Class<?>[] sorted = proxyClasses.clone();
+		Arrays.sort(sorted, BY_NAME);
+		int length = 0;
+		for (Class<?> type : sorted) {
+			if (type != Object.class && (length == 0 || sorted[length - 1] != type)) {
+				sorted[length++] = type;
+			}
+		}
+		return length == sorted.length ? sorted : Arrays.copyOf(sorted, length);
+	}
+
+	private static List<String> namesOf(Class<?>[] interfaces) {
+		String[] names = new String[interfaces.length];
+		for (int i = 0; i < interfaces.length; i++) {
+			names[i] = interfaces[i].getName();
+		}
+		return Arrays.asList(names);
+	}
+
+	private final ProxyFactory delegate;
+	private final Map<ClassLoader, Map<List<String>, WeakReference<Class<?>>>> proxyClasses;
+	private final PrecompiledProxyRegistry registry;
+	private final LongAdder classDefinitions;
+	private final LongAdder instanceCreations;
+	private final LongAdder precompiledClasses;
+
+	CachingProxyFactory() {
+		delegate = null;
+		proxyClasses = null;
+		registry = null;
+		classDefinitions = null;
+		instanceCreations = null;
+		precompiledClasses = null;
+	}
+
+	@Inject
+	public CachingProxyFactory(@ProxyGenerator ProxyFactory delegate) {
+		this.delegate = requireNonNull(delegate);
+		this.proxyClasses = new WeakHashMap<>();
+		this.registry = new PrecompiledProxyRegistry();
+		this.classDefinitions = new LongAdder();
+		this.instanceCreations = new LongAdder();
+		this.precompiledClasses = new LongAdder();
+	}
+
+	private synchronized Class<?> cachedProxyClass(ClassLoader classLoader, List<String> interfaces) {
+		Map<List<String>, WeakReference<Class<?>>> classes = proxyClasses.get(classLoader);
+		WeakReference<Class<?>> reference = classes == null ? null : classes.get(interfaces);
+		return reference == null ? null : reference.get();
+	}
+
+	@Override
+	public Object createProxy(ClassLoader classLoader, InvocationHandler handler, Class<?>[] proxyClasses) {
+		instanceCreations.increment();
+		Class<?>[] interfaces = canonicalize(proxyClasses);
+		List<String> key = namesOf(interfaces);
+		Class<?> proxyClass = cachedProxyClass(classLoader, key);
+		if (proxyClass == null) {
+			proxyClass = registry.lookup(classLoader, key);
+			if (proxyClass != null) {
+				remember(classLoader, key, proxyClass);
+				precompiledClasses.increment();
+			}
+		}
+		Constructor<?> constructor = proxyClass == null ? null : CONSTRUCTORS.get(proxyClass);
+		if (constructor != null) {
+			try {
+				return constructor.newInstance(handler);
+			} catch (InvocationTargetException | InstantiationException | IllegalAccessException e) {
+				throw new IllegalStateException("Could not instantiate " + proxyClass, e);
+			}
+		}
+		Object proxy = delegate.createProxy(classLoader, handler, interfaces);
+		if (proxy.getClass() != proxyClass) {
+			remember(classLoader, key, proxy.getClass());
+			classDefinitions.increment();
+		}
+		return proxy;
+	}
+
+	/**
+	 * @return the number of distinct proxy classes the delegate created so far
+	 */
+	public long getClassDefinitions() {
+		return classDefinitions.sum();
+	}
+
+	/**
+	 * @return the number of proxies created so far
+	 */
+	public long getInstanceCreations() {
+		return instanceCreations.sum();
+	}
+
+	/**
+	 * @return the number of proxy classes found in the {@link PrecompiledProxyRegistry} so far
+	 */
+	public long getPrecompiledClasses() {
+		return precompiledClasses.sum();
+	}
+
+	private synchronized void remember(ClassLoader classLoader, List<String> interfaces, Class<?> proxyClass) {
+		proxyClasses.computeIfAbsent(classLoader, loader -> new HashMap<>()).put(interfaces, new WeakReference<>(proxyClass));
+	}
+}
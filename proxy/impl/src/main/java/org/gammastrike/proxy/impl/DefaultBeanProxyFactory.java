@@ -6,7 +6,11 @@ import java.io.Serializable;
 import java.lang.reflect.InvocationHandler;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.spi.Bean;
 import javax.inject.Inject;
 
@@ -16,29 +20,54 @@ import org.gammastrike.proxy.api.Proxy;
 import org.gammastrike.proxy.api.ProxyFactory;
 import org.gammastrike.value.TypeClosure;
 
+@ApplicationScoped
 public class DefaultBeanProxyFactory implements BeanProxyFactory {
 
+	private static class ProxyTypes {
+
+		private final ClassLoader classLoader;
+		private final Class<?>[] classes;
+
+		public ProxyTypes(ClassLoader classLoader, Class<?>[] classes) {
+			this.classLoader = classLoader;
+			this.classes = classes;
+		}
+	}
+
 	private static final List<Class<?>> STATIC_PROXY_TYPES = Arrays.asList(Proxy.class, Serializable.class);
 
 	private final ProxyFactory proxyFactory;
 	private final BeanRuntimeInformationProvider informationProvider;
+	private final ConcurrentMap<Bean<?>, ProxyTypes> proxyTypes;
 
 	DefaultBeanProxyFactory() {
 		proxyFactory = null;
 		informationProvider = null;
+		proxyTypes = null;
 	}
 
 	@Inject
 	public DefaultBeanProxyFactory(ProxyFactory proxyFactory, BeanRuntimeInformationProvider informationProvider) {
 		this.proxyFactory = requireNonNull(proxyFactory);
 		this.informationProvider = requireNonNull(informationProvider);
+		this.proxyTypes = new ConcurrentHashMap<>();
 	}
 
 	@Override
 	@SuppressWarnings("unchecked")
 	public <T> T createBeanProxy(Bean<T> bean, InvocationHandler handler) {
+		ProxyTypes types = proxyTypes.computeIfAbsent(bean, this::resolveProxyTypes);
+		return (T) proxyFactory.createProxy(types.classLoader, handler, types.classes);
+	}
+
+	@PreDestroy
+	void forgetProxyTypes() {
+		proxyTypes.clear();
+	}
+
+	private ProxyTypes resolveProxyTypes(Bean<?> bean) {
 		ClassLoader classLoader = informationProvider.provideClassLoader(bean);
 		TypeClosure typeClosure = informationProvider.extractImplementingClasses(bean).withTypes(STATIC_PROXY_TYPES);
-		return (T) proxyFactory.createProxy(classLoader, handler, typeClosure.toClassArray());
+		return new ProxyTypes(classLoader, typeClosure.toClassArray());
 	}
 }
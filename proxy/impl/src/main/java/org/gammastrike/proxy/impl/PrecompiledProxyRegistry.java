@@ -0,0 +1,65 @@
+package org.gammastrike.proxy.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.WeakHashMap;
+
+/**
+ * Looks up proxy classes generated at compile time by the proxy annotation processor. Every {@value #REGISTRY} resource visible to a class loader maps the
+ * comma separated, sorted names of a proxy's interfaces to the proxy class name. The resources are read once per class loader and only class names are kept,
+ * so class loaders are not retained.
+ */
+public class PrecompiledProxyRegistry {
+
+	static final String REGISTRY = "META-INF/gammastrike/proxies";
+
+	private static Map<List<String>, String> load(ClassLoader classLoader) {
+		Map<List<String>, String> proxyClassNames = new HashMap<>();
+		try {
+			Enumeration<URL> resources = classLoader == null ? ClassLoader.getSystemResources(REGISTRY) : classLoader.getResources(REGISTRY);
+			while (resources.hasMoreElements()) {
+				Properties registry = new Properties();
+				try (InputStream in = resources.nextElement().openStream()) {
+					registry.load(in);
+				}
+				for (String interfaces : registry.stringPropertyNames()) {
+					proxyClassNames.put(Arrays.asList(interfaces.split(",")), registry.getProperty(interfaces));
+				}
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not read " + REGISTRY, e);
+		}
+		return proxyClassNames.isEmpty() ? Collections.emptyMap() : proxyClassNames;
+	}
+
+	private final Map<ClassLoader, Map<List<String>, String>> proxyClassNames = new WeakHashMap<>();
+
+	/**
+	 * @param classLoader the class loader to load the proxy class with
+	 * @param interfaces the sorted names of the proxy's interfaces
+	 * @return the precompiled proxy class or null, if there is none
+	 */
+	public Class<?> lookup(ClassLoader classLoader, List<String> interfaces) {
+		String proxyClassName = proxyClassNamesOf(classLoader).get(interfaces);
+		if (proxyClassName == null) {
+			return null;
+		}
+		try {
+			return Class.forName(proxyClassName, false, classLoader);
+		} catch (ClassNotFoundException e) {
+			return null;
+		}
+	}
+
+	private synchronized Map<List<String>, String> proxyClassNamesOf(ClassLoader classLoader) {
+		return proxyClassNames.computeIfAbsent(classLoader, PrecompiledProxyRegistry::load);
+	}
+}
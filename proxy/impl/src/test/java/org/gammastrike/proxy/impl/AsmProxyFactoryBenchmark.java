@@ -0,0 +1,71 @@
+package org.gammastrike.proxy.impl;
+
+import java.lang.reflect.InvocationHandler;
+import java.util.concurrent.TimeUnit;
+
+import org.gammastrike.proxy.api.ProxyFactory;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the proxies of {@link AsmProxyFactory} and {@link ApacheCommonsProxyFactory}: the cost of a call through a proxy, which is dominated by the
+ * boxed arguments and the {@link InvocationHandler} both factories share, and the cost of creating a proxy of an already proxied interface. Not picked up
+ * by the default test run; start it with <code>-Dtest=AsmProxyFactoryBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AsmProxyFactoryBenchmark {
+
+	public interface Counter {
+
+		int add(int left, int right);
+	}
+
+	private static final InvocationHandler ADD = (proxy, method, args) -> (Integer) args[0] + (Integer) args[1];
+	private static final Class<?>[] INTERFACES = { Counter.class };
+
+	@Param({ "asm", "commons-proxy" })
+	public String generator;
+
+	private Counter counter;
+	private ProxyFactory factory;
+	private int value;
+
+	@Benchmark
+	public int call() {
+		return counter.add(value++, 1);
+	}
+
+	@Benchmark
+	public Object creation() {
+		return factory.createProxy(AsmProxyFactoryBenchmark.class.getClassLoader(), ADD, INTERFACES);
+	}
+
+	@Test
+	public void run() throws RunnerException {
+		new Runner(new OptionsBuilder().include(AsmProxyFactoryBenchmark.class.getName()).build()).run();
+	}
+
+	@Setup
+	public void setUp() {
+		factory = "asm".equals(generator) ? new AsmProxyFactory() : new ApacheCommonsProxyFactory();
+		counter = (Counter) factory.createProxy(AsmProxyFactoryBenchmark.class.getClassLoader(), ADD, INTERFACES);
+	}
+}
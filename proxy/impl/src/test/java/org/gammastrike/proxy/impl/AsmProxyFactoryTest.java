@@ -0,0 +1,104 @@
+package org.gammastrike.proxy.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.UndeclaredThrowableException;
+
+import org.junit.Test;
+
+public class AsmProxyFactoryTest {
+
+	public interface Greeter {
+
+		String greet(String name);
+
+		int count(int value) throws IOException;
+	}
+
+	interface Hidden {
+
+		String reveal();
+	}
+
+	private static final InvocationHandler ECHO = (proxy, method, args) -> {
+		switch (method.getName()) {
+		case "greet":
+			return "Hello " + args[0];
+		case "count":
+			return (Integer) args[0] + 1;
+		case "reveal":
+			return "revealed";
+		case "hashCode":
+			return System.identityHashCode(proxy);
+		case "equals":
+			return proxy == args[0];
+		default:
+			return "proxy";
+		}
+	};
+
+	private final AsmProxyFactory factory = new AsmProxyFactory();
+
+	private Object create(InvocationHandler handler, Class<?>... interfaces) {
+		return factory.createProxy(getClass().getClassLoader(), handler, interfaces);
+	}
+
+	@Test
+	public void dispatchesToTheHandler() throws IOException {
+		Greeter greeter = (Greeter) create(ECHO, Greeter.class);
+
+		assertEquals("Hello world", greeter.greet("world"));
+		assertEquals(3, greeter.count(2));
+	}
+
+	@Test
+	public void reusesGeneratedClasses() {
+		Object first = create(ECHO, Greeter.class);
+		Object second = create(ECHO, Greeter.class);
+
+		assertNotSame(first, second);
+		assertSame(first.getClass(), second.getClass());
+	}
+
+	@Test
+	public void wrapsUndeclaredCheckedExceptions() throws IOException {
+		Exception failure = new Exception("checked");
+		Greeter greeter = (Greeter) create((proxy, method, args) -> {
+			throw failure;
+		}, Greeter.class);
+		try {
+			greeter.greet("world");
+			fail();
+		} catch (UndeclaredThrowableException e) {
+			assertSame(failure, e.getCause());
+		}
+	}
+
+	@Test
+	public void fallsBackToJdkProxiesForNonPublicInterfaces() {
+		Hidden hidden = (Hidden) create(ECHO, Hidden.class);
+
+		assertTrue(Proxy.isProxyClass(hidden.getClass()));
+		assertEquals("revealed", hidden.reveal());
+	}
+
+	@Test
+	public void doesNotKeepGeneratedClassesAlive() throws InterruptedException {
+		WeakReference<Class<?>> proxyClass = new WeakReference<>(create(ECHO, Greeter.class).getClass());
+		for (int i = 0; i < 50 && proxyClass.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+
+		assertNull(proxyClass.get());
+	}
+}
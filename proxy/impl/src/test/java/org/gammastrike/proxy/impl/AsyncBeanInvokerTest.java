@@ -0,0 +1,291 @@
+package org.gammastrike.proxy.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.enterprise.inject.Instance;
+
+import org.gammastrike.proxy.api.BeanInvoker;
+import org.gammastrike.proxy.api.annotation.Asynchronous;
+import org.junit.Test;
+
+public class AsyncBeanInvokerTest {
+
+	public interface Service {
+
+		Future<String> compute();
+
+		@Asynchronous
+		void fire();
+
+		String name();
+
+		CompletionStage<String> stage();
+	}
+
+	@Asynchronous
+	public interface AsynchronousService {
+
+		void fire();
+
+		String name();
+	}
+
+	/**
+	 * Records every invocation and target factory it is passed, and returns the outcome of the given supplier.
+	 */
+	private static final class RecordingInvoker<T> implements BeanInvoker<T> {
+
+		private final Supplier<?> outcome;
+		private final BlockingQueue<Invocation<T, ?>> invocations;
+		private final BlockingQueue<Function<Instance<? super T>, T>> targetFactories;
+
+		RecordingInvoker(Supplier<?> outcome) {
+			this.outcome = outcome;
+			this.invocations = new LinkedBlockingQueue<>();
+			this.targetFactories = new LinkedBlockingQueue<>();
+		}
+
+		@Override
+		public void notifyDisposed(UUID identity) {
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public <R> R perform(Invocation<T, R> invocation, Function<Instance<? super T>, T> targetFactory) {
+			invocations.add(invocation);
+			targetFactories.add(targetFactory);
+			return (R) outcome.get();
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static <T, R> BeanInvoker.Invocation<T, R> invocation(Class<T> type, String name) throws NoSuchMethodException {
+		return new BeanInvoker.Invocation<>(UUID.randomUUID(), null, type.getMethod(name), new Object[0]);
+	}
+
+	private static <T> Function<Instance<? super T>, T> targets() {
+		return instance -> null;
+	}
+
+	@Test
+	public void cancelsTheBeansFuture() throws Exception {
+		FutureTask<String> pending = new FutureTask<>(() -> "done");
+		AsyncBeanInvoker<Service> invoker = new AsyncBeanInvoker<>(new RecordingInvoker<>(() -> pending), 1, 10);
+		try {
+			CompletableFuture<String> result = (CompletableFuture<String>) invoker.<Future<String>> perform(invocation(Service.class, "compute"), targets());
+			for (int i = 0; i < 100 && invoker.getCompletedCount() < 1; i++) {
+				Thread.sleep(10);
+			}
+			result.cancel(true);
+			for (int i = 0; i < 100 && !pending.isCancelled(); i++) {
+				Thread.sleep(10);
+			}
+			assertTrue(pending.isCancelled());
+		} finally {
+			invoker.close();
+		}
+	}
+
+	@Test
+	public void completesWithTheBeansCompletionStage() throws Exception {
+		CompletableFuture<String> stage = new CompletableFuture<>();
+		AsyncBeanInvoker<Service> invoker = new AsyncBeanInvoker<>(new RecordingInvoker<>(() -> stage), 1, 10);
+		try {
+			CompletionStage<String> result = invoker.perform(invocation(Service.class, "stage"), targets());
+			assertTrue(result instanceof CompletableFuture);
+			stage.complete("done");
+			assertEquals("done", result.toCompletableFuture().get(1, TimeUnit.SECONDS));
+		} finally {
+			invoker.close();
+		}
+	}
+
+	@Test
+	public void deliversFailuresOfAsynchronousMethodsToTheUncaughtExceptionHandler() throws Exception {
+		CompletableFuture<Throwable> uncaught = new CompletableFuture<>();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(10), runnable -> {
+			Thread thread = new Thread(runnable);
+			thread.setDaemon(true);
+			thread.setUncaughtExceptionHandler((failed, failure) -> uncaught.complete(failure));
+			return thread;
+		});
+		AsyncBeanInvoker<Service> invoker = new AsyncBeanInvoker<>(new RecordingInvoker<>(() -> {
+			throw new IllegalStateException("failed");
+		}), executor);
+		try {
+			assertNull(invoker.perform(invocation(Service.class, "fire"), targets()));
+			assertEquals("failed", uncaught.get(1, TimeUnit.SECONDS).getMessage());
+		} finally {
+			invoker.close();
+		}
+	}
+
+	@Test
+	public void doesNotBlockThreadsOnPendingFutures() throws Exception {
+		FutureTask<String> pending = new FutureTask<>(() -> "done");
+		AsyncBeanInvoker<Service> invoker = new AsyncBeanInvoker<>(new RecordingInvoker<>(() -> pending), 1, 10);
+		try {
+			Future<String> first = invoker.perform(invocation(Service.class, "compute"), targets());
+			Future<String> second = invoker.perform(invocation(Service.class, "compute"), targets());
+			for (int i = 0; i < 100 && invoker.getCompletedCount() < 2; i++) {
+				Thread.sleep(10);
+			}
+			assertEquals(2, invoker.getCompletedCount());
+
+			pending.run();
+			assertEquals("done", first.get(1, TimeUnit.SECONDS));
+			assertEquals("done", second.get(1, TimeUnit.SECONDS));
+		} finally {
+			invoker.close();
+		}
+	}
+
+	@Test
+	public void passesFailuresOfCompletionStages() throws Exception {
+		CompletableFuture<String> stage = new CompletableFuture<>();
+		AsyncBeanInvoker<Service> invoker = new AsyncBeanInvoker<>(new RecordingInvoker<>(() -> stage), 1, 10);
+		try {
+			CompletionStage<String> result = invoker.perform(invocation(Service.class, "stage"), targets());
+			stage.completeExceptionally(new IllegalStateException("failed"));
+			try {
+				result.toCompletableFuture().get(1, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException e) {
+				assertEquals("failed", e.getCause().getMessage());
+			}
+		} finally {
+			invoker.close();
+		}
+	}
+
+	@Test
+	public void passesFailuresOfPolledFutures() throws Exception {
+		FutureTask<String> failing = new FutureTask<>(() -> {
+			throw new IllegalStateException("failed");
+		});
+		AsyncBeanInvoker<Service> invoker = new AsyncBeanInvoker<>(new RecordingInvoker<>(() -> failing), 1, 10);
+		try {
+			Future<String> result = invoker.perform(invocation(Service.class, "compute"), targets());
+			failing.run();
+			try {
+				result.get(1, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException e) {
+				assertEquals("failed", e.getCause().getMessage());
+			}
+		} finally {
+			invoker.close();
+		}
+	}
+
+	@Test
+	public void passesInvocationsToTheDelegateUnchanged() throws Exception {
+		RecordingInvoker<Service> delegate = new RecordingInvoker<>(() -> null);
+		AsyncBeanInvoker<Service> invoker = new AsyncBeanInvoker<>(delegate, 1, 10);
+		try {
+			for (String name : new String[] { "compute", "fire", "name", "stage" }) {
+				BeanInvoker.Invocation<Service, Object> invocation = invocation(Service.class, name);
+				Function<Instance<? super Service>, Service> targetFactory = targets();
+				invoker.perform(invocation, targetFactory);
+				assertSame(invocation, delegate.invocations.poll(1, TimeUnit.SECONDS));
+				assertSame(targetFactory, delegate.targetFactories.poll(1, TimeUnit.SECONDS));
+			}
+		} finally {
+			invoker.close();
+		}
+	}
+
+	@Test
+	public void performsVoidMethodsOfAsynchronousTypesWithoutWaiting() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		RecordingInvoker<AsynchronousService> delegate = new RecordingInvoker<>(() -> {
+			await(release);
+			return null;
+		});
+		AsyncBeanInvoker<AsynchronousService> invoker = new AsyncBeanInvoker<>(delegate, 1, 10);
+		try {
+			assertNull(invoker.perform(invocation(AsynchronousService.class, "fire"), targets()));
+			release.countDown();
+			assertEquals("fire", delegate.invocations.poll(1, TimeUnit.SECONDS).getMethod().getName());
+		} finally {
+			release.countDown();
+			invoker.close();
+		}
+	}
+
+	@Test
+	public void rejectsAsynchronousMethodsReturningValues() throws Exception {
+		RecordingInvoker<AsynchronousService> delegate = new RecordingInvoker<>(() -> "name");
+		AsyncBeanInvoker<AsynchronousService> invoker = new AsyncBeanInvoker<>(delegate, 1, 10);
+		try {
+			invoker.perform(invocation(AsynchronousService.class, "name"), targets());
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertTrue(delegate.invocations.isEmpty());
+		} finally {
+			invoker.close();
+		}
+	}
+
+	@Test
+	public void rejectsInvocationsExceedingTheQueue() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		AsyncBeanInvoker<Service> invoker = new AsyncBeanInvoker<>(new RecordingInvoker<>(() -> {
+			await(release);
+			return CompletableFuture.completedFuture("done");
+		}), 1, 1);
+		try {
+			Future<String> running = invoker.perform(invocation(Service.class, "compute"), targets());
+			Future<String> queued = invoker.perform(invocation(Service.class, "compute"), targets());
+			Future<String> rejected = invoker.perform(invocation(Service.class, "compute"), targets());
+			try {
+				rejected.get(1, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof RejectedExecutionException);
+			}
+			assertEquals(1, invoker.getRejectedCount());
+
+			try {
+				invoker.perform(invocation(Service.class, "fire"), targets());
+				fail();
+			} catch (RejectedExecutionException e) {
+				assertEquals(2, invoker.getRejectedCount());
+			}
+
+			release.countDown();
+			assertEquals("done", running.get(1, TimeUnit.SECONDS));
+			assertEquals("done", queued.get(1, TimeUnit.SECONDS));
+		} finally {
+			release.countDown();
+			invoker.close();
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package org.gammastrike.proxy.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.gammastrike.proxy.api.ProxyFactory;
+import org.gammastrike.proxy.api.annotation.ProxyGenerator;
+import org.junit.Test;
+
+public class CachingProxyFactoryTest {
+
+	public interface Named {
+
+		String name();
+	}
+
+	private static final InvocationHandler NAMED = (proxy, method, args) -> "named";
+
+	private final ClassLoader classLoader = getClass().getClassLoader();
+
+	@Test
+	public void reusesProxyClassesForEqualInterfaceSets() {
+		CachingProxyFactory factory = new CachingProxyFactory(new AsmProxyFactory());
+		Object first = factory.createProxy(classLoader, NAMED, new Class<?>[] { Named.class, Serializable.class });
+		Object second = factory.createProxy(classLoader, NAMED, new Class<?>[] { Serializable.class, Object.class, Named.class, Named.class });
+
+		assertSame(first.getClass(), second.getClass());
+		assertEquals("named", ((Named) second).name());
+		assertEquals(1, factory.getClassDefinitions());
+		assertEquals(2, factory.getInstanceCreations());
+	}
+
+	@Test
+	public void reusesJdkProxyClasses() {
+		CachingProxyFactory factory = new CachingProxyFactory(new ApacheCommonsProxyFactory());
+		Object first = factory.createProxy(classLoader, NAMED, new Class<?>[] { Named.class });
+		Object second = factory.createProxy(classLoader, NAMED, new Class<?>[] { Named.class });
+
+		assertSame(first.getClass(), second.getClass());
+		assertEquals(1, factory.getClassDefinitions());
+	}
+
+	@Test
+	public void decoratesTheQualifiedGenerators() throws NoSuchMethodException {
+		assertTrue(ApacheCommonsProxyFactory.class.isAnnotationPresent(ProxyGenerator.class));
+		assertTrue(AsmProxyFactory.class.isAnnotationPresent(ProxyGenerator.class));
+		assertFalse(CachingProxyFactory.class.isAnnotationPresent(ProxyGenerator.class));
+		assertTrue(CachingProxyFactory.class.isAnnotationPresent(ApplicationScoped.class));
+
+		Constructor<CachingProxyFactory> constructor = CachingProxyFactory.class.getConstructor(ProxyFactory.class);
+		assertNotNull(constructor.getAnnotation(Inject.class));
+		assertEquals(ProxyGenerator.class, constructor.getParameterAnnotations()[0][0].annotationType());
+	}
+}
@@ -0,0 +1,137 @@
+package org.gammastrike.proxy.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.gammastrike.proxy.api.Proxy;
+import org.gammastrike.proxy.processor.ProxyProcessor;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the startup cost of proxies generated at compile time by {@link ProxyProcessor} with proxies defined at runtime. For each iteration, a fresh
+ * class loader loads 100 <code>@Proxied</code> interfaces with 10 methods each, and the first proxy of every interface is created through a new
+ * {@link CachingProxyFactory} and called once. There is no warmup: the first iteration of a fork comes closest to a cold start, and the later ones show
+ * the work saved per class loader once the JVM is warm. Not picked up by the default test run; start it with
+ * <code>-Dtest=PrecompiledProxyBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PrecompiledProxyBenchmark {
+
+	private static final int INTERFACES = 100;
+	private static final int METHODS = 10;
+
+	private static final InvocationHandler HANDLER = (proxy, method, args) -> null;
+
+	private static void compile(Path sources, Path output, boolean precompile) throws IOException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		List<File> files = new ArrayList<>();
+		try (Stream<Path> paths = Files.list(sources)) {
+			paths.forEach(path -> files.add(path.toFile()));
+		}
+		List<String> options = new ArrayList<>(Arrays.asList("-classpath", System.getProperty("java.class.path"), "-d", output.toString()));
+		if (!precompile) {
+			options.add("-proc:none");
+		}
+		try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+			JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, null, options, null, fileManager.getJavaFileObjectsFromFiles(files));
+			if (precompile) {
+				task.setProcessors(Arrays.asList(new ProxyProcessor()));
+			}
+			if (!task.call()) {
+				throw new IllegalStateException("Could not compile the benchmark interfaces");
+			}
+		}
+	}
+
+	private static void delete(Path directory) throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	private static void generateSources(Path sources) throws IOException {
+		for (int i = 0; i < INTERFACES; i++) {
+			StringBuilder source = new StringBuilder("package bench;\n\n@org.gammastrike.proxy.api.annotation.Proxied\npublic interface Service" + i + " {\n");
+			for (int j = 0; j < METHODS; j++) {
+				source.append("\tString call").append(j).append("(String argument, int count);\n");
+			}
+			source.append("}\n");
+			Files.write(sources.resolve("Service" + i + ".java"), source.toString().getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	@Param({ "precompiled", "asm", "commons-proxy" })
+	public String generator;
+
+	private Path classes;
+	private Path directory;
+
+	@Benchmark
+	public void firstProxies() throws Exception {
+		try (URLClassLoader classLoader = new URLClassLoader(new URL[] { classes.toUri().toURL() }, PrecompiledProxyBenchmark.class.getClassLoader())) {
+			CachingProxyFactory factory = new CachingProxyFactory("commons-proxy".equals(generator) ? new ApacheCommonsProxyFactory() : new AsmProxyFactory());
+			for (int i = 0; i < INTERFACES; i++) {
+				Class<?> service = classLoader.loadClass("bench.Service" + i);
+				Object proxy = factory.createProxy(classLoader, HANDLER, new Class<?>[] { service, Proxy.class, Serializable.class });
+				service.getMethod("call0", String.class, int.class).invoke(proxy, "argument", 1);
+			}
+		}
+	}
+
+	@Test
+	public void run() throws RunnerException {
+		new Runner(new OptionsBuilder().include(PrecompiledProxyBenchmark.class.getName()).build()).run();
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("precompiled");
+		Path sources = Files.createDirectory(directory.resolve("src"));
+		classes = Files.createDirectory(directory.resolve("classes"));
+		generateSources(sources);
+		compile(sources, classes, "precompiled".equals(generator));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		delete(directory);
+	}
+}
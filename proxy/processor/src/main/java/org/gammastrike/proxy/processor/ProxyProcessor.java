@@ -0,0 +1,362 @@
+package org.gammastrike.proxy.processor;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic.Kind;
+import javax.tools.StandardLocation;
+
+import org.gammastrike.proxy.api.Proxy;
+import org.gammastrike.proxy.api.annotation.Proxied;
+
+/**
+ * Generates proxy classes at compile time, for the interface sets requested at runtime:
+ * <ul>
+ * <li>{@link Proxied} interfaces are proxied with all their super interfaces, {@link Proxy} and {@link Serializable}.</li>
+ * <li>Interfaces and classes in the store's <code>org.gammastrike.store.api.annotation.Proxied</code> scope are proxied with all interfaces they
+ * implement, as the store's proxying context does.</li>
+ * </ul>
+ * Each generated class dispatches all calls to an {@link java.lang.reflect.InvocationHandler} like a JDK proxy. The generated classes are listed in the
+ * {@value #REGISTRY} resource by their sorted interface names, where the caching proxy factory looks them up before defining a proxy class itself.
+ * {@link Proxied} classes, fields and methods are still proxied at runtime.
+ */
+@SupportedAnnotationTypes({ ProxyProcessor.PROXIED, ProxyProcessor.STORE_PROXIED })
+public class ProxyProcessor extends AbstractProcessor {
+
+	static final String PROXIED = "org.gammastrike.proxy.api.annotation.Proxied";
+	static final String STORE_PROXIED = "org.gammastrike.store.api.annotation.Proxied";
+	static final String REGISTRY = "META-INF/gammastrike/proxies";
+
+	private static final String PROXY_SUFFIX = "_Proxy";
+	private static final String SCOPED_PROXY_SUFFIX = "_ScopedProxy";
+	private static final String[] OBJECT_METHODS = { "hashCode", "equals", "toString" };
+	private static final String[] GENERATED_ANNOTATIONS = { "javax.annotation.processing.Generated", "javax.annotation.Generated" };
+
+	private final Map<String, String> proxyClasses = new TreeMap<>();
+
+	private void appendMethod(StringBuilder source, ExecutableElement method, ExecutableType memberType, int slot) {
+		TypeMirror returnType = erasure(memberType.getReturnType());
+		List<? extends TypeMirror> parameterTypes = memberType.getParameterTypes();
+		List<TypeMirror> thrownTypes = new ArrayList<>();
+		for (TypeMirror thrownType : memberType.getThrownTypes()) {
+			thrownTypes.add(erasure(thrownType));
+		}
+
+		source.append("\t@Override\n\tpublic ").append(returnType).append(' ').append(method.getSimpleName()).append('(');
+		StringBuilder arguments = new StringBuilder();
+		for (int i = 0; i < parameterTypes.size(); i++) {
+			String parameterType = erasure(parameterTypes.get(i)).toString();
+			if (method.isVarArgs() && i == parameterTypes.size() - 1) {
+				parameterType = parameterType.substring(0, parameterType.length() - 2) + "...";
+			}
+			source.append(i == 0 ? "" : ", ").append(parameterType).append(" arg").append(i);
+			arguments.append(i == 0 ? "" : ", ").append("arg").append(i);
+		}
+		source.append(')');
+		for (int i = 0; i < thrownTypes.size(); i++) {
+			source.append(i == 0 ? " throws " : ", ").append(thrownTypes.get(i));
+		}
+		source.append(" {\n\t\ttry {\n\t\t\t");
+
+		String invocation = "handler.invoke(this, slot" + slot + ", " + (arguments.length() == 0 ? "null" : "new Object[] { " + arguments + " }") + ")";
+		if (returnType.getKind() == TypeKind.VOID) {
+			source.append(invocation).append(";\n");
+		} else if (returnType.getKind().isPrimitive()) {
+			TypeElement boxed = processingEnv.getTypeUtils().boxedClass((PrimitiveType) returnType);
+			source.append("return (").append(boxed.getQualifiedName()).append(") ").append(invocation).append(";\n");
+		} else {
+			source.append("return (").append(returnType).append(") ").append(invocation).append(";\n");
+		}
+
+		List<TypeMirror> rethrown = rethrownTypes(thrownTypes);
+		boolean wrapUndeclared = true;
+		source.append("\t\t} catch (");
+		Iterator<TypeMirror> iterator = rethrown.iterator();
+		while (iterator.hasNext()) {
+			TypeMirror type = iterator.next();
+			wrapUndeclared &= !type.toString().equals(Throwable.class.getName());
+			source.append(type).append(iterator.hasNext() ? " | " : "");
+		}
+		source.append(" e) {\n\t\t\tthrow e;\n");
+		if (wrapUndeclared) {
+			source.append("\t\t} catch (java.lang.Throwable e) {\n\t\t\tthrow new java.lang.reflect.UndeclaredThrowableException(e);\n");
+		}
+		source.append("\t\t}\n\t}\n");
+	}
+
+	private void appendSlot(StringBuilder initializer, ExecutableElement method, int slot) {
+		initializer.append("\t\t\tslot").append(slot).append(" = ").append(erasure(method.getEnclosingElement().asType())).append(".class.getMethod(\"")
+				.append(method.getSimpleName()).append('"');
+		for (VariableElement parameter : method.getParameters()) {
+			initializer.append(", ").append(erasure(parameter.asType())).append(".class");
+		}
+		initializer.append(");\n");
+	}
+
+	private void collectInterfaces(TypeElement type, Set<TypeElement> interfaces) {
+		if (interfaces.add(type)) {
+			for (TypeMirror superInterface : type.getInterfaces()) {
+				collectInterfaces((TypeElement) processingEnv.getTypeUtils().asElement(superInterface), interfaces);
+			}
+		}
+	}
+
+	private Map<String, ExecutableElement> collectMethods(Set<TypeElement> interfaces, Map<ExecutableElement, ExecutableType> memberTypes,
+			TypeElement... roots) {
+		Map<String, ExecutableElement> methods = new LinkedHashMap<>();
+		TypeElement object = processingEnv.getElementUtils().getTypeElement(Object.class.getName());
+		for (String name : OBJECT_METHODS) {
+			for (ExecutableElement method : ElementFilter.methodsIn(object.getEnclosedElements())) {
+				if (method.getSimpleName().contentEquals(name)) {
+					putMethod(methods, memberTypes, (DeclaredType) object.asType(), method);
+				}
+			}
+		}
+		for (TypeElement root : roots) {
+			DeclaredType rootType = (DeclaredType) erasure(root.asType());
+			Set<TypeElement> closure = new LinkedHashSet<>();
+			collectInterfaces(root, closure);
+			interfaces.addAll(closure);
+			for (TypeElement type : closure) {
+				for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+					if (!method.getModifiers().contains(Modifier.STATIC)) {
+						putMethod(methods, memberTypes, rootType, method);
+					}
+				}
+			}
+		}
+		return methods;
+	}
+
+	private TypeMirror erasure(TypeMirror type) {
+		return processingEnv.getTypeUtils().erasure(type);
+	}
+
+	/**
+	 * Generates a proxy class named after the given type, that implements the given interfaces with all their super interfaces.
+	 */
+	private void generate(TypeElement type, String suffix, TypeElement... roots) throws IOException {
+		PackageElement typePackage = processingEnv.getElementUtils().getPackageOf(type);
+		Set<TypeElement> interfaces = new LinkedHashSet<>();
+		for (TypeElement root : roots) {
+			collectInterfaces(root, interfaces);
+		}
+		for (TypeElement element : interfaces) {
+			if (!isAccessible(element, typePackage)) {
+				processingEnv.getMessager().printMessage(Kind.WARNING, element + " is not accessible, " + type + " is proxied at runtime", type);
+				return;
+			}
+		}
+		Map<ExecutableElement, ExecutableType> memberTypes = new LinkedHashMap<>();
+		Map<String, ExecutableElement> methods = collectMethods(interfaces, memberTypes, roots);
+
+		String packageName = typePackage.getQualifiedName().toString();
+		String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+		String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1)).replace('$', '_') + suffix;
+		String proxyName = packageName.isEmpty() ? simpleName : packageName + '.' + simpleName;
+
+		StringBuilder source = new StringBuilder();
+		if (!packageName.isEmpty()) {
+			source.append("package ").append(packageName).append(";\n\n");
+		}
+		String generated = generatedAnnotation();
+		if (generated != null) {
+			source.append('@').append(generated).append("(\"").append(getClass().getName()).append("\")\n");
+		}
+		source.append("@SuppressWarnings({ \"rawtypes\", \"unchecked\" })\n");
+		source.append("public final class ").append(simpleName).append(" implements ");
+		for (int i = 0; i < roots.length; i++) {
+			source.append(i == 0 ? "" : ", ").append(erasure(roots[i].asType()));
+		}
+		source.append(" {\n\n");
+		source.append("\tprivate static final long serialVersionUID = 1L;\n\n");
+
+		StringBuilder initializer = new StringBuilder("\tstatic {\n\t\ttry {\n");
+		StringBuilder body = new StringBuilder();
+		int slot = 0;
+		for (ExecutableElement method : methods.values()) {
+			source.append("\tprivate static final java.lang.reflect.Method slot").append(slot).append(";\n");
+			appendSlot(initializer, method, slot);
+			body.append('\n');
+			appendMethod(body, method, memberTypes.get(method), slot++);
+		}
+		initializer.append("\t\t} catch (java.lang.NoSuchMethodException e) {\n\t\t\tthrow new java.lang.NoSuchMethodError(e.getMessage());\n\t\t}\n\t}\n\n");
+		source.append("\n").append(initializer);
+		source.append("\tprivate final java.lang.reflect.InvocationHandler handler;\n\n");
+		source.append("\tpublic ").append(simpleName).append("(java.lang.reflect.InvocationHandler handler) {\n\t\tthis.handler = handler;\n\t}\n");
+		source.append(body).append("}\n");
+
+		try (Writer writer = processingEnv.getFiler().createSourceFile(proxyName, type).openWriter()) {
+			writer.write(source.toString());
+		}
+		Set<String> interfaceNames = new TreeSet<>();
+		for (TypeElement element : interfaces) {
+			interfaceNames.add(processingEnv.getElementUtils().getBinaryName(element).toString());
+		}
+		proxyClasses.put(String.join(",", interfaceNames), proxyName);
+	}
+
+	/**
+	 * Generates the proxy of a {@link Proxied} interface, which the bean proxy factory requests together with {@link Proxy} and {@link Serializable}.
+	 */
+	private void generateProxied(TypeElement type) throws IOException {
+		TypeElement proxy = processingEnv.getElementUtils().getTypeElement(Proxy.class.getName());
+		TypeElement serializable = processingEnv.getElementUtils().getTypeElement(Serializable.class.getName());
+		generate(type, PROXY_SUFFIX, type, proxy, serializable);
+	}
+
+	/**
+	 * Generates the proxy of an interface or class in the store's proxied scope, which the store requests for all interfaces of the bean's types.
+	 */
+	private void generateScoped(TypeElement type) throws IOException {
+		if (type.getKind() == ElementKind.INTERFACE) {
+			generate(type, SCOPED_PROXY_SUFFIX, type);
+			return;
+		}
+		Set<TypeElement> interfaces = new LinkedHashSet<>();
+		for (TypeElement current = type; current != null; current = (TypeElement) processingEnv.getTypeUtils().asElement(current.getSuperclass())) {
+			for (TypeMirror superInterface : current.getInterfaces()) {
+				interfaces.add((TypeElement) processingEnv.getTypeUtils().asElement(superInterface));
+			}
+		}
+		if (!interfaces.isEmpty()) {
+			generate(type, SCOPED_PROXY_SUFFIX, interfaces.toArray(new TypeElement[interfaces.size()]));
+		}
+	}
+
+	/**
+	 * @return the name of the <code>Generated</code> annotation available to the compiled sources, which moved in Java 9, or null if there is none
+	 */
+	private String generatedAnnotation() {
+		for (String name : GENERATED_ANNOTATIONS) {
+			if (processingEnv.getElementUtils().getTypeElement(name) != null) {
+				return name;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	/**
+	 * @return whether a class in the given package can implement the given type
+	 */
+	private boolean isAccessible(Element element, PackageElement from) {
+		for (Element current = element; current.getKind() != ElementKind.PACKAGE; current = current.getEnclosingElement()) {
+			Set<Modifier> modifiers = current.getModifiers();
+			if (modifiers.contains(Modifier.PRIVATE)
+					|| !modifiers.contains(Modifier.PUBLIC) && !processingEnv.getElementUtils().getPackageOf(current).equals(from)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		if (roundEnv.processingOver()) {
+			writeRegistry();
+			return false;
+		}
+		for (TypeElement annotation : annotations) {
+			boolean scoped = annotation.getQualifiedName().contentEquals(STORE_PROXIED);
+			for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+				if (element.getKind() != ElementKind.INTERFACE && (!scoped || element.getKind() != ElementKind.CLASS)) {
+					continue;
+				}
+				try {
+					if (scoped) {
+						generateScoped((TypeElement) element);
+					} else {
+						generateProxied((TypeElement) element);
+					}
+				} catch (IOException e) {
+					processingEnv.getMessager().printMessage(Kind.ERROR, "Could not generate proxy: " + e, element);
+				}
+			}
+		}
+		return false;
+	}
+
+	private void putMethod(Map<String, ExecutableElement> methods, Map<ExecutableElement, ExecutableType> memberTypes, DeclaredType containing,
+			ExecutableElement method) {
+		ExecutableType memberType = (ExecutableType) processingEnv.getTypeUtils().asMemberOf(containing, method);
+		StringBuilder signature = new StringBuilder(method.getSimpleName()).append('(');
+		for (TypeMirror parameterType : memberType.getParameterTypes()) {
+			signature.append(erasure(parameterType)).append(';');
+		}
+		if (!methods.containsKey(signature.toString())) {
+			methods.put(signature.toString(), method);
+			memberTypes.put(method, memberType);
+		}
+	}
+
+	/**
+	 * @return the given thrown types together with unchecked exceptions, without any type covered by another one, so they can be caught in one multi-catch
+	 */
+	private List<TypeMirror> rethrownTypes(List<TypeMirror> thrownTypes) {
+		Types types = processingEnv.getTypeUtils();
+		List<TypeMirror> candidates = new ArrayList<>();
+		candidates.add(processingEnv.getElementUtils().getTypeElement(RuntimeException.class.getName()).asType());
+		candidates.add(processingEnv.getElementUtils().getTypeElement(Error.class.getName()).asType());
+		candidates.addAll(thrownTypes);
+		List<TypeMirror> rethrown = new ArrayList<>();
+		for (TypeMirror candidate : candidates) {
+			boolean covered = false;
+			for (TypeMirror other : candidates) {
+				covered |= !types.isSameType(candidate, other) && types.isSubtype(candidate, other);
+			}
+			for (TypeMirror other : rethrown) {
+				covered |= types.isSameType(candidate, other);
+			}
+			if (!covered) {
+				rethrown.add(candidate);
+			}
+		}
+		return rethrown;
+	}
+
+	private void writeRegistry() {
+		if (proxyClasses.isEmpty()) {
+			return;
+		}
+		try (Writer writer = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", REGISTRY).openWriter()) {
+			for (Map.Entry<String, String> entry : proxyClasses.entrySet()) {
+				writer.write(entry.getKey() + '=' + entry.getValue() + '\n');
+			}
+		} catch (IOException e) {
+			processingEnv.getMessager().printMessage(Kind.ERROR, "Could not write " + REGISTRY + ": " + e);
+		}
+	}
+}
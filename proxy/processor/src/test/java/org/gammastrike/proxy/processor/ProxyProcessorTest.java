@@ -0,0 +1,140 @@
+package org.gammastrike.proxy.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProxyProcessorTest {
+
+	private Path directory;
+	private Path output;
+	private DiagnosticCollector<JavaFileObject> diagnostics;
+
+	private void source(String name, String... lines) throws IOException {
+		Path file = directory.resolve("src").resolve(name.replace('.', '/') + ".java");
+		Files.createDirectories(file.getParent());
+		Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+	}
+
+	private boolean compile() throws IOException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		List<File> sources = new ArrayList<>();
+		try (Stream<Path> files = Files.walk(directory.resolve("src"))) {
+			files.filter(file -> file.toString().endsWith(".java")).forEach(file -> sources.add(file.toFile()));
+		}
+		try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+			List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"), "-d", output.toString(), "-s", output.toString());
+			JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options, null, fileManager.getJavaFileObjectsFromFiles(sources));
+			task.setProcessors(Arrays.asList(new ProxyProcessor()));
+			return task.call();
+		}
+	}
+
+	private String read(String path) throws IOException {
+		return new String(Files.readAllBytes(output.resolve(path)), StandardCharsets.UTF_8);
+	}
+
+	@Before
+	public void createDirectories() throws IOException {
+		diagnostics = new DiagnosticCollector<>();
+		directory = Files.createTempDirectory("processor");
+		output = Files.createDirectory(directory.resolve("out"));
+		source("org.gammastrike.store.api.annotation.Proxied", "package org.gammastrike.store.api.annotation;",
+				"@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)", "public @interface Proxied {", "}");
+		source("sample.Named", "package sample;", "public interface Named {", "	String name();", "}");
+	}
+
+	@After
+	public void deleteDirectories() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+		}
+	}
+
+	@Test
+	public void generatesProxiesOfProxiedInterfaces() throws Exception {
+		source("sample.Greeter", "package sample;", "@org.gammastrike.proxy.api.annotation.Proxied",
+				"public interface Greeter extends Named {", "	String greet(String name) throws java.io.IOException;", "	int count(int... values);", "}");
+
+		assertTrue(diagnostics(), compile());
+		assertEquals("java.io.Serializable,org.gammastrike.proxy.api.Proxy,sample.Greeter,sample.Named=sample.Greeter_Proxy\n",
+				read(ProxyProcessor.REGISTRY));
+
+		try (URLClassLoader classLoader = new URLClassLoader(new URL[] { output.toUri().toURL() }, getClass().getClassLoader())) {
+			Class<?> proxyClass = classLoader.loadClass("sample.Greeter_Proxy");
+			InvocationHandler handler = (proxy, method, args) -> method.getName().equals("count") ? ((int[]) args[0]).length : method.getName();
+			Object proxy = proxyClass.getConstructor(InvocationHandler.class).newInstance(handler);
+			Class<?> greeter = classLoader.loadClass("sample.Greeter");
+			Method greet = greeter.getMethod("greet", String.class);
+			assertEquals("greet", greet.invoke(proxy, "world"));
+			assertEquals(2, greeter.getMethod("count", int[].class).invoke(proxy, new int[2]));
+			assertEquals("name", classLoader.loadClass("sample.Named").getMethod("name").invoke(proxy));
+		}
+	}
+
+	@Test
+	public void usesTheGeneratedAnnotationOfTheCompiler() throws IOException {
+		source("sample.Greeter", "package sample;", "@org.gammastrike.proxy.api.annotation.Proxied", "public interface Greeter {", "}");
+
+		assertTrue(diagnostics(), compile());
+		String generated = read("sample/Greeter_Proxy.java");
+		boolean java9 = ClassLoader.getSystemClassLoader().getResource("javax/annotation/processing/Generated.class") != null;
+		assertEquals(java9, generated.contains("@javax.annotation.processing.Generated("));
+		assertEquals(!java9, generated.contains("@javax.annotation.Generated("));
+	}
+
+	@Test
+	public void generatesProxiesOfScopedClasses() throws IOException {
+		source("sample.Task", "package sample;", "public abstract class Task implements Runnable {", "}");
+		source("sample.NamedTask", "package sample;", "@org.gammastrike.store.api.annotation.Proxied", "public class NamedTask extends Task implements Named {",
+				"	public String name() {", "		return \"task\";", "	}", "	public void run() {", "	}", "}");
+
+		assertTrue(diagnostics(), compile());
+		assertEquals("java.lang.Runnable,sample.Named=sample.NamedTask_ScopedProxy\n", read(ProxyProcessor.REGISTRY));
+	}
+
+	@Test
+	public void leavesInaccessibleInterfacesToRuntime() throws IOException {
+		source("hidden.Secret", "package hidden;", "interface Secret {", "}");
+		source("hidden.Exposed", "package hidden;", "public interface Exposed extends Secret {", "}");
+		source("sample.Consumer", "package sample;", "@org.gammastrike.store.api.annotation.Proxied", "public interface Consumer extends hidden.Exposed {", "}");
+
+		assertTrue(diagnostics(), compile());
+		assertFalse(Files.exists(output.resolve("sample/Consumer_ScopedProxy.java")));
+		assertTrue(diagnostics().contains("is proxied at runtime"));
+	}
+
+	private String diagnostics() {
+		StringBuilder messages = new StringBuilder();
+		for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+			messages.append(diagnostic.getMessage(null)).append('\n');
+		}
+		return messages.toString();
+	}
+}
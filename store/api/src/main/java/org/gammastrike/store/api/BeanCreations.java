@@ -0,0 +1,108 @@
+package org.gammastrike.store.api;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Tracks the running creations of bean instances for {@link BeanStore#computeIfAbsent(BeanIdentifier, Function)}. Each creation is registered per store
+ * and id, and runs without holding any lock, so a creation may create instances for other ids. Concurrent calls for the same id wait for the running
+ * creation and get its instance. Stores may keep their own tracker instead of sharing the default one.
+ */
+public final class BeanCreations {
+
+    private static final class Creation extends CompletableFuture<BeanInstance<?>> {
+
+        private final Thread creator = Thread.currentThread();
+    }
+
+    private static final class Key {
+
+        private final BeanStore store;
+
+        private final BeanIdentifier id;
+
+        Key(BeanStore store, BeanIdentifier id) {
+            this.store = store;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return store == other.store && id.equals(other.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(store) * 31 + id.hashCode();
+        }
+    }
+
+    static final BeanCreations SHARED = new BeanCreations();
+
+    private final ConcurrentMap<Key, Creation> creations;
+
+    public BeanCreations() {
+        this.creations = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Gets the instance for the given id from the given store or creates and puts one, if there is none.
+     *
+     * @param store the store
+     * @param id the id of the instance
+     * @param creator creates the instance for the id, may return null to add nothing
+     * @return the present or created instance, or null if the creator returned null
+     * @throws IllegalStateException if the creator of the id tries to get its own instance
+     */
+    @SuppressWarnings("unchecked")
+    public <T> BeanInstance<T> computeIfAbsent(BeanStore store, BeanIdentifier id, Function<? super BeanIdentifier, ? extends BeanInstance<T>> creator) {
+        Key key = null;
+        while (true) {
+            BeanInstance<T> instance = store.get(id);
+            if (instance != null) {
+                return instance;
+            }
+            if (key == null) {
+                key = new Key(store, id);
+            }
+            Creation creation = new Creation();
+            Creation running = creations.putIfAbsent(key, creation);
+            if (running == null) {
+                return create(store, id, creator, key, creation);
+            }
+            if (running.creator == Thread.currentThread()) {
+                throw new IllegalStateException("Recursive creation of " + id);
+            }
+            instance = (BeanInstance<T>) running.exceptionally(failure -> null).join();
+            if (instance != null) {
+                return instance;
+            }
+        }
+    }
+
+    private <T> BeanInstance<T> create(BeanStore store, BeanIdentifier id, Function<? super BeanIdentifier, ? extends BeanInstance<T>> creator, Key key,
+            Creation creation) {
+        try {
+            BeanInstance<T> instance = store.get(id);
+            if (instance == null) {
+                instance = creator.apply(id);
+                if (instance != null) {
+                    store.put(id, instance);
+                }
+            }
+            creation.complete(instance);
+            return instance;
+        } catch (RuntimeException | Error e) {
+            creation.completeExceptionally(e);
+            throw e;
+        } finally {
+            creations.remove(key, creation);
+        }
+    }
+}
@@ -2,11 +2,22 @@ package org.gammastrike.store.api;
 
 import static java.util.Objects.requireNonNull;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.lang.annotation.Annotation;
 import java.util.Collection;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
+/**
+ * Identifies a stored bean instance. Identifiers are serialized in a compact form: the UUID as two longs and each qualifier as its code in the
+ * {@link QualifierDictionary}, falling back to the serialized qualifier for unregistered ones.
+ */
 public class BeanIdentifier implements Serializable {
 
     private static final long serialVersionUID = 1L;
@@ -27,6 +38,99 @@ public class BeanIdentifier implements Serializable {
         return buildFrom(identifier, qualifierArray);
     }
 
+    public static BeanIdentifier buildFrom(long mostSignificantBits, long leastSignificantBits, Annotation... qualifiers) {
+        return new BeanIdentifier(new UUID(mostSignificantBits, leastSignificantBits), qualifiers);
+    }
+
+    private static final byte UNDEFINED_FORM = 0;
+
+    private static final byte DEFINED_FORM = 1;
+
+    /**
+     * The maximum length of a serialized qualifier in the compact form, which keeps corrupt input from allocating arbitrary amounts of memory.
+     */
+    private static final int MAXIMUM_QUALIFIER_LENGTH = 1 << 16;
+
+    private static Annotation readQualifier(DataInput in) throws IOException {
+        int code = in.readShort();
+        if (code >= 0) {
+            return QualifierDictionary.qualifierOf(code);
+        }
+        int length = in.readInt();
+        if (length < 0 || length > MAXIMUM_QUALIFIER_LENGTH) {
+            throw new IOException("Invalid qualifier length " + length);
+        }
+        byte[] data = new byte[length];
+        in.readFully(data);
+        try (ContextClassLoaderObjectInputStream qualifierIn = new ContextClassLoaderObjectInputStream(new ByteArrayInputStream(data))) {
+            Object qualifier = qualifierIn.readObject();
+            if (!(qualifier instanceof Annotation)) {
+                throw new IOException("Not a qualifier: " + qualifier);
+            }
+            return (Annotation) qualifier;
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Could not read qualifier", e);
+        }
+    }
+
+    /**
+     * Reads an identifier written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in the input to read from
+     * @return the identifier
+     * @throws IOException if the identifier could not be read
+     */
+    public static BeanIdentifier readFrom(DataInput in) throws IOException {
+        byte form = in.readByte();
+        if (form == UNDEFINED_FORM) {
+            return UNDEFINED;
+        } else if (form != DEFINED_FORM) {
+            throw new IOException("Unknown identifier form " + form);
+        }
+        long mostSignificantBits = in.readLong();
+        long leastSignificantBits = in.readLong();
+        int count = in.readShort();
+        if (count < 0) {
+            throw new IOException("Invalid qualifier count " + count);
+        }
+        Annotation[] qualifiers = new Annotation[count];
+        for (int i = 0; i < qualifiers.length; i++) {
+            qualifiers[i] = readQualifier(in);
+        }
+        return buildFrom(mostSignificantBits, leastSignificantBits, qualifiers);
+    }
+
+    private static void writeQualifier(DataOutput out, Annotation qualifier) throws IOException {
+        int code = QualifierDictionary.codeOf(qualifier);
+        out.writeShort(code);
+        if (code < 0) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream qualifierOut = new ObjectOutputStream(bytes)) {
+                qualifierOut.writeObject(qualifier);
+            }
+            if (bytes.size() > MAXIMUM_QUALIFIER_LENGTH) {
+                throw new IOException("Qualifier too long to write: " + qualifier);
+            }
+            out.writeInt(bytes.size());
+            out.write(bytes.toByteArray());
+        }
+    }
+
+    /**
+     * Creates an identifier with a time-ordered UUID in the layout of UUID version 7: the first 48 bits hold the creation time in milliseconds since the
+     * epoch, the remaining bits are random. Unlike {@link UUID#randomUUID()}, this does not contend on a shared {@link java.security.SecureRandom}, and
+     * identifiers sort by creation time.
+     *
+     * @param qualifiers the qualifiers of the identifier
+     * @return the identifier
+     */
+    public static BeanIdentifier timeOrdered(Annotation... qualifiers) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long mostSignificantBits = System.currentTimeMillis() << 16 | 0x7000L | random.nextInt(0x1000);
+        long leastSignificantBits = random.nextLong() & 0x3fffffffffffffffL | 0x8000000000000000L;
+        return buildFrom(mostSignificantBits, leastSignificantBits, qualifiers);
+    }
+
     private final UUID uuid;
 
     private final Annotation[] qualifiers;
@@ -40,14 +144,70 @@ public class BeanIdentifier implements Serializable {
         this.qualifiers = requireNonNull(qualifiers);
     }
 
+    public long getLeastSignificantBits() {
+        return defined().getLeastSignificantBits();
+    }
+
+    public long getMostSignificantBits() {
+        return defined().getMostSignificantBits();
+    }
+
+    /**
+     * @return the creation time in milliseconds since the epoch, if this identifier has been created by {@link #timeOrdered(Annotation...)}
+     */
+    public long getTimestamp() {
+        return defined().getMostSignificantBits() >>> 16;
+    }
+
     public Annotation[] getQualifiers() {
         return qualifiers;
     }
 
+    private UUID defined() {
+        if (uuid == null) {
+            throw new IllegalStateException("Undefined identifier has no UUID");
+        }
+        return uuid;
+    }
+
+    /**
+     * @return whether this identifier carries a UUID of version 7, as created by {@link #timeOrdered(Annotation...)}
+     */
+    public boolean isTimeOrdered() {
+        return uuid != null && uuid.version() == 7;
+    }
+
     public boolean isUndefined() {
         return uuid == null;
     }
 
+    /**
+     * Writes this identifier in its compact form.
+     *
+     * @param out the output to write to
+     * @throws IOException if the identifier could not be written
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        if (uuid == null) {
+            out.writeByte(UNDEFINED_FORM);
+            return;
+        }
+        if (qualifiers.length > Short.MAX_VALUE) {
+            throw new IOException("Too many qualifiers to write: " + qualifiers.length);
+        }
+        out.writeByte(DEFINED_FORM);
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+        out.writeShort(qualifiers.length);
+        for (Annotation qualifier : qualifiers) {
+            writeQualifier(out, qualifier);
+        }
+    }
+
+    private Object writeReplace() {
+        return new SerializedBeanIdentifier(this);
+    }
+
     public String asString() {
         return String.valueOf(uuid);
     }
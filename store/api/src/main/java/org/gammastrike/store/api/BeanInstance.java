@@ -10,4 +10,14 @@ public interface BeanInstance<T> {
     CreationalContext<T> getCreationalContext();
 
     Contextual<T> getContextual();
+
+    /**
+     * Checks if the instance has been created. Lazy implementations create their instance on the first call of {@link #getInstance()}, until then there
+     * is nothing to destroy.
+     *
+     * @return true if the instance has been created
+     */
+    default boolean isMaterialized() {
+        return true;
+    }
 }
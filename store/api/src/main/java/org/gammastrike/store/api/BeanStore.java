@@ -1,5 +1,13 @@
 package org.gammastrike.store.api;
 
+import java.lang.annotation.Annotation;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
 public interface BeanStore extends Iterable<BeanIdentifier> {
 
     boolean isAvailable();
@@ -20,6 +28,43 @@ public interface BeanStore extends Iterable<BeanIdentifier> {
      */
     boolean contains(BeanIdentifier id);
 
+    /**
+     * Gets the ids of all instances, whose bean type is assignable to the given type and whose ids carry all given qualifiers. Implementations without a type
+     * index may return all of their ids, so callers still have to check the instances they get for the given id.
+     *
+     * @param type the required bean type
+     * @param qualifiers the required qualifiers
+     * @return the ids of matching instances
+     */
+    default Iterable<BeanIdentifier> identifiersOf(Class<?> type, Annotation... qualifiers) {
+        return this;
+    }
+
+    /**
+     * Registers a listener for added and removed ids. Stores, that do not {@link #supportsListeners() support listeners}, ignore it.
+     *
+     * @param listener the listener
+     */
+    default void addListener(BeanStoreListener listener) {
+    }
+
+    /**
+     * Checks if the store reports its changes to the listeners registered through {@link #addListener(BeanStoreListener)}.
+     *
+     * @return true if listeners are notified
+     */
+    default boolean supportsListeners() {
+        return false;
+    }
+
+    /**
+     * Unregisters a listener
+     *
+     * @param listener the listener
+     */
+    default void removeListener(BeanStoreListener listener) {
+    }
+
     /**
      * Clears the store of contextual instances
      */
@@ -40,4 +85,108 @@ public interface BeanStore extends Iterable<BeanIdentifier> {
      * @return the removed bean instance of null if there was no bean instance before
      */
     <T> BeanInstance<T> remove(BeanIdentifier id);
+
+    /**
+     * Gets the instance for the given id or creates and adds one atomically, if there is none. Concurrent calls for the same id create at most one instance,
+     * calls for other ids never wait for it. No lock is held while the creator runs, so it may create instances for other ids, but not for its own. Instances
+     * added through {@link #put(BeanIdentifier, BeanInstance)} concurrently with a creation may be overwritten.
+     *
+     * @param id the id of the instance
+     * @param creator creates the instance for the id, may return null to add nothing
+     * @return the present or created instance, or null if the creator returned null
+     * @throws IllegalStateException if the creator tries to get the instance for its own id
+     * @see BeanCreations
+     */
+    default <T> BeanInstance<T> computeIfAbsent(BeanIdentifier id, Function<? super BeanIdentifier, ? extends BeanInstance<T>> creator) {
+        return BeanCreations.SHARED.computeIfAbsent(this, id, creator);
+    }
+
+    /**
+     * Counts the stored instances. Implementations without a counter iterate over all ids.
+     *
+     * @return the number of stored instances
+     */
+    default int size() {
+        int size = 0;
+        for (Iterator<BeanIdentifier> ids = iterator(); ids.hasNext(); ids.next()) {
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Adds all given bean instances to the storage
+     *
+     * @param instances the bean instances by their ids
+     */
+    default void putAll(Map<BeanIdentifier, ? extends BeanInstance<?>> instances) {
+        instances.forEach(this::put);
+    }
+
+    /**
+     * Gets the instances for all given ids. Ids without instance are left out of the result.
+     *
+     * @param ids the ids of the instances to return
+     * @return the found instances by their ids
+     */
+    default Map<BeanIdentifier, BeanInstance<?>> getAll(Collection<BeanIdentifier> ids) {
+        Map<BeanIdentifier, BeanInstance<?>> instances = new HashMap<>();
+        for (BeanIdentifier id : ids) {
+            BeanInstance<?> instance = get(id);
+            if (instance != null) {
+                instances.put(id, instance);
+            }
+        }
+        return instances;
+    }
+
+    /**
+     * Removes the bean instances identified by the given ids.
+     *
+     * @param ids the ids of the instances to remove
+     * @return the removed instances by their ids
+     */
+    default Map<BeanIdentifier, BeanInstance<?>> removeAll(Collection<BeanIdentifier> ids) {
+        Map<BeanIdentifier, BeanInstance<?>> removed = new HashMap<>();
+        for (BeanIdentifier id : ids) {
+            BeanInstance<?> instance = remove(id);
+            if (instance != null) {
+                removed.put(id, instance);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Removes all bean instances, so the caller can destroy them in one batch. Unlike {@link #clear()}, no instance is lost to the caller.
+     *
+     * @return the removed instances by their ids
+     */
+    default Map<BeanIdentifier, BeanInstance<?>> drain() {
+        Map<BeanIdentifier, BeanInstance<?>> drained = new HashMap<>();
+        for (Iterator<BeanIdentifier> ids = iterator(); ids.hasNext();) {
+            BeanIdentifier id = ids.next();
+            BeanInstance<?> instance = remove(id);
+            if (instance != null) {
+                drained.put(id, instance);
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * Performs the given action for each stored bean instance. Implementations may run the action in parallel, if the store holds at least the given number
+     * of instances, so the action must be thread-safe in that case.
+     *
+     * @param parallelismThreshold the number of instances needed for a parallel traversal, or {@link Long#MAX_VALUE} to always traverse sequentially
+     * @param action the action to perform
+     */
+    default void forEach(long parallelismThreshold, BiConsumer<BeanIdentifier, BeanInstance<?>> action) {
+        for (BeanIdentifier id : this) {
+            BeanInstance<?> instance = get(id);
+            if (instance != null) {
+                action.accept(id, instance);
+            }
+        }
+    }
 }
@@ -0,0 +1,42 @@
+package org.gammastrike.store.api;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A change of a {@link BeanStore}'s contents. The id is null for {@link Type#CLEAR} events.
+ */
+public class BeanStoreEvent {
+
+    public enum Type {
+        PUT, REMOVE, EXPIRE, CLEAR
+    }
+
+    private final Type type;
+
+    private final BeanStore store;
+
+    private final BeanIdentifier id;
+
+    public BeanStoreEvent(Type type, BeanStore store, BeanIdentifier id) {
+        this.type = requireNonNull(type);
+        this.store = requireNonNull(store);
+        this.id = id;
+    }
+
+    public BeanIdentifier getId() {
+        return id;
+    }
+
+    public BeanStore getStore() {
+        return store;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    @Override
+    public String toString() {
+        return "BeanStoreEvent [" + type + ", " + id + "]";
+    }
+}
@@ -0,0 +1,42 @@
+package org.gammastrike.store.api;
+
+/**
+ * Gets notified about the ids added to or removed from a {@link BeanStore}. Listeners are called synchronously, possibly while the store holds internal
+ * locks, so they have to return quickly and must not modify the store.
+ */
+public interface BeanStoreListener {
+
+    /**
+     * Called after an instance has been put into the store
+     *
+     * @param store the store
+     * @param id the id of the instance
+     */
+    void added(BeanStore store, BeanIdentifier id);
+
+    /**
+     * Called after an instance has been removed from the store, either explicitly or by eviction
+     *
+     * @param store the store
+     * @param id the id of the removed instance
+     */
+    void removed(BeanStore store, BeanIdentifier id);
+
+    /**
+     * Called after the store has removed an instance on its own, because it expired or has been collected. Treated as a removal by
+     * default.
+     *
+     * @param store the store
+     * @param id the id of the expired instance
+     */
+    default void expired(BeanStore store, BeanIdentifier id) {
+        removed(store, id);
+    }
+
+    /**
+     * Called after the store has been cleared
+     *
+     * @param store the store
+     */
+    void cleared(BeanStore store);
+}
@@ -0,0 +1,30 @@
+package org.gammastrike.store.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+
+/**
+ * An {@link ObjectInputStream}, that resolves classes through the thread's context class loader first, so instances of application classes can be read
+ * by the library's classes.
+ */
+public class ContextClassLoaderObjectInputStream extends ObjectInputStream {
+
+    public ContextClassLoaderObjectInputStream(InputStream in) throws IOException {
+        super(in);
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        if (classLoader != null) {
+            try {
+                return Class.forName(desc.getName(), false, classLoader);
+            } catch (ClassNotFoundException e) {
+                // fall back to default resolution
+            }
+        }
+        return super.resolveClass(desc);
+    }
+}
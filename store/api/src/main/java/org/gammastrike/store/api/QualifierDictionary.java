@@ -0,0 +1,80 @@
+package org.gammastrike.store.api;
+
+import java.lang.annotation.Annotation;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.enterprise.inject.Any;
+import javax.enterprise.inject.Default;
+import javax.enterprise.util.AnnotationLiteral;
+
+/**
+ * Assigns fixed codes to qualifiers, so the compact form of {@link BeanIdentifier} can write a code instead of the serialized qualifier. Codes have to be
+ * registered identically on all nodes reading each other's identifiers. Qualifiers without a code are written in full.
+ * <p>
+ * The dictionary is mutable static state of this class. All deployments loading it through the same class loader, for example from a shared library of
+ * an application server, share one dictionary, so they have to agree on their codes. A registration can not be changed or removed, registering the same
+ * qualifier under the same code again has no effect.
+ */
+public final class QualifierDictionary {
+
+    @SuppressWarnings("all")
+    private static class AnyLiteral extends AnnotationLiteral<Any> implements Any {
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    @SuppressWarnings("all")
+    private static class DefaultLiteral extends AnnotationLiteral<Default> implements Default {
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static final Map<Integer, Annotation> QUALIFIERS = new ConcurrentHashMap<>();
+
+    private static final Map<Annotation, Integer> CODES = new ConcurrentHashMap<>();
+
+    static {
+        register(0, new DefaultLiteral());
+        register(1, new AnyLiteral());
+    }
+
+    static int codeOf(Annotation qualifier) {
+        Integer code = CODES.get(qualifier);
+        return code != null ? code : -1;
+    }
+
+    static Annotation qualifierOf(int code) {
+        Annotation qualifier = QUALIFIERS.get(code);
+        if (qualifier == null) {
+            throw new IllegalStateException("No qualifier registered for code " + code);
+        }
+        return qualifier;
+    }
+
+    /**
+     * Registers a qualifier under a code. The codes 0 and 1 are taken by {@link Default} and {@link Any}.
+     *
+     * @param code the code, between 0 and {@link Short#MAX_VALUE}
+     * @param qualifier the qualifier
+     * @throws IllegalArgumentException if the code is out of range or already taken by another qualifier, or if the qualifier is registered under another
+     *             code
+     */
+    public static synchronized void register(int code, Annotation qualifier) {
+        if (code < 0 || code > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Code out of range: " + code);
+        }
+        Integer registeredCode = CODES.get(qualifier);
+        if (registeredCode != null && registeredCode != code) {
+            throw new IllegalArgumentException(qualifier + " already registered under code " + registeredCode);
+        }
+        Annotation registered = QUALIFIERS.putIfAbsent(code, qualifier);
+        if (registered != null && !registered.equals(qualifier)) {
+            throw new IllegalArgumentException("Code " + code + " already taken by " + registered);
+        }
+        CODES.put(qualifier, code);
+    }
+
+    private QualifierDictionary() {
+    }
+}
@@ -0,0 +1,37 @@
+package org.gammastrike.store.api;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * The serialized form of {@link BeanIdentifier}, written through {@link BeanIdentifier#writeTo(java.io.DataOutput)}.
+ */
+final class SerializedBeanIdentifier implements Externalizable {
+
+    private static final long serialVersionUID = 1L;
+
+    private BeanIdentifier identifier;
+
+    public SerializedBeanIdentifier() {
+    }
+
+    SerializedBeanIdentifier(BeanIdentifier identifier) {
+        this.identifier = identifier;
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        identifier = BeanIdentifier.readFrom(in);
+    }
+
+    private Object readResolve() {
+        return identifier;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        identifier.writeTo(out);
+    }
+}
@@ -0,0 +1,224 @@
+package org.gammastrike.store.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import javax.enterprise.context.spi.Contextual;
+import javax.enterprise.context.spi.CreationalContext;
+
+import org.junit.Test;
+
+public class BeanCreationsTest {
+
+    /**
+     * Only implements the abstract methods, so it uses the default {@link BeanStore#computeIfAbsent(BeanIdentifier, java.util.function.Function)}.
+     */
+    private static class MapBeanStore implements BeanStore {
+
+        private final ConcurrentMap<BeanIdentifier, BeanInstance<?>> beans = new ConcurrentHashMap<>();
+
+        @Override
+        public void clear() {
+            beans.clear();
+        }
+
+        @Override
+        public boolean contains(BeanIdentifier id) {
+            return beans.containsKey(id);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> BeanInstance<T> get(BeanIdentifier id) {
+            return (BeanInstance<T>) beans.get(id);
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public Iterator<BeanIdentifier> iterator() {
+            return beans.keySet().iterator();
+        }
+
+        @Override
+        public <T> void put(BeanIdentifier id, BeanInstance<T> instance) {
+            beans.put(id, instance);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> BeanInstance<T> remove(BeanIdentifier id) {
+            return (BeanInstance<T>) beans.remove(id);
+        }
+    }
+
+    private static class ValueInstance implements BeanInstance<Object> {
+
+        private final Object value;
+
+        ValueInstance(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        public Contextual<Object> getContextual() {
+            return null;
+        }
+
+        @Override
+        public CreationalContext<Object> getCreationalContext() {
+            return null;
+        }
+
+        @Override
+        public Object getInstance() {
+            return value;
+        }
+    }
+
+    private static final int THREADS = 16;
+
+    private static final int IDS = 2000;
+
+    @Test
+    public void createsExactlyOncePerIdentifier() throws Exception {
+        BeanStore store = new MapBeanStore();
+        List<BeanIdentifier> ids = new ArrayList<>();
+        for (int i = 0; i < IDS; i++) {
+            ids.add(new BeanIdentifier());
+        }
+        AtomicIntegerArray creations = new AtomicIntegerArray(IDS);
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<BeanInstance<?>[]>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    BeanInstance<?>[] seen = new BeanInstance<?>[IDS];
+                    for (int i = 0; i < IDS; i++) {
+                        int index = i;
+                        seen[i] = store.computeIfAbsent(ids.get(i), id -> {
+                            creations.incrementAndGet(index);
+                            Thread.yield();
+                            return new ValueInstance(index);
+                        });
+                    }
+                    return seen;
+                }));
+            }
+            BeanInstance<?>[] first = results.get(0).get(1, TimeUnit.MINUTES);
+            for (Future<BeanInstance<?>[]> result : results) {
+                BeanInstance<?>[] seen = result.get(1, TimeUnit.MINUTES);
+                for (int i = 0; i < IDS; i++) {
+                    assertSame(first[i], seen[i]);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        for (int i = 0; i < IDS; i++) {
+            assertEquals("creations of id " + i, 1, creations.get(i));
+        }
+    }
+
+    @Test
+    public void allowsNestedCreationAcrossThreads() throws Exception {
+        BeanStore store = new MapBeanStore();
+        BeanIdentifier outer = new BeanIdentifier();
+        BeanIdentifier inner = new BeanIdentifier();
+        CountDownLatch outerRunning = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<BeanInstance<Object>> other = executor.submit(() -> {
+                outerRunning.await();
+                return store.computeIfAbsent(inner, id -> new ValueInstance("inner from other thread"));
+            });
+            BeanInstance<Object> created = store.computeIfAbsent(outer, id -> {
+                outerRunning.countDown();
+                try {
+                    other.get(1, TimeUnit.MINUTES);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                BeanInstance<Object> nested = store.computeIfAbsent(inner, key -> new ValueInstance("inner"));
+                return new ValueInstance(nested.getInstance());
+            });
+            assertEquals("inner from other thread", created.getInstance());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void rejectsRecursiveCreation() {
+        BeanStore store = new MapBeanStore();
+        BeanIdentifier id = new BeanIdentifier();
+        try {
+            store.computeIfAbsent(id, key -> store.computeIfAbsent(key, again -> new ValueInstance("again")));
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertNotNull(store.computeIfAbsent(id, key -> new ValueInstance("later")));
+    }
+
+    @Test
+    public void retriesAfterFailedCreation() throws Exception {
+        BeanStore store = new MapBeanStore();
+        BeanIdentifier id = new BeanIdentifier();
+        CountDownLatch creating = new CountDownLatch(1);
+        CountDownLatch fail = new CountDownLatch(1);
+        AtomicInteger attempts = new AtomicInteger();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> failing = executor.submit(() -> store.computeIfAbsent(id, key -> {
+                attempts.incrementAndGet();
+                creating.countDown();
+                try {
+                    fail.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("failed");
+            }));
+            creating.await();
+            Thread waiter = new Thread(fail::countDown);
+            waiter.start();
+            BeanInstance<Object> instance = store.computeIfAbsent(id, key -> {
+                attempts.incrementAndGet();
+                return new ValueInstance("retried");
+            });
+            assertEquals("retried", instance.getInstance());
+            assertEquals(2, attempts.get());
+            try {
+                failing.get(1, TimeUnit.MINUTES);
+                fail();
+            } catch (ExecutionException e) {
+                assertEquals("failed", e.getCause().getMessage());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
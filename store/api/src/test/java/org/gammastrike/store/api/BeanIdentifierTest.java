@@ -0,0 +1,113 @@
+package org.gammastrike.store.api;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+import javax.enterprise.inject.Default;
+import javax.enterprise.util.AnnotationLiteral;
+
+import org.junit.Test;
+
+public class BeanIdentifierTest {
+
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface Unregistered {
+    }
+
+    @SuppressWarnings("all")
+    private static class DefaultLiteral extends AnnotationLiteral<Default> implements Default {
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    @SuppressWarnings("all")
+    private static class UnregisteredLiteral extends AnnotationLiteral<Unregistered> implements Unregistered {
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static byte[] definedHeader(int qualifierCount) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(1);
+        out.writeLong(1);
+        out.writeLong(2);
+        out.writeShort(qualifierCount);
+        return bytes.toByteArray();
+    }
+
+    private static BeanIdentifier read(byte[] data) throws IOException {
+        return BeanIdentifier.readFrom(new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    private static void assertRejected(byte[] data, String message) {
+        try {
+            read(data);
+            fail();
+        } catch (IOException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    @Test
+    public void readsWhatItWrites() throws IOException {
+        BeanIdentifier id = BeanIdentifier.timeOrdered(new DefaultLiteral(), new UnregisteredLiteral());
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        id.writeTo(new DataOutputStream(bytes));
+
+        BeanIdentifier read = read(bytes.toByteArray());
+        assertEquals(id, read);
+        assertArrayEquals(id.getQualifiers(), read.getQualifiers());
+    }
+
+    @Test
+    public void readsUndefined() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BeanIdentifier.UNDEFINED.writeTo(new DataOutputStream(bytes));
+
+        assertSame(BeanIdentifier.UNDEFINED, read(bytes.toByteArray()));
+    }
+
+    @Test
+    public void rejectsNegativeQualifierCounts() throws IOException {
+        assertRejected(definedHeader(-1), "Invalid qualifier count -1");
+    }
+
+    @Test
+    public void rejectsOversizedQualifiers() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(definedHeader(1));
+        out.writeShort(-1);
+        out.writeInt(Integer.MAX_VALUE);
+
+        assertRejected(bytes.toByteArray(), "Invalid qualifier length " + Integer.MAX_VALUE);
+    }
+
+    @Test
+    public void rejectsNonQualifiers() throws IOException {
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream objectOut = new ObjectOutputStream(serialized)) {
+            objectOut.writeObject("text");
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(definedHeader(1));
+        out.writeShort(-1);
+        out.writeInt(serialized.size());
+        out.write(serialized.toByteArray());
+
+        assertRejected(bytes.toByteArray(), "Not a qualifier: text");
+    }
+}
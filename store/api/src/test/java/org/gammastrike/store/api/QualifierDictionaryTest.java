@@ -0,0 +1,71 @@
+package org.gammastrike.store.api;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+import javax.enterprise.util.AnnotationLiteral;
+
+import org.junit.Test;
+
+public class QualifierDictionaryTest {
+
+    @Retention(RetentionPolicy.RUNTIME)
+    public @interface Coded {
+
+        int value();
+    }
+
+    @SuppressWarnings("all")
+    private static class CodedLiteral extends AnnotationLiteral<Coded> implements Coded {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int value;
+
+        CodedLiteral(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public int value() {
+            return value;
+        }
+    }
+
+    @Test
+    public void acceptsRepeatedRegistration() {
+        QualifierDictionary.register(30001, new CodedLiteral(1));
+        QualifierDictionary.register(30001, new CodedLiteral(1));
+
+        assertEquals(30001, QualifierDictionary.codeOf(new CodedLiteral(1)));
+        assertEquals(new CodedLiteral(1), QualifierDictionary.qualifierOf(30001));
+    }
+
+    @Test
+    public void rejectsQualifierUnderAnotherCode() {
+        QualifierDictionary.register(30004, new CodedLiteral(4));
+        try {
+            QualifierDictionary.register(30005, new CodedLiteral(4));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        assertEquals(30004, QualifierDictionary.codeOf(new CodedLiteral(4)));
+        try {
+            QualifierDictionary.qualifierOf(30005);
+            fail();
+        } catch (IllegalStateException e) {
+            // nothing registered under the rejected code
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTakenCode() {
+        QualifierDictionary.register(30002, new CodedLiteral(2));
+        QualifierDictionary.register(30002, new CodedLiteral(3));
+    }
+}
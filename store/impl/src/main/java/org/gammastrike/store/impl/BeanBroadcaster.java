@@ -0,0 +1,21 @@
+package org.gammastrike.store.impl;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+
+/**
+ * Strategy for invoking a method on all targets of a broadcast, that is a proxied method invocation without a {@link org.gammastrike.store.api.BeanIdentifier}.
+ * Applications opt into another strategy than {@link SequentialBeanBroadcaster} by providing a bean of this type.
+ */
+public interface BeanBroadcaster {
+
+	/**
+	 * Invokes the given method on all targets.
+	 *
+	 * @param method the invoked method, which has a void return type
+	 * @param args the invocation's arguments
+	 * @param targets the bean instances to invoke the method on
+	 * @throws Throwable the first failure of any target, all further failures are attached as suppressed exceptions
+	 */
+	void broadcast(Method method, Object[] args, Collection<?> targets) throws Throwable;
+}
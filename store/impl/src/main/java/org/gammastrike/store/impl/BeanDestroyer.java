@@ -0,0 +1,28 @@
+package org.gammastrike.store.impl;
+
+import java.util.Collection;
+
+import org.gammastrike.store.api.BeanInstance;
+
+/**
+ * Destroys bean instances removed from a store.
+ */
+public interface BeanDestroyer {
+
+	/**
+	 * Destroys instances on the calling thread.
+	 */
+	BeanDestroyer SYNCHRONOUS = BeanInstances::destroy;
+
+	void destroy(BeanInstance<?> instance);
+
+	/**
+	 * Destroys all given instances. A failing destruction does not prevent the remaining instances from being destroyed.
+	 *
+	 * @param instances the instances to destroy
+	 * @see BeanInstances#destroyAll(Collection, java.util.function.Consumer)
+	 */
+	default void destroyAll(Collection<? extends BeanInstance<?>> instances) {
+		BeanInstances.destroyAll(instances, this::destroy);
+	}
+}
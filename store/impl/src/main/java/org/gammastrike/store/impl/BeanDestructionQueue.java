@@ -0,0 +1,156 @@
+package org.gammastrike.store.impl;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.gammastrike.store.api.BeanInstance;
+
+/**
+ * A {@link BeanDestroyer}, that hands instances to a background worker, which destroys them in batches. When the queue is full, instances are destroyed
+ * on the calling thread, which slows producers down to the worker's pace and keeps destructions triggered by the worker itself from blocking. Once the
+ * queue is closed, all instances are destroyed on the calling thread.
+ */
+public class BeanDestructionQueue implements BeanDestroyer, Closeable {
+
+	private final BlockingQueue<BeanInstance<?>> queue;
+	private final int maximumBatchSize;
+	private final Thread worker;
+	private final Object monitor;
+	private final LongAdder destroyedCount;
+	private final LongAdder callerDestroyedCount;
+	private final LongAdder failureCount;
+
+	private long pending;
+	private volatile boolean closed;
+
+	/**
+	 * @param capacity the number of instances, that may wait for destruction
+	 * @param maximumBatchSize the maximum number of instances destroyed by the worker at once
+	 */
+	public BeanDestructionQueue(int capacity, int maximumBatchSize) {
+		if (maximumBatchSize < 1) {
+			throw new IllegalArgumentException("Maximum batch size must be positive: " + maximumBatchSize);
+		}
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.maximumBatchSize = maximumBatchSize;
+		this.monitor = new Object();
+		this.destroyedCount = new LongAdder();
+		this.callerDestroyedCount = new LongAdder();
+		this.failureCount = new LongAdder();
+		this.worker = new Thread(this::work, "bean-destruction-worker");
+		this.worker.setDaemon(true);
+		this.worker.start();
+	}
+
+	/**
+	 * Stops the worker and destroys all waiting instances. Instances handed over afterwards are destroyed on the calling thread.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		worker.interrupt();
+		flush();
+	}
+
+	@Override
+	public void destroy(BeanInstance<?> instance) {
+		synchronized (monitor) {
+			pending++;
+		}
+		if (closed || !queue.offer(instance)) {
+			callerDestroyedCount.increment();
+			destroyBatch(Collections.<BeanInstance<?>> singletonList(instance));
+		} else if (closed) {
+			// closed while offering, the worker may already be gone
+			drain();
+		}
+	}
+
+	private void drain() {
+		List<BeanInstance<?>> batch = new ArrayList<>();
+		while (queue.drainTo(batch, maximumBatchSize) > 0) {
+			destroyBatch(batch);
+			batch.clear();
+		}
+	}
+
+	private void destroyBatch(List<BeanInstance<?>> instances) {
+		for (BeanInstance<?> instance : instances) {
+			try {
+				BeanInstances.destroy(instance);
+				destroyedCount.increment();
+			} catch (RuntimeException e) {
+				failureCount.increment();
+				Thread thread = Thread.currentThread();
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+			}
+		}
+		synchronized (monitor) {
+			pending -= instances.size();
+			if (pending == 0) {
+				monitor.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Destroys all waiting instances on the calling thread and waits for the batch currently destroyed by the worker.
+	 */
+	public void flush() {
+		drain();
+		boolean interrupted = false;
+		synchronized (monitor) {
+			while (pending > 0) {
+				try {
+					monitor.wait();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return the number of instances destroyed on the calling thread, because the queue was full
+	 */
+	public long getCallerDestroyedCount() {
+		return callerDestroyedCount.sum();
+	}
+
+	public long getDestroyedCount() {
+		return destroyedCount.sum();
+	}
+
+	public long getFailureCount() {
+		return failureCount.sum();
+	}
+
+	/**
+	 * @return the number of instances waiting for destruction
+	 */
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	private void work() {
+		List<BeanInstance<?>> batch = new ArrayList<>(maximumBatchSize);
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				batch.add(queue.take());
+				queue.drainTo(batch, maximumBatchSize - 1);
+				destroyBatch(batch);
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			// closed
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package org.gammastrike.store.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+import javax.enterprise.context.spi.Contextual;
+import javax.enterprise.context.spi.CreationalContext;
+import javax.enterprise.inject.spi.Bean;
+import javax.enterprise.inject.spi.BeanManager;
+import javax.enterprise.inject.spi.PassivationCapable;
+
+import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.api.BeanInstance;
+import org.gammastrike.store.api.ContextClassLoaderObjectInputStream;
+
+/**
+ * Converts bean instances to bytes and back. Only instances of {@link PassivationCapable} contextuals are supported: the contextual is written as its
+ * passivation id and looked up again on deserialization, which also creates a new {@link CreationalContext} for the restored instance.
+ * <p>
+ * Instances, that have not been materialized yet, are written without their instance and restored as a {@link LazyBeanInstance}, so serializing them
+ * does not create them.
+ */
+public class BeanInstanceSerializer {
+
+	private final BeanManager manager;
+
+	public BeanInstanceSerializer(BeanManager manager) {
+		this.manager = requireNonNull(manager);
+	}
+
+	public <T> BeanInstance<T> deserialize(byte[] data) throws IOException, ClassNotFoundException {
+		try (ObjectInputStream in = new ContextClassLoaderObjectInputStream(new ByteArrayInputStream(data))) {
+			String passivationId = in.readUTF();
+			@SuppressWarnings("unchecked")
+			Bean<T> contextual = (Bean<T>) manager.getPassivationCapableBean(passivationId);
+			if (contextual == null) {
+				throw new IOException("No contextual found for passivation id " + passivationId);
+			}
+			if (!in.readBoolean()) {
+				return LazyBeanInstance.create(manager, contextual);
+			}
+			@SuppressWarnings("unchecked")
+			T instance = (T) in.readObject();
+			CreationalContext<T> context = manager.createCreationalContext(contextual);
+			return new BeanInstanceImpl<>(contextual, instance, context);
+		}
+	}
+
+	public BeanIdentifier readIdentifier(DataInput in) throws IOException {
+		return BeanIdentifier.readFrom(in);
+	}
+
+	/**
+	 * Checks if the given instance can be serialized. This does not materialize lazy instances.
+	 *
+	 * @param instance the instance to check
+	 * @return true if the instance can be serialized
+	 */
+	public boolean isSerializable(BeanInstance<?> instance) {
+		return isSerializable(instance, instance.isMaterialized());
+	}
+
+	private boolean isSerializable(BeanInstance<?> instance, boolean materialized) {
+		Contextual<?> contextual = instance.getContextual();
+		if (!(contextual instanceof PassivationCapable)) {
+			return false;
+		}
+		return materialized ? instance.getInstance() instanceof Serializable : contextual instanceof Bean;
+	}
+
+	public byte[] serialize(BeanInstance<?> instance) throws IOException {
+		boolean materialized = instance.isMaterialized();
+		if (!isSerializable(instance, materialized)) {
+			throw new IOException("Bean instance of " + instance.getContextual() + " is not passivation capable");
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeUTF(((PassivationCapable) instance.getContextual()).getId());
+			out.writeBoolean(materialized);
+			if (materialized) {
+				out.writeObject(instance.getInstance());
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	public void writeIdentifier(DataOutput out, BeanIdentifier id) throws IOException {
+		id.writeTo(out);
+	}
+}
@@ -0,0 +1,61 @@
+package org.gammastrike.store.impl;
+
+import java.util.Collection;
+import java.util.function.Consumer;
+
+import org.gammastrike.store.api.BeanInstance;
+
+public final class BeanInstances {
+
+	/**
+	 * Destroys the given bean instance through its contextual and creational context. Instances, that have never been materialized, are not created just to
+	 * be destroyed, only their creational context is released.
+	 *
+	 * @param instance the bean instance to destroy
+	 */
+	public static <T> void destroy(BeanInstance<T> instance) {
+		if (instance.isMaterialized()) {
+			instance.getContextual().destroy(instance.getInstance(), instance.getCreationalContext());
+		} else if (instance.getCreationalContext() != null) {
+			instance.getCreationalContext().release();
+		}
+	}
+
+	/**
+	 * Destroys all given bean instances. A failing destruction does not prevent the remaining instances from being destroyed, its exception is rethrown
+	 * afterwards, carrying any later failures as suppressed exceptions.
+	 *
+	 * @param instances the bean instances to destroy
+	 */
+	public static void destroyAll(Collection<? extends BeanInstance<?>> instances) {
+		destroyAll(instances, BeanInstances::destroy);
+	}
+
+	/**
+	 * Hands all given bean instances to the given destruction. A failing destruction does not prevent the remaining instances from being handed over, its
+	 * exception is rethrown afterwards, carrying any later failures as suppressed exceptions.
+	 *
+	 * @param instances the bean instances to destroy
+	 * @param destruction destroys a single instance
+	 */
+	public static void destroyAll(Collection<? extends BeanInstance<?>> instances, Consumer<? super BeanInstance<?>> destruction) {
+		RuntimeException failure = null;
+		for (BeanInstance<?> instance : instances) {
+			try {
+				destruction.accept(instance);
+			} catch (RuntimeException e) {
+				if (failure == null) {
+					failure = e;
+				} else {
+					failure.addSuppressed(e);
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private BeanInstances() {
+	}
+}
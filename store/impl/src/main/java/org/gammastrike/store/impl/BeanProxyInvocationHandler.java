@@ -4,24 +4,38 @@ import java.io.Serializable;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
-import javax.enterprise.inject.Instance;
+import javax.enterprise.context.spi.CreationalContext;
 import javax.enterprise.inject.spi.Bean;
 import javax.enterprise.inject.spi.BeanManager;
 import javax.enterprise.inject.spi.CDI;
 
 import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.api.BeanInstance;
 import org.gammastrike.store.api.BeanStore;
+import org.gammastrike.store.impl.BeanResolutionCache.Resolution;
+import org.gammastrike.util.MethodDispatcher;
 
 public class BeanProxyInvocationHandler implements InvocationHandler, Serializable {
 
 	private static final long serialVersionUID = 1L;
 
+	private static final Annotation[] NO_QUALIFIERS = new Annotation[0];
+
+	private static <T> T reference(BeanManager manager, Bean<?> bean, Class<T> type, List<CreationalContext<?>> dependents) {
+		CreationalContext<?> context = manager.createCreationalContext(bean);
+		if (!manager.isNormalScope(bean.getScope())) {
+			dependents.add(context);
+		}
+		return type.cast(manager.getReference(bean, type, context));
+	}
+
 	private final BeanIdentifier identifier;
+	private transient BeanResolutionCache resolutionCache;
 
 	public BeanProxyInvocationHandler() {
 		this.identifier = null;
@@ -35,14 +49,18 @@ public class BeanProxyInvocationHandler implements InvocationHandler, Serializab
 		return CDI.current().getBeanManager();
 	}
 
-	protected Instance<BeanStore> getBeanStores() {
-		return CDI.current().select(BeanStore.class);
+	protected BeanResolutionCache getResolutionCache() {
+		BeanResolutionCache cache = resolutionCache;
+		if (cache == null) {
+			cache = CDI.current().select(BeanResolutionCache.class).get();
+			resolutionCache = cache;
+		}
+		return cache;
 	}
 
-	private Object invoke(Method method, Object[] args, Bean<?> bean, BeanIdentifier identifier) throws Exception {
-		Annotation[] qualifiers = identifier.getQualifiers();
-		Object instance = getBeanStores().select(qualifiers).get().get(identifier).getInstance();
-		return method.invoke(instance, args);
+	private Object invoke(Method method, Object[] args, BeanStore beanStore, BeanIdentifier identifier) throws Throwable {
+		Object instance = beanStore.get(identifier).getInstance();
+		return MethodDispatcher.invoke(method, instance, args);
 	}
 
 	@Override
@@ -52,44 +70,69 @@ public class BeanProxyInvocationHandler implements InvocationHandler, Serializab
 			throw new IllegalStateException("Could not intercept method call to " + method + ", because it has no void return type");
 		}
 
-		Bean<?> proxiedBean = proxiedBeanFor(method);
-		if (proxiedBean == null) {
-			throw new IllegalArgumentException("Could not resolve bean for invoked type of " + method);
+		Resolution resolution = resolutionFor(method);
+		try {
+			return invoke(method, args, resolution);
+		} finally {
+			if (!resolution.isCacheable()) {
+				resolution.release();
+			}
 		}
+	}
 
-		Object result = null;
-		Collection<Exception> occuredExceptions = new HashSet<>(2);
+	private Object invoke(Method method, Object[] args, Resolution resolution) throws Throwable {
 		if (identifier != null) {
-			try {
-				result = invoke(method, args, proxiedBean, identifier);
-			} catch (Exception exception) {
-				occuredExceptions.add(exception);
-			}
+			return invoke(method, args, resolution.getStores().get(0), identifier);
 		} else {
-			Iterator<BeanStore> storeIterator = getBeanStores().iterator();
-			while (storeIterator.hasNext()) {
-				Iterator<BeanIdentifier> identifierIterator = storeIterator.next().iterator();
-				while (identifierIterator.hasNext()) {
-					try {
-						invoke(method, args, proxiedBean, identifierIterator.next());
-					} catch (Exception exception) {
-						occuredExceptions.add(exception);
+			Class<?> beanType = method.getDeclaringClass();
+			List<Object> targets = new ArrayList<>();
+			for (BeanStore beanStore : resolution.getStores()) {
+				for (BeanIdentifier candidate : beanStore.identifiersOf(beanType)) {
+					BeanInstance<?> instance = beanStore.get(candidate);
+					if (instance != null && beanType.isInstance(instance.getInstance())) {
+						targets.add(instance.getInstance());
 					}
 				}
 			}
-		}
-
-		if (occuredExceptions.isEmpty()) {
-			return result;
-		} else {
-			throw occuredExceptions.iterator().next();
+			resolution.getBroadcaster().broadcast(method, args, targets);
+			return null;
 		}
 	}
 
-	private Bean<?> proxiedBeanFor(Method method) {
+	private Bean<?> proxiedBeanFor(Method method, Annotation[] qualifiers) {
 		BeanManager manager = getBeanManager();
-		Set<Bean<?>> beans = manager.getBeans(method.getDeclaringClass(), identifier.getQualifiers());
+		Set<Bean<?>> beans = manager.getBeans(method.getDeclaringClass(), qualifiers);
 		Bean<?> resolvedBean = manager.resolve(beans);
 		return resolvedBean;
 	}
+
+	private Resolution resolutionFor(Method method) {
+		boolean broadcast = identifier == null;
+		Annotation[] qualifiers = broadcast ? NO_QUALIFIERS : identifier.getQualifiers();
+		return getResolutionCache().resolve(method, qualifiers, broadcast, () -> {
+			if (proxiedBeanFor(method, qualifiers) == null) {
+				throw new IllegalArgumentException("Could not resolve bean for invoked type of " + method);
+			}
+
+			BeanManager manager = getBeanManager();
+			List<CreationalContext<?>> dependents = new ArrayList<>();
+			if (broadcast) {
+				List<BeanStore> stores = new ArrayList<>();
+				for (Bean<?> storeBean : manager.getBeans(BeanStore.class)) {
+					stores.add(reference(manager, storeBean, BeanStore.class, dependents));
+				}
+				Bean<?> broadcasterBean = manager.resolve(manager.getBeans(BeanBroadcaster.class));
+				BeanBroadcaster broadcaster = broadcasterBean == null ? SequentialBeanBroadcaster.INSTANCE
+						: reference(manager, broadcasterBean, BeanBroadcaster.class, dependents);
+				return new Resolution(stores, broadcaster, dependents);
+			} else {
+				Bean<?> storeBean = manager.resolve(manager.getBeans(BeanStore.class, qualifiers));
+				if (storeBean == null) {
+					throw new IllegalArgumentException("Could not resolve bean store for " + identifier);
+				}
+				List<BeanStore> stores = Collections.singletonList(reference(manager, storeBean, BeanStore.class, dependents));
+				return new Resolution(stores, null, dependents);
+			}
+		});
+	}
 }
@@ -1,6 +1,12 @@
 package org.gammastrike.store.impl;
 
 import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.annotation.PreDestroy;
 import javax.enterprise.context.spi.Context;
@@ -14,11 +20,34 @@ import org.gammastrike.store.api.annotation.Proxied;
 
 public class BeanProxyingContext implements Context {
 
+	private static Class<?>[] proxyInterfaces(Bean<?> bean) {
+		Set<Class<?>> interfaces = new LinkedHashSet<>();
+		for (Type type : bean.getTypes()) {
+			if (type instanceof ParameterizedType) {
+				type = ((ParameterizedType) type).getRawType();
+			}
+			if (type instanceof Class && ((Class<?>) type).isInterface()) {
+				interfaces.add((Class<?>) type);
+			}
+		}
+		return interfaces.toArray(new Class<?>[interfaces.size()]);
+	}
+
+	private final ConcurrentMap<Contextual<?>, Object> proxies = new ConcurrentHashMap<>();
+
 	private ProxyFactory proxyFactory;
 
+	private Object createProxy(Contextual<?> contextual) {
+		Bean<?> bean = (Bean<?>) contextual;
+		ClassLoader classLoader = bean.getBeanClass().getClassLoader();
+		BeanProxyInvocationHandler handler = new BeanProxyInvocationHandler();
+		return proxyFactory.createProxy(classLoader, handler, proxyInterfaces(bean));
+	}
+
 	@PreDestroy
 	void destroy() {
 		this.proxyFactory = null;
+		proxies.clear();
 	}
 
 	@Override
@@ -29,12 +58,7 @@ public class BeanProxyingContext implements Context {
 	@Override
 	@SuppressWarnings("unchecked")
 	public <T> T get(Contextual<T> contextual, CreationalContext<T> creationalContext) {
-		Bean<?> bean = (Bean<?>) contextual;
-		ClassLoader classLoader = bean.getBeanClass().getClassLoader();
-		BeanProxyInvocationHandler handler = new BeanProxyInvocationHandler();
-		Class<?>[] proxyClasses = bean.getTypes().toArray(new Class<?>[bean.getTypes().size()]);
-		T proxy = (T) proxyFactory.createProxy(classLoader, handler, proxyClasses);
-		return proxy;
+		return (T) proxies.computeIfAbsent(contextual, this::createProxy);
 	}
 
 	@Override
@@ -42,6 +66,9 @@ public class BeanProxyingContext implements Context {
 		return Proxied.class;
 	}
 
+	/**
+	 * @param proxyFactory the factory injected without qualifier, which reuses proxy classes across contexts and deployments of the same interfaces
+	 */
 	@Inject
 	void initWithProxyFactory(ProxyFactory proxyFactory) {
 		this.proxyFactory = proxyFactory;
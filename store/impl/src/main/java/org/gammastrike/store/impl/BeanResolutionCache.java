@@ -0,0 +1,134 @@
+package org.gammastrike.store.impl;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.spi.CreationalContext;
+
+import org.gammastrike.store.api.BeanStore;
+
+/**
+ * Caches the deployment-static resolution results of {@link BeanProxyInvocationHandler}, so that proxied invocations do not have to query the container. Only
+ * resolutions of normal-scoped beans are cached, as their client proxies may be shared. The cache lives as long as the application.
+ */
+@ApplicationScoped
+public class BeanResolutionCache {
+
+	public static class Resolution {
+
+		private final List<BeanStore> stores;
+		private final BeanBroadcaster broadcaster;
+		private final List<CreationalContext<?>> dependents;
+
+		/**
+		 * @param stores the resolved stores
+		 * @param broadcaster the resolved broadcaster or null, if the resolution is not for a broadcast
+		 * @param dependents the creational contexts of all resolved {@link javax.enterprise.context.Dependent} instances
+		 */
+		public Resolution(List<BeanStore> stores, BeanBroadcaster broadcaster, List<CreationalContext<?>> dependents) {
+			this.stores = stores;
+			this.broadcaster = broadcaster;
+			this.dependents = dependents;
+		}
+
+		public BeanBroadcaster getBroadcaster() {
+			return broadcaster;
+		}
+
+		public List<BeanStore> getStores() {
+			return stores;
+		}
+
+		/**
+		 * @return true if all resolved instances are client proxies of normal-scoped beans, so the resolution may be reused
+		 */
+		public boolean isCacheable() {
+			return dependents.isEmpty();
+		}
+
+		/**
+		 * Destroys the resolved dependent instances.
+		 */
+		public void release() {
+			for (CreationalContext<?> dependent : dependents) {
+				dependent.release();
+			}
+		}
+	}
+
+	private static class ResolutionKey {
+
+		private final Method method;
+		private final Set<Annotation> qualifiers;
+		private final boolean broadcast;
+
+		public ResolutionKey(Method method, Annotation[] qualifiers, boolean broadcast) {
+			this.method = method;
+			this.qualifiers = new HashSet<>(Arrays.asList(qualifiers));
+			this.broadcast = broadcast;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + (broadcast ? 1231 : 1237);
+			result = prime * result + method.hashCode();
+			result = prime * result + qualifiers.hashCode();
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj == null) {
+				return false;
+			}
+			if (getClass() != obj.getClass()) {
+				return false;
+			}
+			ResolutionKey other = (ResolutionKey) obj;
+			return broadcast == other.broadcast && method.equals(other.method) && qualifiers.equals(other.qualifiers);
+		}
+	}
+
+	private final ConcurrentMap<ResolutionKey, Resolution> resolutions;
+
+	public BeanResolutionCache() {
+		resolutions = new ConcurrentHashMap<>();
+	}
+
+	@PreDestroy
+	public void invalidate() {
+		resolutions.clear();
+	}
+
+	/**
+	 * Returns the cached resolution or resolves it. Resolutions, that are not {@link Resolution#isCacheable() cacheable}, are returned without caching them
+	 * and have to be released by the caller.
+	 */
+	public Resolution resolve(Method method, Annotation[] qualifiers, boolean broadcast, Supplier<Resolution> resolver) {
+		ResolutionKey key = new ResolutionKey(method, qualifiers, broadcast);
+		Resolution resolution = resolutions.get(key);
+		if (resolution != null) {
+			return resolution;
+		}
+		resolution = resolver.get();
+		if (resolution.isCacheable()) {
+			Resolution cached = resolutions.putIfAbsent(key, resolution);
+			return cached != null ? cached : resolution;
+		}
+		return resolution;
+	}
+}
@@ -0,0 +1,75 @@
+package org.gammastrike.store.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.api.BeanStore;
+import org.gammastrike.store.api.BeanStoreListener;
+
+/**
+ * Maps ids to the {@link BeanStore} holding their instance. The directory is kept current by listening to the registered stores, so it only knows about
+ * stores supporting listeners. Entries may briefly be stale, so callers have to check the store they get.
+ */
+public class BeanStoreDirectory implements BeanStoreListener {
+
+	private final ConcurrentMap<BeanIdentifier, BeanStore> owners;
+
+	public BeanStoreDirectory() {
+		owners = new ConcurrentHashMap<>();
+	}
+
+	@Override
+	public void added(BeanStore store, BeanIdentifier id) {
+		owners.put(id, store);
+	}
+
+	@Override
+	public void cleared(BeanStore store) {
+		owners.values().removeIf(owner -> owner == store);
+	}
+
+	/**
+	 * @param id the id of an instance
+	 * @return the store, that last added an instance for the id, or null if unknown
+	 */
+	public BeanStore ownerOf(BeanIdentifier id) {
+		return owners.get(id);
+	}
+
+	/**
+	 * Starts tracking the ids of the given store, including the ones it already holds.
+	 *
+	 * @param store the store to track
+	 * @return false if the store does not support listeners and can not be tracked
+	 */
+	public boolean register(BeanStore store) {
+		if (!store.supportsListeners()) {
+			return false;
+		}
+		store.addListener(this);
+		for (BeanIdentifier id : store) {
+			owners.putIfAbsent(id, store);
+		}
+		return true;
+	}
+
+	@Override
+	public void removed(BeanStore store, BeanIdentifier id) {
+		owners.remove(id, store);
+	}
+
+	public int size() {
+		return owners.size();
+	}
+
+	/**
+	 * Stops tracking the given store and forgets its ids.
+	 *
+	 * @param store the store to stop tracking
+	 */
+	public void unregister(BeanStore store) {
+		store.removeListener(this);
+		cleared(store);
+	}
+}
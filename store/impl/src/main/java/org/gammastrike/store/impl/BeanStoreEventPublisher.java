@@ -0,0 +1,259 @@
+package org.gammastrike.store.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.api.BeanStore;
+import org.gammastrike.store.api.BeanStoreEvent;
+import org.gammastrike.store.api.BeanStoreEvent.Type;
+import org.gammastrike.store.api.BeanStoreListener;
+
+/**
+ * Publishes the notifications of the stores it listens to as {@link BeanStoreEvent}s to asynchronous subscribers. Events are written to a fixed-size ring
+ * buffer without locking, and every subscription reads them at its own pace on the publisher's executor. Stores never wait for subscribers: a subscriber
+ * falling behind by more than the buffer's capacity loses the overwritten events, which are counted as dropped.
+ * <p>
+ * A publisher created with its default executor owns that executor and shuts it down, when it is closed.
+ */
+public class BeanStoreEventPublisher implements BeanStoreListener, Closeable {
+
+	private static class Slot {
+
+		private final long sequence;
+		private final BeanStoreEvent event;
+
+		public Slot(long sequence, BeanStoreEvent event) {
+			this.sequence = sequence;
+			this.event = event;
+		}
+	}
+
+	/**
+	 * The registration of a subscriber. Closing it stops the delivery of events.
+	 */
+	public class Subscription implements Closeable {
+
+		private final Consumer<? super BeanStoreEvent> subscriber;
+		private final AtomicBoolean scheduled;
+		private final LongAdder droppedCount;
+		private volatile long cursor;
+		private volatile boolean closed;
+
+		private Subscription(Consumer<? super BeanStoreEvent> subscriber, long cursor) {
+			this.subscriber = subscriber;
+			this.scheduled = new AtomicBoolean();
+			this.droppedCount = new LongAdder();
+			this.cursor = cursor;
+		}
+
+		private boolean available() {
+			Slot slot = slots.get(index(cursor));
+			return !closed && slot != null && slot.sequence >= cursor;
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+			subscriptions.remove(this);
+		}
+
+		private void drain() {
+			do {
+				while (!closed) {
+					long sequence = cursor;
+					Slot slot = slots.get(index(sequence));
+					if (slot == null || slot.sequence < sequence) {
+						break;
+					}
+					if (slot.sequence > sequence) {
+						long oldest = slot.sequence - slots.length() + 1;
+						droppedCount.add(oldest - sequence);
+						BeanStoreEventPublisher.this.droppedCount.add(oldest - sequence);
+						cursor = oldest;
+						continue;
+					}
+					cursor = sequence + 1;
+					try {
+						subscriber.accept(slot.event);
+					} catch (RuntimeException e) {
+						Thread thread = Thread.currentThread();
+						thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+					}
+				}
+				scheduled.set(false);
+			} while (available() && scheduled.compareAndSet(false, true));
+		}
+
+		/**
+		 * @return the number of events lost, because they had been overwritten before this subscription read them
+		 */
+		public long getDroppedCount() {
+			return droppedCount.sum();
+		}
+
+		/**
+		 * @return the number of published events, that this subscription has not read yet
+		 */
+		public long getLag() {
+			return Math.max(0, published.get() - cursor);
+		}
+
+		private void schedule() {
+			if (!closed && scheduled.compareAndSet(false, true)) {
+				try {
+					executor.execute(this::drain);
+				} catch (RuntimeException e) {
+					scheduled.set(false);
+					if (!closed) {
+						throw e;
+					}
+				}
+			}
+		}
+	}
+
+	private static final int DEFAULT_CAPACITY = 1 << 14;
+
+	/**
+	 * @return an executor with a daemon thread per busy subscription, that terminates idle threads
+	 */
+	private static ExecutorService defaultExecutor() {
+		return Executors.newCachedThreadPool(task -> {
+			Thread thread = new Thread(task, "bean-store-event-publisher");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private final AtomicReferenceArray<Slot> slots;
+	private final AtomicLong published;
+	private final LongAdder droppedCount;
+	private final List<Subscription> subscriptions;
+	private final Executor executor;
+	private final boolean ownsExecutor;
+	private volatile boolean closed;
+
+	public BeanStoreEventPublisher() {
+		this(DEFAULT_CAPACITY, defaultExecutor(), true);
+	}
+
+	/**
+	 * @param capacity the number of events buffered for slow subscribers, rounded up to a power of two
+	 * @param executor the executor delivering events to subscribers, that is not shut down by the publisher
+	 */
+	public BeanStoreEventPublisher(int capacity, Executor executor) {
+		this(capacity, executor, false);
+	}
+
+	private BeanStoreEventPublisher(int capacity, Executor executor, boolean ownsExecutor) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		this.slots = new AtomicReferenceArray<>(Integer.highestOneBit(Math.max(1, capacity - 1)) << 1);
+		this.published = new AtomicLong();
+		this.droppedCount = new LongAdder();
+		this.subscriptions = new CopyOnWriteArrayList<>();
+		this.executor = requireNonNull(executor);
+		this.ownsExecutor = ownsExecutor;
+	}
+
+	@Override
+	public void added(BeanStore store, BeanIdentifier id) {
+		publish(new BeanStoreEvent(Type.PUT, store, id));
+	}
+
+	@Override
+	public void cleared(BeanStore store) {
+		publish(new BeanStoreEvent(Type.CLEAR, store, null));
+	}
+
+	/**
+	 * Closes all subscriptions and shuts down the default executor. Events published afterwards are not delivered.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		for (Subscription subscription : subscriptions) {
+			subscription.close();
+		}
+		if (ownsExecutor) {
+			((ExecutorService) executor).shutdown();
+		}
+	}
+
+	@Override
+	public void expired(BeanStore store, BeanIdentifier id) {
+		publish(new BeanStoreEvent(Type.EXPIRE, store, id));
+	}
+
+	/**
+	 * @return the number of events lost by all subscriptions
+	 */
+	public long getDroppedCount() {
+		return droppedCount.sum();
+	}
+
+	/**
+	 * @return the number of published events
+	 */
+	public long getPublishedCount() {
+		return published.get();
+	}
+
+	private int index(long sequence) {
+		return (int) sequence & (slots.length() - 1);
+	}
+
+	/**
+	 * Publishes an event to all subscribers. Never blocks. When a slower writer finds its slot already taken by an event published a full lap later, its
+	 * event is lost instead of overwriting the newer one.
+	 *
+	 * @param event the event
+	 */
+	public void publish(BeanStoreEvent event) {
+		long sequence = published.getAndIncrement();
+		int index = index(sequence);
+		Slot slot = new Slot(sequence, event);
+		Slot current;
+		do {
+			current = slots.get(index);
+		} while ((current == null || current.sequence < sequence) && !slots.compareAndSet(index, current, slot));
+		for (Subscription subscription : subscriptions) {
+			subscription.schedule();
+		}
+	}
+
+	@Override
+	public void removed(BeanStore store, BeanIdentifier id) {
+		publish(new BeanStoreEvent(Type.REMOVE, store, id));
+	}
+
+	/**
+	 * Subscribes to all events published from now on.
+	 *
+	 * @param subscriber the subscriber, that is called for one event at a time
+	 * @return the subscription
+	 * @throws IllegalStateException if the publisher has been closed
+	 */
+	public Subscription subscribe(Consumer<? super BeanStoreEvent> subscriber) {
+		Subscription subscription = new Subscription(requireNonNull(subscriber), published.get());
+		subscriptions.add(subscription);
+		if (closed) {
+			subscription.close();
+			throw new IllegalStateException("Publisher closed");
+		}
+		return subscription;
+	}
+}
@@ -15,14 +15,27 @@ import org.gammastrike.binding.api.event.ProcessTypeBindings;
 
 public class BeanStoreExtension implements Extension {
 
+	private static final int DESTRUCTION_QUEUE_CAPACITY = 4096;
+	private static final int DESTRUCTION_BATCH_SIZE = 64;
+
 	private UnmanagedInstance<BeanProxyingContext> contextInstance;
+	private BeanDestructionQueue destructionQueue;
 
 	void checkBindingAnnotations(@Observes ProcessBoundedTypes event, BeanManager manager) {
 		// TODO
 	}
 
+	/**
+	 * @return the destroyer, that removed instances are handed to for destruction in the background until shutdown
+	 */
+	public BeanDestroyer getDestroyer() {
+		BeanDestroyer destroyer = destructionQueue;
+		return destroyer != null ? destroyer : BeanDestroyer.SYNCHRONOUS;
+	}
+
 	void init(@Observes BeforeBeanDiscovery event, BeanManager manager) {
 		contextInstance = new Unmanaged<>(manager, BeanProxyingContext.class).newInstance();
+		destructionQueue = new BeanDestructionQueue(DESTRUCTION_QUEUE_CAPACITY, DESTRUCTION_BATCH_SIZE);
 	}
 
 	void initContextWithFactory(@Observes AfterDeploymentValidation event, BeanManager manager) {
@@ -34,6 +47,9 @@ public class BeanStoreExtension implements Extension {
 	}
 
 	void onShutdown(@Observes BeforeShutdown event) {
+		BeanDestructionQueue queue = destructionQueue;
+		destructionQueue = null;
+		queue.close();
 		contextInstance.preDestroy().dispose();
 	}
 
@@ -0,0 +1,54 @@
+package org.gammastrike.store.impl;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.api.BeanStore;
+import org.gammastrike.store.api.BeanStoreListener;
+
+/**
+ * The listeners of a {@link BeanStore}, for stores implementing {@link BeanStore#addListener(BeanStoreListener)}.
+ */
+public class BeanStoreListeners {
+
+	private final BeanStore store;
+	private final List<BeanStoreListener> listeners;
+
+	public BeanStoreListeners(BeanStore store) {
+		this.store = store;
+		this.listeners = new CopyOnWriteArrayList<>();
+	}
+
+	public void add(BeanStoreListener listener) {
+		listeners.add(listener);
+	}
+
+	public void fireAdded(BeanIdentifier id) {
+		for (BeanStoreListener listener : listeners) {
+			listener.added(store, id);
+		}
+	}
+
+	public void fireCleared() {
+		for (BeanStoreListener listener : listeners) {
+			listener.cleared(store);
+		}
+	}
+
+	public void fireExpired(BeanIdentifier id) {
+		for (BeanStoreListener listener : listeners) {
+			listener.expired(store, id);
+		}
+	}
+
+	public void fireRemoved(BeanIdentifier id) {
+		for (BeanStoreListener listener : listeners) {
+			listener.removed(store, id);
+		}
+	}
+
+	public void remove(BeanStoreListener listener) {
+		listeners.remove(listener);
+	}
+}
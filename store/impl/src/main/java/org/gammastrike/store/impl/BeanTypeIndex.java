@@ -0,0 +1,161 @@
+package org.gammastrike.store.impl;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.enterprise.context.spi.Contextual;
+import javax.enterprise.inject.spi.Bean;
+
+import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.api.BeanInstance;
+
+/**
+ * Secondary index of a {@link org.gammastrike.store.api.BeanStore}, that groups the stored ids by the bean types and qualifiers of their instances. The number
+ * of distinct groups is bound by the number of beans, so looking up all ids assignable to a type does not depend on the number of stored instances.
+ */
+public class BeanTypeIndex {
+
+	private static class IndexKey {
+
+		private final Set<Class<?>> types;
+		private final Set<Annotation> qualifiers;
+
+		public IndexKey(Set<Class<?>> types, Set<Annotation> qualifiers) {
+			this.types = types;
+			this.qualifiers = qualifiers;
+		}
+
+		public boolean matches(Class<?> type, Annotation[] requiredQualifiers) {
+			for (Annotation qualifier : requiredQualifiers) {
+				if (!qualifiers.contains(qualifier)) {
+					return false;
+				}
+			}
+			for (Class<?> candidate : types) {
+				if (type.isAssignableFrom(candidate)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + qualifiers.hashCode();
+			result = prime * result + types.hashCode();
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (obj == null) {
+				return false;
+			}
+			if (getClass() != obj.getClass()) {
+				return false;
+			}
+			IndexKey other = (IndexKey) obj;
+			return qualifiers.equals(other.qualifiers) && types.equals(other.types);
+		}
+	}
+
+	private static class FlatIterator implements Iterator<BeanIdentifier> {
+
+		private final Iterator<Set<BeanIdentifier>> groups;
+		private Iterator<BeanIdentifier> current;
+
+		public FlatIterator(Collection<Set<BeanIdentifier>> groups) {
+			this.groups = groups.iterator();
+			this.current = Collections.emptyIterator();
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (!current.hasNext()) {
+				if (!groups.hasNext()) {
+					return false;
+				}
+				current = groups.next().iterator();
+			}
+			return true;
+		}
+
+		@Override
+		public BeanIdentifier next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return current.next();
+		}
+	}
+
+	private static Set<Class<?>> typesOf(BeanInstance<?> instance) {
+		Contextual<?> contextual = instance.getContextual();
+		if (contextual instanceof Bean) {
+			Set<Class<?>> types = new HashSet<>();
+			for (Type type : ((Bean<?>) contextual).getTypes()) {
+				if (type instanceof Class) {
+					types.add((Class<?>) type);
+				} else if (type instanceof ParameterizedType) {
+					types.add((Class<?>) ((ParameterizedType) type).getRawType());
+				}
+			}
+			return types;
+		} else {
+			return Collections.<Class<?>> singleton(instance.getInstance().getClass());
+		}
+	}
+
+	private static IndexKey keyOf(BeanIdentifier id, BeanInstance<?> instance) {
+		Set<Annotation> qualifiers = new HashSet<>(Arrays.asList(id.getQualifiers()));
+		return new IndexKey(typesOf(instance), qualifiers);
+	}
+
+	private final ConcurrentMap<IndexKey, Set<BeanIdentifier>> identifiers;
+
+	public BeanTypeIndex() {
+		identifiers = new ConcurrentHashMap<>();
+	}
+
+	public void add(BeanIdentifier id, BeanInstance<?> instance) {
+		identifiers.computeIfAbsent(keyOf(id, instance), k -> ConcurrentHashMap.newKeySet()).add(id);
+	}
+
+	public void clear() {
+		identifiers.clear();
+	}
+
+	public Iterable<BeanIdentifier> identifiersOf(Class<?> type, Annotation... qualifiers) {
+		List<Set<BeanIdentifier>> groups = new ArrayList<>();
+		identifiers.forEach((key, group) -> {
+			if (key.matches(type, qualifiers)) {
+				groups.add(group);
+			}
+		});
+		return () -> new FlatIterator(groups);
+	}
+
+	public void remove(BeanIdentifier id, BeanInstance<?> instance) {
+		Set<BeanIdentifier> group = identifiers.get(keyOf(id, instance));
+		if (group != null) {
+			group.remove(id);
+		}
+	}
+}
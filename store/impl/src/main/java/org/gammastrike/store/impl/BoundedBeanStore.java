@@ -0,0 +1,464 @@
+package org.gammastrike.store.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.api.BeanInstance;
+import org.gammastrike.store.api.BeanStore;
+import org.gammastrike.store.api.BeanStoreListener;
+
+/**
+ * A {@link BeanStore} with a maximum size and optional expiry of entries after a time to live or a maximum idle time. Entries are evicted following the
+ * W-TinyLFU policy: New entries are admitted to a small LRU window. Entries leaving the window only replace an entry of the main space, if they have been
+ * accessed more frequently than the main space's eviction victim. Evicted and expired instances are destroyed.
+ */
+public class BoundedBeanStore implements BeanStore {
+
+	private enum Queue {
+		NONE, WINDOW, PROBATION, PROTECTED
+	}
+
+	private static class Node {
+
+		private final BeanIdentifier id;
+		private final BeanInstance<?> instance;
+		private final long writeTime;
+		private volatile long accessTime;
+		private Queue queue;
+		private Node previous;
+		private Node next;
+
+		public Node(BeanIdentifier id, BeanInstance<?> instance, long now) {
+			this.id = id;
+			this.instance = instance;
+			this.writeTime = now;
+			this.accessTime = now;
+			this.queue = Queue.NONE;
+		}
+	}
+
+	private static class NodeDeque {
+
+		private final Queue queue;
+		private Node head;
+		private Node tail;
+		private int size;
+
+		public NodeDeque(Queue queue) {
+			this.queue = queue;
+		}
+
+		public void addLast(Node node) {
+			node.queue = queue;
+			node.previous = tail;
+			node.next = null;
+			if (tail == null) {
+				head = node;
+			} else {
+				tail.next = node;
+			}
+			tail = node;
+			size++;
+		}
+
+		public void clear() {
+			head = null;
+			tail = null;
+			size = 0;
+		}
+
+		public void moveToLast(Node node) {
+			if (node != tail) {
+				remove(node);
+				addLast(node);
+			}
+		}
+
+		public void remove(Node node) {
+			if (node.previous == null) {
+				head = node.next;
+			} else {
+				node.previous.next = node.next;
+			}
+			if (node.next == null) {
+				tail = node.previous;
+			} else {
+				node.next.previous = node.previous;
+			}
+			node.previous = null;
+			node.next = null;
+			node.queue = Queue.NONE;
+			size--;
+		}
+	}
+
+	private final int maximumSize;
+	private final int maximumWindowSize;
+	private final int maximumProtectedSize;
+	private final long timeToLive;
+	private final long maxIdleTime;
+
+	private final ConcurrentMap<BeanIdentifier, Node> nodes;
+	private final BeanTypeIndex index;
+	private final BeanStoreListeners listeners;
+	private final ReentrantLock evictionLock;
+	private final FrequencySketch sketch;
+	private final NodeDeque window;
+	private final NodeDeque probation;
+	private final NodeDeque protectedSpace;
+
+	private final LongAdder hitCount;
+	private final LongAdder missCount;
+	private final LongAdder evictionCount;
+	private final LongAdder expirationCount;
+	private final BeanDestroyer destroyer;
+
+	public BoundedBeanStore(int maximumSize) {
+		this(maximumSize, 0, 0, TimeUnit.NANOSECONDS);
+	}
+
+	public BoundedBeanStore(int maximumSize, long timeToLive, long maxIdleTime, TimeUnit unit) {
+		this(maximumSize, timeToLive, maxIdleTime, unit, BeanDestroyer.SYNCHRONOUS);
+	}
+
+	/**
+	 * @param maximumSize the maximum number of stored instances
+	 * @param timeToLive the time after which an entry expires since it has been put, or 0 for no expiry
+	 * @param maxIdleTime the time after which an entry expires since it has been last accessed, or 0 for no expiry
+	 * @param unit the unit of both times
+	 * @param destroyer the destroyer of evicted, expired, replaced and cleared instances
+	 */
+	public BoundedBeanStore(int maximumSize, long timeToLive, long maxIdleTime, TimeUnit unit, BeanDestroyer destroyer) {
+		if (maximumSize < 1) {
+			throw new IllegalArgumentException("Maximum size must be positive: " + maximumSize);
+		}
+		this.maximumSize = maximumSize;
+		this.maximumWindowSize = Math.max(1, maximumSize / 100);
+		this.maximumProtectedSize = (int) (0.8 * (maximumSize - maximumWindowSize));
+		this.timeToLive = unit.toNanos(timeToLive);
+		this.maxIdleTime = unit.toNanos(maxIdleTime);
+		this.nodes = new ConcurrentHashMap<>();
+		this.index = new BeanTypeIndex();
+		this.listeners = new BeanStoreListeners(this);
+		this.evictionLock = new ReentrantLock();
+		this.sketch = new FrequencySketch(maximumSize);
+		this.window = new NodeDeque(Queue.WINDOW);
+		this.probation = new NodeDeque(Queue.PROBATION);
+		this.protectedSpace = new NodeDeque(Queue.PROTECTED);
+		this.hitCount = new LongAdder();
+		this.missCount = new LongAdder();
+		this.evictionCount = new LongAdder();
+		this.expirationCount = new LongAdder();
+		this.destroyer = requireNonNull(destroyer);
+	}
+
+	@Override
+	public void addListener(BeanStoreListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes and destroys all expired entries. Entries expiring by idle time are also removed on writes, but entries expiring by their time to live are only
+	 * detected on access and by this method.
+	 */
+	public void cleanUp() {
+		List<BeanInstance<?>> destroyed = new ArrayList<>();
+		long now = System.nanoTime();
+		evictionLock.lock();
+		try {
+			for (Node node : nodes.values()) {
+				if (isExpired(node, now)) {
+					expire(node, destroyed);
+				}
+			}
+		} finally {
+			evictionLock.unlock();
+		}
+		destroy(destroyed);
+	}
+
+	@Override
+	public void clear() {
+		List<BeanInstance<?>> destroyed = new ArrayList<>();
+		evictionLock.lock();
+		try {
+			for (Node node : nodes.values()) {
+				destroyed.add(node.instance);
+			}
+			nodes.clear();
+			index.clear();
+			window.clear();
+			probation.clear();
+			protectedSpace.clear();
+			listeners.fireCleared();
+		} finally {
+			evictionLock.unlock();
+		}
+		destroy(destroyed);
+	}
+
+	@Override
+	public boolean contains(BeanIdentifier id) {
+		Node node = nodes.get(id);
+		return node != null && !isExpired(node, System.nanoTime());
+	}
+
+	private void destroy(List<BeanInstance<?>> destroyed) {
+		if (!destroyed.isEmpty()) {
+			destroyer.destroyAll(destroyed);
+		}
+	}
+
+	private void evict(List<BeanInstance<?>> destroyed) {
+		while (window.size > maximumWindowSize) {
+			Node candidate = window.head;
+			window.remove(candidate);
+			probation.addLast(candidate);
+		}
+		while (nodes.size() > maximumSize) {
+			Node victim = probation.head;
+			Node candidate = probation.tail;
+			if (victim == null) {
+				victim = protectedSpace.head != null ? protectedSpace.head : window.head;
+			} else if (candidate != victim && sketch.frequency(candidate.id) <= sketch.frequency(victim.id)) {
+				victim = candidate;
+			}
+			unlink(victim);
+			nodes.remove(victim.id, victim);
+			index.remove(victim.id, victim.instance);
+			destroyed.add(victim.instance);
+			evictionCount.increment();
+			listeners.fireRemoved(victim.id);
+		}
+	}
+
+	private void expire(Node node, List<BeanInstance<?>> destroyed) {
+		if (nodes.remove(node.id, node)) {
+			unlink(node);
+			index.remove(node.id, node.instance);
+			destroyed.add(node.instance);
+			expirationCount.increment();
+			listeners.fireExpired(node.id);
+		}
+	}
+
+	private void expireIdle(NodeDeque deque, long now, List<BeanInstance<?>> destroyed) {
+		while (deque.head != null && isExpired(deque.head, now)) {
+			expire(deque.head, destroyed);
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> BeanInstance<T> get(BeanIdentifier id) {
+		Node node = nodes.get(id);
+		if (node == null) {
+			missCount.increment();
+			return null;
+		}
+
+		long now = System.nanoTime();
+		if (isExpired(node, now)) {
+			List<BeanInstance<?>> destroyed = new ArrayList<>(1);
+			evictionLock.lock();
+			try {
+				expire(node, destroyed);
+			} finally {
+				evictionLock.unlock();
+			}
+			destroy(destroyed);
+			missCount.increment();
+			return null;
+		}
+
+		hitCount.increment();
+		node.accessTime = now;
+		if (evictionLock.tryLock()) {
+			try {
+				onAccess(node);
+			} finally {
+				evictionLock.unlock();
+			}
+		}
+		return (BeanInstance<T>) node.instance;
+	}
+
+	public long getEvictionCount() {
+		return evictionCount.sum();
+	}
+
+	public long getExpirationCount() {
+		return expirationCount.sum();
+	}
+
+	public long getHitCount() {
+		return hitCount.sum();
+	}
+
+	public long getMissCount() {
+		return missCount.sum();
+	}
+
+	@Override
+	public Iterable<BeanIdentifier> identifiersOf(Class<?> type, Annotation... qualifiers) {
+		return index.identifiersOf(type, qualifiers);
+	}
+
+	@Override
+	public boolean isAvailable() {
+		return true;
+	}
+
+	private boolean isExpired(Node node, long now) {
+		return (timeToLive > 0 && now - node.writeTime >= timeToLive) || (maxIdleTime > 0 && now - node.accessTime >= maxIdleTime);
+	}
+
+	/**
+	 * @return an iterator over the ids, whose {@link Iterator#remove()} removes the current entry from all queues and the index and destroys its instance
+	 */
+	@Override
+	public Iterator<BeanIdentifier> iterator() {
+		Iterator<BeanIdentifier> ids = nodes.keySet().iterator();
+		return new Iterator<BeanIdentifier>() {
+
+			private BeanIdentifier current;
+
+			@Override
+			public boolean hasNext() {
+				return ids.hasNext();
+			}
+
+			@Override
+			public BeanIdentifier next() {
+				current = ids.next();
+				return current;
+			}
+
+			@Override
+			public void remove() {
+				if (current == null) {
+					throw new IllegalStateException("No current identifier");
+				}
+				BeanInstance<?> removed = BoundedBeanStore.this.remove(current);
+				current = null;
+				if (removed != null) {
+					destroyer.destroy(removed);
+				}
+			}
+		};
+	}
+
+	private void onAccess(Node node) {
+		sketch.increment(node.id);
+		switch (node.queue) {
+		case WINDOW:
+			window.moveToLast(node);
+			break;
+		case PROBATION:
+			probation.remove(node);
+			protectedSpace.addLast(node);
+			while (protectedSpace.size > maximumProtectedSize) {
+				Node demoted = protectedSpace.head;
+				protectedSpace.remove(demoted);
+				probation.addLast(demoted);
+			}
+			break;
+		case PROTECTED:
+			protectedSpace.moveToLast(node);
+			break;
+		default:
+			// concurrently removed
+			break;
+		}
+	}
+
+	@Override
+	public <T> void put(BeanIdentifier id, BeanInstance<T> instance) {
+		List<BeanInstance<?>> destroyed = new ArrayList<>();
+		long now = System.nanoTime();
+		Node node = new Node(id, instance, now);
+		evictionLock.lock();
+		try {
+			Node previous = nodes.put(id, node);
+			if (previous != null) {
+				unlink(previous);
+				index.remove(id, previous.instance);
+				if (previous.instance != instance) {
+					destroyed.add(previous.instance);
+				}
+			}
+			index.add(id, instance);
+			listeners.fireAdded(id);
+			sketch.increment(id);
+			window.addLast(node);
+			if (maxIdleTime > 0) {
+				expireIdle(window, now, destroyed);
+				expireIdle(probation, now, destroyed);
+				expireIdle(protectedSpace, now, destroyed);
+			}
+			evict(destroyed);
+		} finally {
+			evictionLock.unlock();
+		}
+		destroy(destroyed);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> BeanInstance<T> remove(BeanIdentifier id) {
+		evictionLock.lock();
+		try {
+			Node node = nodes.remove(id);
+			if (node == null) {
+				return null;
+			}
+			unlink(node);
+			index.remove(id, node.instance);
+			listeners.fireRemoved(id);
+			return (BeanInstance<T>) node.instance;
+		} finally {
+			evictionLock.unlock();
+		}
+	}
+
+	@Override
+	public void removeListener(BeanStoreListener listener) {
+		listeners.remove(listener);
+	}
+
+	@Override
+	public int size() {
+		return nodes.size();
+	}
+
+	@Override
+	public boolean supportsListeners() {
+		return true;
+	}
+
+	private void unlink(Node node) {
+		switch (node.queue) {
+		case WINDOW:
+			window.remove(node);
+			break;
+		case PROBATION:
+			probation.remove(node);
+			break;
+		case PROTECTED:
+			protectedSpace.remove(node);
+			break;
+		default:
+			break;
+		}
+	}
+}
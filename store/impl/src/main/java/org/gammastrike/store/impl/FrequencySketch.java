@@ -0,0 +1,78 @@
+package org.gammastrike.store.impl;
+
+/**
+ * A count-min sketch with 4-bit counters, that estimates the access frequency of keys within a sliding sample. Once the sample is full, all counters are
+ * halved, so that the sketch ages out keys, that were popular a long time ago. This class is not thread-safe.
+ */
+class FrequencySketch {
+
+	private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+	private static final long RESET_MASK = 0x7777777777777777L;
+	private static final int MAXIMUM_COUNT = 15;
+
+	private static int spread(int hash) {
+		hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+		hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+		return (hash >>> 16) ^ hash;
+	}
+
+	private final long[] table;
+	private final int tableMask;
+	private final int sampleSize;
+	private int size;
+
+	public FrequencySketch(int maximumSize) {
+		int capacity = Integer.highestOneBit(Math.max(maximumSize, 16) - 1) << 1;
+		this.table = new long[capacity];
+		this.tableMask = capacity - 1;
+		this.sampleSize = 10 * Math.max(maximumSize, 1);
+	}
+
+	public int frequency(Object key) {
+		int hash = spread(key.hashCode());
+		int start = (hash & 3) << 2;
+		int frequency = MAXIMUM_COUNT;
+		for (int i = 0; i < 4; i++) {
+			int offset = (start + i) << 2;
+			int count = (int) ((table[indexOf(hash, i)] >>> offset) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	public void increment(Object key) {
+		int hash = spread(key.hashCode());
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			added |= incrementAt(indexOf(hash, i), start + i);
+		}
+		if (added && ++size == sampleSize) {
+			reset();
+		}
+	}
+
+	private boolean incrementAt(int index, int counter) {
+		int offset = counter << 2;
+		long mask = 0xfL << offset;
+		if ((table[index] & mask) != mask) {
+			table[index] += 1L << offset;
+			return true;
+		} else {
+			return false;
+		}
+	}
+
+	private int indexOf(int hash, int row) {
+		long index = (hash + SEEDS[row]) * SEEDS[row];
+		index += index >>> 32;
+		return ((int) index) & tableMask;
+	}
+
+	private void reset() {
+		for (int i = 0; i < table.length; i++) {
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		size /= 2;
+	}
+}
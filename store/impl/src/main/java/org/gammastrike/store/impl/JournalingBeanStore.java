@@ -0,0 +1,405 @@
+package org.gammastrike.store.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.annotation.Annotation;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import javax.enterprise.inject.spi.BeanManager;
+
+import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.api.BeanInstance;
+import org.gammastrike.store.api.BeanStore;
+import org.gammastrike.store.api.BeanStoreListener;
+
+/**
+ * A durable {@link BeanStore} decorator. All modifications are appended to a local journal, that is synced to disk in batches. Once the journal exceeds a
+ * number of records, the store contents are written to a compacted snapshot and the journal is truncated. On construction the delegate is rebuilt by
+ * replaying the snapshot and the journal's tail.
+ * <p>
+ * Taking a snapshot only holds the writer lock to copy the store's entries and to rotate the journal. The instances are serialized and written
+ * afterwards, while modifications go on to the new journal. The rotated journal is deleted once the snapshot is in place. Until then it is replayed
+ * between snapshot and journal, which is harmless, if the snapshot already contains its records.
+ * <p>
+ * Modifications become durable with the next sync, so a crash loses at most one sync interval. A record, that was only partly written by a crash, ends
+ * the replay and is truncated. Instances, that are not serializable according to {@link BeanInstanceSerializer}, are not persisted. Instances, that have
+ * not been materialized yet, are persisted without creating them.
+ */
+public class JournalingBeanStore implements BeanStore, Closeable {
+
+	private static final byte PUT = 1;
+	private static final byte REMOVE = 2;
+	private static final byte CLEAR = 3;
+
+	private static final String JOURNAL_FILE = "journal.bin";
+	private static final String ROTATED_JOURNAL_FILE = "journal.old";
+	private static final String SNAPSHOT_FILE = "snapshot.bin";
+	private static final String SNAPSHOT_TEMP_FILE = "snapshot.tmp";
+
+	private final BeanStore delegate;
+	private final BeanInstanceSerializer serializer;
+	private final Path directory;
+	private final int snapshotThreshold;
+	private final ScheduledExecutorService syncExecutor;
+	private final BeanStoreListeners listeners;
+	private final Object snapshotLock;
+
+	private FileChannel journal;
+	private DataOutputStream journalOut;
+	private int journalRecords;
+	private boolean dirty;
+	private Duration recoveryTime;
+	private int recoveredRecords;
+
+	/**
+	 * @param delegate the store holding the instances
+	 * @param manager the bean manager to resolve restored instances' contextuals with
+	 * @param directory the directory of journal and snapshot
+	 * @param syncInterval the interval of syncing the journal to disk
+	 * @param unit the unit of the interval
+	 * @param snapshotThreshold the number of journal records, after which a snapshot is taken
+	 * @throws IOException if the journal could not be replayed or opened
+	 */
+	public JournalingBeanStore(BeanStore delegate, BeanManager manager, Path directory, long syncInterval, TimeUnit unit, int snapshotThreshold) throws IOException {
+		this.delegate = requireNonNull(delegate);
+		this.serializer = new BeanInstanceSerializer(manager);
+		this.directory = Files.createDirectories(directory);
+		this.snapshotThreshold = snapshotThreshold;
+		this.listeners = new BeanStoreListeners(this);
+		this.snapshotLock = new Object();
+
+		recover();
+		openJournal();
+
+		syncExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "bean-store-journal-sync");
+			thread.setDaemon(true);
+			return thread;
+		});
+		syncExecutor.scheduleWithFixedDelay(this::syncQuietly, syncInterval, syncInterval, unit);
+	}
+
+	@Override
+	public void addListener(BeanStoreListener listener) {
+		listeners.add(listener);
+	}
+
+	private void append(byte operation, BeanIdentifier id, byte[] payload) {
+		try {
+			write(journalOut, operation, id, payload);
+			journalRecords++;
+			dirty = true;
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not append to journal in " + directory, e);
+		}
+	}
+
+	private void apply(DataInputStream record) throws IOException, ClassNotFoundException {
+		byte operation = record.readByte();
+		switch (operation) {
+		case PUT:
+			BeanIdentifier id = serializer.readIdentifier(record);
+			int length = record.readInt();
+			if (length < 0 || length > record.available()) {
+				throw new IOException("Invalid payload length " + length);
+			}
+			byte[] payload = new byte[length];
+			record.readFully(payload);
+			delegate.put(id, serializer.deserialize(payload));
+			break;
+		case REMOVE:
+			delegate.remove(serializer.readIdentifier(record));
+			break;
+		case CLEAR:
+			delegate.clear();
+			break;
+		default:
+			throw new IOException("Unknown journal operation " + operation);
+		}
+	}
+
+	@Override
+	public synchronized void clear() {
+		delegate.clear();
+		append(CLEAR, null, null);
+		listeners.fireCleared();
+	}
+
+	/**
+	 * Stops the periodic sync, waits for a running one to finish, and syncs a last time.
+	 */
+	@Override
+	public void close() throws IOException {
+		syncExecutor.shutdown();
+		try {
+			syncExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the journal sync");
+		}
+		synchronized (this) {
+			flush();
+			journal.close();
+		}
+	}
+
+	@Override
+	public boolean contains(BeanIdentifier id) {
+		return delegate.contains(id);
+	}
+
+	private synchronized boolean flush() throws IOException {
+		if (dirty) {
+			journalOut.flush();
+			journal.force(false);
+			dirty = false;
+		}
+		return journalRecords >= snapshotThreshold;
+	}
+
+	@Override
+	public <T> BeanInstance<T> get(BeanIdentifier id) {
+		return delegate.get(id);
+	}
+
+	/**
+	 * @return the number of records replayed from snapshot and journal on construction
+	 */
+	public int getRecoveredRecords() {
+		return recoveredRecords;
+	}
+
+	/**
+	 * @return the time it took to replay snapshot and journal on construction
+	 */
+	public Duration getRecoveryTime() {
+		return recoveryTime;
+	}
+
+	@Override
+	public Iterable<BeanIdentifier> identifiersOf(Class<?> type, Annotation... qualifiers) {
+		return delegate.identifiersOf(type, qualifiers);
+	}
+
+	@Override
+	public boolean isAvailable() {
+		return delegate.isAvailable() && journal.isOpen();
+	}
+
+	@Override
+	public Iterator<BeanIdentifier> iterator() {
+		return delegate.iterator();
+	}
+
+	private void openJournal() throws IOException {
+		journal = FileChannel.open(directory.resolve(JOURNAL_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		journalOut = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(journal)));
+	}
+
+	@Override
+	public synchronized <T> void put(BeanIdentifier id, BeanInstance<T> instance) {
+		delegate.put(id, instance);
+		if (serializer.isSerializable(instance)) {
+			try {
+				append(PUT, id, serializer.serialize(instance));
+			} catch (IOException e) {
+				throw new IllegalStateException("Could not serialize " + id, e);
+			}
+		} else {
+			append(REMOVE, id, null);
+		}
+		listeners.fireAdded(id);
+	}
+
+	private void recover() throws IOException {
+		long start = System.nanoTime();
+		recoveredRecords = replay(directory.resolve(SNAPSHOT_FILE), false);
+		recoveredRecords += replay(directory.resolve(ROTATED_JOURNAL_FILE), true);
+		recoveredRecords += replay(directory.resolve(JOURNAL_FILE), true);
+		recoveryTime = Duration.ofNanos(System.nanoTime() - start);
+	}
+
+	@Override
+	public synchronized <T> BeanInstance<T> remove(BeanIdentifier id) {
+		BeanInstance<T> removed = delegate.remove(id);
+		if (removed != null) {
+			append(REMOVE, id, null);
+			listeners.fireRemoved(id);
+		}
+		return removed;
+	}
+
+	@Override
+	public void removeListener(BeanStoreListener listener) {
+		listeners.remove(listener);
+	}
+
+	private int replay(Path file, boolean truncateTornTail) throws IOException {
+		if (!Files.exists(file)) {
+			return 0;
+		}
+		int records = 0;
+		long validLength = 0;
+		long fileLength = Files.size(file);
+		try (InputStream stream = new BufferedInputStream(Files.newInputStream(file))) {
+			DataInputStream in = new DataInputStream(stream);
+			while (true) {
+				byte[] data;
+				int checksum;
+				try {
+					int length = in.readInt();
+					if (length < 0 || length > fileLength - validLength - 8) {
+						break;
+					}
+					data = new byte[length];
+					checksum = in.readInt();
+					in.readFully(data);
+				} catch (EOFException e) {
+					break;
+				}
+				CRC32 crc = new CRC32();
+				crc.update(data);
+				if ((int) crc.getValue() != checksum) {
+					break;
+				}
+				try {
+					apply(new DataInputStream(new ByteArrayInputStream(data)));
+				} catch (ClassNotFoundException e) {
+					throw new IOException("Could not replay record " + records + " of " + file, e);
+				}
+				validLength += 8 + data.length;
+				records++;
+			}
+		}
+		if (truncateTornTail && validLength < fileLength) {
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+				channel.truncate(validLength);
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * Closes the journal and continues with an empty one. If the rotated journal of a failed snapshot is still present, the journal is appended to it.
+	 */
+	private void rotate() throws IOException {
+		journalOut.flush();
+		journal.force(false);
+		journal.close();
+		Path current = directory.resolve(JOURNAL_FILE);
+		Path rotated = directory.resolve(ROTATED_JOURNAL_FILE);
+		if (Files.exists(rotated)) {
+			try (FileChannel target = FileChannel.open(rotated, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+				Files.copy(current, Channels.newOutputStream(target));
+				target.force(true);
+			}
+			Files.delete(current);
+		} else {
+			Files.move(current, rotated, StandardCopyOption.ATOMIC_MOVE);
+		}
+		openJournal();
+		journalRecords = 0;
+		dirty = false;
+	}
+
+	/**
+	 * Writes all persistable instances to a new snapshot and truncates the journal.
+	 */
+	public void snapshot() throws IOException {
+		synchronized (snapshotLock) {
+			List<Map.Entry<BeanIdentifier, BeanInstance<?>>> contents = new ArrayList<>();
+			synchronized (this) {
+				for (BeanIdentifier id : delegate) {
+					BeanInstance<?> instance = delegate.get(id);
+					if (instance != null) {
+						contents.add(new SimpleImmutableEntry<>(id, instance));
+					}
+				}
+				rotate();
+			}
+
+			Path temp = directory.resolve(SNAPSHOT_TEMP_FILE);
+			try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				DataOutputStream snapshotOut = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+				for (Map.Entry<BeanIdentifier, BeanInstance<?>> entry : contents) {
+					if (serializer.isSerializable(entry.getValue())) {
+						write(snapshotOut, PUT, entry.getKey(), serializer.serialize(entry.getValue()));
+					}
+				}
+				snapshotOut.flush();
+				channel.force(true);
+			}
+			Files.move(temp, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			Files.delete(directory.resolve(ROTATED_JOURNAL_FILE));
+		}
+	}
+
+	@Override
+	public boolean supportsListeners() {
+		return true;
+	}
+
+	/**
+	 * Forces all appended journal records to disk. Takes a snapshot, if the journal exceeded its threshold.
+	 */
+	public void sync() throws IOException {
+		if (flush()) {
+			snapshot();
+		}
+	}
+
+	private void syncQuietly() {
+		try {
+			sync();
+		} catch (IOException | RuntimeException e) {
+			Thread thread = Thread.currentThread();
+			thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+		}
+	}
+
+	private void write(DataOutputStream out, byte operation, BeanIdentifier id, byte[] payload) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream record = new DataOutputStream(bytes);
+		record.writeByte(operation);
+		if (id != null) {
+			serializer.writeIdentifier(record, id);
+		}
+		if (payload != null) {
+			record.writeInt(payload.length);
+			record.write(payload);
+		}
+		record.flush();
+
+		CRC32 checksum = new CRC32();
+		checksum.update(bytes.toByteArray());
+		out.writeInt(bytes.size());
+		out.writeInt((int) checksum.getValue());
+		bytes.writeTo(out);
+	}
+}
@@ -0,0 +1,65 @@
+package org.gammastrike.store.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import javax.enterprise.context.spi.Contextual;
+import javax.enterprise.context.spi.CreationalContext;
+import javax.enterprise.inject.spi.Bean;
+import javax.enterprise.inject.spi.BeanManager;
+
+import org.gammastrike.store.api.BeanInstance;
+
+/**
+ * A {@link BeanInstance}, that gets its instance from the bean manager on the first call of {@link #getInstance()} instead of on construction.
+ */
+public class LazyBeanInstance<T> implements BeanInstance<T> {
+
+	public static <T> BeanInstance<T> create(BeanManager manager, Bean<T> bean) {
+		return new LazyBeanInstance<>(manager, bean, manager.createCreationalContext(bean));
+	}
+
+	private final BeanManager manager;
+
+	private final Bean<T> bean;
+
+	private final CreationalContext<T> context;
+
+	private volatile T instance;
+
+	public LazyBeanInstance(BeanManager manager, Bean<T> bean, CreationalContext<T> context) {
+		this.manager = requireNonNull(manager);
+		this.bean = requireNonNull(bean);
+		this.context = requireNonNull(context);
+	}
+
+	@Override
+	public Contextual<T> getContextual() {
+		return bean;
+	}
+
+	@Override
+	public CreationalContext<T> getCreationalContext() {
+		return context;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T getInstance() {
+		T result = instance;
+		if (result == null) {
+			synchronized (this) {
+				result = instance;
+				if (result == null) {
+					result = (T) manager.getReference(bean, bean.getBeanClass(), context);
+					instance = requireNonNull(result);
+				}
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public boolean isMaterialized() {
+		return instance != null;
+	}
+}
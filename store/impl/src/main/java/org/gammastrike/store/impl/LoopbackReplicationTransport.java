@@ -0,0 +1,71 @@
+package org.gammastrike.store.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * A {@link ReplicationTransport} between stores in the same JVM, for testing replication without a network. Batches are delivered to the connected peers
+ * asynchronously on the given executor, one at a time and in order per peer.
+ */
+public class LoopbackReplicationTransport implements ReplicationTransport {
+
+	private final Executor executor;
+	private final List<LoopbackReplicationTransport> peers;
+	private final Map<LoopbackReplicationTransport, CompletableFuture<Void>> deliveries;
+	private volatile Consumer<byte[]> receiver;
+
+	public LoopbackReplicationTransport() {
+		this(ParallelBeanBroadcaster.defaultExecutor());
+	}
+
+	public LoopbackReplicationTransport(Executor executor) {
+		this.executor = requireNonNull(executor);
+		this.peers = new CopyOnWriteArrayList<>();
+		this.deliveries = new HashMap<>();
+	}
+
+	/**
+	 * Connects this transport and the given one in both directions.
+	 *
+	 * @param peer the transport to connect to
+	 */
+	public void connect(LoopbackReplicationTransport peer) {
+		if (peer != this && !peers.contains(peer)) {
+			peers.add(peer);
+			peer.connect(this);
+		}
+	}
+
+	private void deliver(byte[] batch) {
+		Consumer<byte[]> current = receiver;
+		if (current == null) {
+			throw new IllegalStateException("No receiver registered");
+		}
+		current.accept(batch);
+	}
+
+	@Override
+	public void receive(Consumer<byte[]> receiver) {
+		this.receiver = requireNonNull(receiver);
+	}
+
+	@Override
+	public synchronized CompletableFuture<Void> send(byte[] batch) {
+		List<CompletableFuture<Void>> acks = new ArrayList<>();
+		for (LoopbackReplicationTransport peer : peers) {
+			CompletableFuture<Void> previous = deliveries.getOrDefault(peer, CompletableFuture.completedFuture(null));
+			CompletableFuture<Void> delivery = previous.handle((result, failure) -> null).thenRunAsync(() -> peer.deliver(batch), executor);
+			deliveries.put(peer, delivery);
+			acks.add(delivery);
+		}
+		return CompletableFuture.allOf(acks.toArray(new CompletableFuture<?>[acks.size()]));
+	}
+}
@@ -0,0 +1,201 @@
+package org.gammastrike.store.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.api.BeanInstance;
+import org.gammastrike.store.api.BeanStore;
+import org.gammastrike.store.api.BeanStoreListener;
+
+/**
+ * A {@link BeanStore} keeping its ids sorted by their UUIDs in a concurrent skip list. Ids created by {@link BeanIdentifier#timeOrdered(Annotation...)}
+ * come first, in their creation order, so iteration runs from the oldest to the newest instance and instances older than a given age are expired by
+ * removing a range from the head of the list, without visiting any younger instance. Other ids follow, ordered by their UUID bits only, and never expire.
+ */
+public class OrderedBeanStore implements BeanStore {
+
+	private static final Comparator<BeanIdentifier> UUID_ORDER = (first, second) -> {
+		int result = Integer.compare(rank(first), rank(second));
+		if (result != 0 || first.isUndefined()) {
+			return result;
+		}
+		result = Long.compareUnsigned(first.getMostSignificantBits(), second.getMostSignificantBits());
+		return result != 0 ? result : Long.compareUnsigned(first.getLeastSignificantBits(), second.getLeastSignificantBits());
+	};
+
+	private static final int LOCK_STRIPES = 64;
+	private static final long MAXIMUM_TIMESTAMP = (1L << 48) - 1;
+
+	private static int rank(BeanIdentifier id) {
+		return id.isUndefined() ? 0 : id.isTimeOrdered() ? 1 : 2;
+	}
+
+	private final ConcurrentSkipListMap<BeanIdentifier, BeanInstance<?>> beans;
+	private final BeanTypeIndex index;
+	private final BeanStoreListeners listeners;
+	private final BeanDestroyer destroyer;
+	private final Object[] locks;
+
+	public OrderedBeanStore() {
+		this(BeanDestroyer.SYNCHRONOUS);
+	}
+
+	/**
+	 * @param destroyer the destroyer of expired instances
+	 */
+	public OrderedBeanStore(BeanDestroyer destroyer) {
+		this.beans = new ConcurrentSkipListMap<>(UUID_ORDER);
+		this.index = new BeanTypeIndex();
+		this.listeners = new BeanStoreListeners(this);
+		this.destroyer = requireNonNull(destroyer);
+		this.locks = new Object[LOCK_STRIPES];
+		for (int i = 0; i < locks.length; i++) {
+			locks[i] = new Object();
+		}
+	}
+
+	@Override
+	public void addListener(BeanStoreListener listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void clear() {
+		for (BeanIdentifier id : beans.keySet()) {
+			removeIndexed(id);
+		}
+		listeners.fireCleared();
+	}
+
+	@Override
+	public boolean contains(BeanIdentifier id) {
+		return beans.containsKey(id);
+	}
+
+	/**
+	 * Removes and destroys all instances, whose time-ordered ids have been created before the given age. Instances with other ids are kept.
+	 *
+	 * @param age the minimum age of expired instances
+	 * @param unit the unit of the age
+	 * @return the number of expired instances
+	 * @throws IllegalArgumentException if the age is negative
+	 */
+	public int expireOlderThan(long age, TimeUnit unit) {
+		if (age < 0) {
+			throw new IllegalArgumentException("Age must not be negative: " + age);
+		}
+		// the 48 bit timestamp of a time-ordered id
+		long cutoff = Math.min(Math.max(System.currentTimeMillis() - unit.toMillis(age), 0), MAXIMUM_TIMESTAMP);
+		BeanIdentifier bound = BeanIdentifier.buildFrom(cutoff << 16 | 0x7000L, 0);
+		List<BeanInstance<?>> expired = new ArrayList<>();
+		ConcurrentNavigableMap<BeanIdentifier, BeanInstance<?>> head = beans.headMap(bound);
+		for (Map.Entry<BeanIdentifier, BeanInstance<?>> entry : head.entrySet()) {
+			boolean removed;
+			synchronized (lockOf(entry.getKey())) {
+				removed = head.remove(entry.getKey(), entry.getValue());
+				if (removed) {
+					index.remove(entry.getKey(), entry.getValue());
+				}
+			}
+			if (removed) {
+				listeners.fireExpired(entry.getKey());
+				expired.add(entry.getValue());
+			}
+		}
+		if (!expired.isEmpty()) {
+			destroyer.destroyAll(expired);
+		}
+		return expired.size();
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> BeanInstance<T> get(BeanIdentifier id) {
+		return (BeanInstance<T>) beans.get(id);
+	}
+
+	@Override
+	public Iterable<BeanIdentifier> identifiersOf(Class<?> type, Annotation... qualifiers) {
+		return index.identifiersOf(type, qualifiers);
+	}
+
+	@Override
+	public boolean isAvailable() {
+		return true;
+	}
+
+	/**
+	 * @return the ids from the oldest to the newest
+	 */
+	@Override
+	public Iterator<BeanIdentifier> iterator() {
+		return beans.keySet().iterator();
+	}
+
+	/**
+	 * The skip list may apply a compute function more than once, so the map and its index are updated together under a lock striped by id instead.
+	 */
+	private Object lockOf(BeanIdentifier id) {
+		return locks[id.hashCode() & LOCK_STRIPES - 1];
+	}
+
+	@Override
+	public <T> void put(BeanIdentifier id, BeanInstance<T> instance) {
+		if (id.isUndefined()) {
+			throw new IllegalArgumentException("Undefined identifier cannot be stored");
+		}
+		synchronized (lockOf(id)) {
+			BeanInstance<?> previous = beans.put(id, instance);
+			if (previous != null) {
+				index.remove(id, previous);
+			}
+			index.add(id, instance);
+		}
+		listeners.fireAdded(id);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> BeanInstance<T> remove(BeanIdentifier id) {
+		BeanInstance<T> removed = (BeanInstance<T>) removeIndexed(id);
+		if (removed != null) {
+			listeners.fireRemoved(id);
+		}
+		return removed;
+	}
+
+	private BeanInstance<?> removeIndexed(BeanIdentifier id) {
+		synchronized (lockOf(id)) {
+			BeanInstance<?> removed = beans.remove(id);
+			if (removed != null) {
+				index.remove(id, removed);
+			}
+			return removed;
+		}
+	}
+
+	@Override
+	public void removeListener(BeanStoreListener listener) {
+		listeners.remove(listener);
+	}
+
+	@Override
+	public int size() {
+		return beans.size();
+	}
+
+	@Override
+	public boolean supportsListeners() {
+		return true;
+	}
+}
@@ -0,0 +1,115 @@
+package org.gammastrike.store.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * Invokes the broadcasted method on all targets concurrently, so a single slow target does not delay the invocation of the others.
+ */
+public class ParallelBeanBroadcaster implements BeanBroadcaster {
+
+	public enum Completion {
+
+		/**
+		 * The caller is blocked, until all targets have been invoked. Failures are rethrown to the caller.
+		 */
+		WAIT_FOR_ALL,
+
+		/**
+		 * The caller returns immediately. Failures are passed to the broadcaster's failure handler.
+		 */
+		FIRE_AND_FORGET
+	}
+
+	private static final Executor DEFAULT_EXECUTOR = createDefaultExecutor();
+
+	private static Executor createDefaultExecutor() {
+		try {
+			return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return ForkJoinPool.commonPool();
+		}
+	}
+
+	/**
+	 * @return an executor starting a virtual thread per task if available, otherwise the common fork-join pool. The executor is shared by all callers
+	 *         and lives as long as this class, so it must not be shut down.
+	 */
+	public static Executor defaultExecutor() {
+		return DEFAULT_EXECUTOR;
+	}
+
+	private static void uncaught(Throwable failure) {
+		Thread thread = Thread.currentThread();
+		thread.getUncaughtExceptionHandler().uncaughtException(thread, failure);
+	}
+
+	private static Throwable unwrap(Throwable failure) {
+		return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+	}
+
+	private final Executor executor;
+	private final Completion completion;
+	private final Consumer<Throwable> failureHandler;
+
+	public ParallelBeanBroadcaster() {
+		this(defaultExecutor(), Completion.WAIT_FOR_ALL);
+	}
+
+	public ParallelBeanBroadcaster(Executor executor, Completion completion) {
+		this(executor, completion, ParallelBeanBroadcaster::uncaught);
+	}
+
+	public ParallelBeanBroadcaster(Executor executor, Completion completion, Consumer<Throwable> failureHandler) {
+		this.executor = requireNonNull(executor);
+		this.completion = requireNonNull(completion);
+		this.failureHandler = requireNonNull(failureHandler);
+	}
+
+	@Override
+	public void broadcast(Method method, Object[] args, Collection<?> targets) throws Throwable {
+		List<CompletableFuture<Void>> invocations = new ArrayList<>(targets.size());
+		for (Object target : targets) {
+			CompletableFuture<Void> invocation = CompletableFuture.runAsync(() -> {
+				try {
+					SequentialBeanBroadcaster.invoke(method, args, target);
+				} catch (Throwable failure) {
+					throw new CompletionException(failure);
+				}
+			}, executor);
+			invocations.add(invocation);
+		}
+
+		if (completion == Completion.FIRE_AND_FORGET) {
+			for (CompletableFuture<Void> invocation : invocations) {
+				invocation.whenComplete((result, failure) -> {
+					if (failure != null) {
+						failureHandler.accept(unwrap(failure));
+					}
+				});
+			}
+		} else {
+			Throwable occured = null;
+			for (CompletableFuture<Void> invocation : invocations) {
+				try {
+					invocation.join();
+				} catch (CompletionException failure) {
+					occured = SequentialBeanBroadcaster.collect(occured, unwrap(failure));
+				}
+			}
+			if (occured != null) {
+				throw occured;
+			}
+		}
+	}
+}
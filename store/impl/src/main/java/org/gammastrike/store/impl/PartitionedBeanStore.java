@@ -0,0 +1,240 @@
+package org.gammastrike.store.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.api.BeanInstance;
+import org.gammastrike.store.api.BeanStore;
+import org.gammastrike.store.api.BeanStoreListener;
+
+/**
+ * A {@link BeanStore}, that routes instances to separate partition stores by the value of a partition qualifier, for example a tenant qualifier. Ids
+ * without the partition qualifier share a default partition. Partitions are created on the first put and can be cleared, sized and iterated on their own.
+ * <p>
+ * The store supports listeners, if the partition factory creates stores supporting listeners, which is checked on the default partition created with the
+ * store. Listeners receive the notifications of all partitions, with this store as their source.
+ */
+public class PartitionedBeanStore implements BeanStore {
+
+	private class PartitionListener implements BeanStoreListener {
+
+		@Override
+		public void added(BeanStore store, BeanIdentifier id) {
+			listeners.fireAdded(id);
+		}
+
+		@Override
+		public void cleared(BeanStore store) {
+			// clearing is reported by the partitioned store itself
+		}
+
+		@Override
+		public void expired(BeanStore store, BeanIdentifier id) {
+			listeners.fireExpired(id);
+		}
+
+		@Override
+		public void removed(BeanStore store, BeanIdentifier id) {
+			listeners.fireRemoved(id);
+		}
+	}
+
+	private static final Object DEFAULT_PARTITION = new Object();
+
+	private final Class<? extends Annotation> partitionQualifier;
+	private final Supplier<? extends BeanStore> partitionFactory;
+	private final ConcurrentMap<Object, BeanStore> partitions;
+	private final BeanStoreListeners listeners;
+	private final PartitionListener partitionListener;
+	private final boolean supportsListeners;
+
+	public PartitionedBeanStore(Class<? extends Annotation> partitionQualifier) {
+		this(partitionQualifier, SimpleBeanStore::new);
+	}
+
+	/**
+	 * @param partitionQualifier the type of the qualifier, whose value selects the partition
+	 * @param partitionFactory creates the store of a new partition
+	 */
+	public PartitionedBeanStore(Class<? extends Annotation> partitionQualifier, Supplier<? extends BeanStore> partitionFactory) {
+		this.partitionQualifier = requireNonNull(partitionQualifier);
+		this.partitionFactory = requireNonNull(partitionFactory);
+		this.partitions = new ConcurrentHashMap<>();
+		this.listeners = new BeanStoreListeners(this);
+		this.partitionListener = new PartitionListener();
+		BeanStore defaultPartition = createPartition(DEFAULT_PARTITION);
+		this.supportsListeners = defaultPartition.supportsListeners();
+		this.partitions.put(DEFAULT_PARTITION, defaultPartition);
+	}
+
+	@Override
+	public void addListener(BeanStoreListener listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void clear() {
+		for (BeanStore partition : partitions.values()) {
+			partition.clear();
+		}
+		listeners.fireCleared();
+	}
+
+	/**
+	 * Clears a single partition by removing its ids one by one, so listeners are notified about each id actually removed. Ids put concurrently may stay.
+	 *
+	 * @param partition the partition qualifier, or null for the default partition
+	 */
+	public void clear(Annotation partition) {
+		BeanStore store = partitions.get(keyOf(partition));
+		if (store != null) {
+			List<BeanIdentifier> ids = new ArrayList<>();
+			store.forEach(ids::add);
+			for (BeanIdentifier id : ids) {
+				store.remove(id);
+			}
+		}
+	}
+
+	@Override
+	public boolean contains(BeanIdentifier id) {
+		BeanStore store = partitions.get(partitionKeyOf(id));
+		return store != null && store.contains(id);
+	}
+
+	private BeanStore createPartition(Object key) {
+		BeanStore store = partitionFactory.get();
+		if (store.supportsListeners()) {
+			store.addListener(partitionListener);
+		} else if (key != DEFAULT_PARTITION && supportsListeners) {
+			throw new IllegalStateException("Partition " + key + " does not support listeners like the default partition");
+		}
+		return store;
+	}
+
+	@Override
+	public <T> BeanInstance<T> get(BeanIdentifier id) {
+		BeanStore store = partitions.get(partitionKeyOf(id));
+		return store != null ? store.get(id) : null;
+	}
+
+	@Override
+	public Iterable<BeanIdentifier> identifiersOf(Class<?> type, Annotation... qualifiers) {
+		for (Annotation qualifier : qualifiers) {
+			if (qualifier.annotationType() == partitionQualifier) {
+				BeanStore store = partitions.get(qualifier);
+				return store != null ? store.identifiersOf(type, qualifiers) : Collections.<BeanIdentifier> emptyList();
+			}
+		}
+		List<BeanIdentifier> identifiers = new ArrayList<>();
+		for (BeanStore store : partitions.values()) {
+			store.identifiersOf(type, qualifiers).forEach(identifiers::add);
+		}
+		return identifiers;
+	}
+
+	/**
+	 * Iterates over the ids of a single partition.
+	 *
+	 * @param partition the partition qualifier, or null for the default partition
+	 * @return the ids stored in the partition
+	 */
+	public Iterable<BeanIdentifier> identifiersIn(Annotation partition) {
+		BeanStore store = partitions.get(keyOf(partition));
+		return store != null ? store : Collections.<BeanIdentifier> emptyList();
+	}
+
+	@Override
+	public boolean isAvailable() {
+		return true;
+	}
+
+	@Override
+	public Iterator<BeanIdentifier> iterator() {
+		List<BeanIdentifier> identifiers = new ArrayList<>();
+		for (BeanStore store : partitions.values()) {
+			store.forEach(identifiers::add);
+		}
+		return identifiers.iterator();
+	}
+
+	private Object keyOf(Annotation partition) {
+		if (partition == null) {
+			return DEFAULT_PARTITION;
+		}
+		if (partition.annotationType() != partitionQualifier) {
+			throw new IllegalArgumentException(partition + " is no partition qualifier of type " + partitionQualifier.getName());
+		}
+		return partition;
+	}
+
+	private Object partitionKeyOf(BeanIdentifier id) {
+		for (Annotation qualifier : id.getQualifiers()) {
+			if (qualifier.annotationType() == partitionQualifier) {
+				return qualifier;
+			}
+		}
+		return DEFAULT_PARTITION;
+	}
+
+	/**
+	 * @return the qualifiers of all partitions, that have been created, not including the default partition
+	 */
+	public List<Annotation> partitions() {
+		List<Annotation> keys = new ArrayList<>();
+		for (Object key : partitions.keySet()) {
+			if (key != DEFAULT_PARTITION) {
+				keys.add((Annotation) key);
+			}
+		}
+		return keys;
+	}
+
+	@Override
+	public <T> void put(BeanIdentifier id, BeanInstance<T> instance) {
+		partitions.computeIfAbsent(partitionKeyOf(id), this::createPartition).put(id, instance);
+	}
+
+	@Override
+	public <T> BeanInstance<T> remove(BeanIdentifier id) {
+		BeanStore store = partitions.get(partitionKeyOf(id));
+		return store != null ? store.remove(id) : null;
+	}
+
+	@Override
+	public void removeListener(BeanStoreListener listener) {
+		listeners.remove(listener);
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (BeanStore store : partitions.values()) {
+			size += store.size();
+		}
+		return size;
+	}
+
+	/**
+	 * @param partition the partition qualifier, or null for the default partition
+	 * @return the number of instances stored in the partition
+	 */
+	public int size(Annotation partition) {
+		BeanStore store = partitions.get(keyOf(partition));
+		return store != null ? store.size() : 0;
+	}
+
+	@Override
+	public boolean supportsListeners() {
+		return supportsListeners;
+	}
+}
@@ -0,0 +1,416 @@
+package org.gammastrike.store.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.context.spi.CreationalContext;
+import javax.enterprise.inject.spi.BeanManager;
+
+import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.api.BeanInstance;
+import org.gammastrike.store.api.BeanStore;
+import org.gammastrike.store.api.BeanStoreListener;
+
+/**
+ * A {@link BeanStore}, that keeps recently used instances on-heap and passivates idle ones into a memory-mapped file. Passivated instances are rehydrated
+ * lazily, when they are accessed again. Instances are only passivated, if they are serializable according to {@link BeanInstanceSerializer}. The mapped
+ * file is limited to 2GB.
+ * <p>
+ * Passivating an instance releases its {@link CreationalContext}, rehydration creates a new one. Mappings, that are replaced when the file grows, are
+ * unmapped right away where the runtime allows it.
+ * <p>
+ * Entries only move between the on-heap and the passivated tier while holding the store's monitor, so they are never counted twice or missed. Reads of
+ * on-heap entries do not lock. Serialization and deserialization run outside the monitor.
+ */
+public class PassivatingBeanStore implements BeanStore, Closeable {
+
+	private static class HotEntry {
+
+		private final BeanInstance<?> instance;
+		private volatile long accessTime;
+
+		public HotEntry(BeanInstance<?> instance) {
+			this.instance = instance;
+			this.accessTime = System.nanoTime();
+		}
+	}
+
+	private static class Region {
+
+		private int offset;
+		private final int length;
+
+		public Region(int offset, int length) {
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	private static final int INITIAL_FILE_SIZE = 1 << 20;
+	private static final MethodHandle UNMAP = unmapHandle();
+
+	/**
+	 * Finds a way to release a mapping before it is garbage collected: <code>Unsafe.invokeCleaner</code> from Java 9 on, the buffer's cleaner before.
+	 */
+	private static MethodHandle unmapHandle() {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			return lookup.unreflect(invokeCleaner).bindTo(theUnsafe.get(null)).asType(MethodType.methodType(void.class, MappedByteBuffer.class));
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// not available before Java 9
+		}
+		try {
+			Method cleanerMethod = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+			Method cleanMethod = Class.forName("sun.misc.Cleaner").getMethod("clean");
+			MethodHandle cleaner = lookup.unreflect(cleanerMethod).asType(MethodType.methodType(Object.class, MappedByteBuffer.class));
+			MethodHandle clean = lookup.unreflect(cleanMethod).asType(MethodType.methodType(void.class, Object.class));
+			return MethodHandles.filterReturnValue(cleaner, clean);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	private static void release(BeanInstance<?> instance) {
+		CreationalContext<?> context = instance.getCreationalContext();
+		if (context != null) {
+			context.release();
+		}
+	}
+
+	private static void unmap(MappedByteBuffer buffer) {
+		if (UNMAP == null) {
+			return;
+		}
+		try {
+			UNMAP.invokeExact(buffer);
+		} catch (Throwable e) {
+			// left to the garbage collector
+		}
+	}
+
+	private final BeanInstanceSerializer serializer;
+	private final FileChannel channel;
+	private final ConcurrentMap<BeanIdentifier, HotEntry> hot;
+	private final ConcurrentMap<BeanIdentifier, Region> cold;
+	private final BeanStoreListeners listeners;
+
+	private MappedByteBuffer buffer;
+	private int writePosition;
+	private int deadBytes;
+
+	public PassivatingBeanStore(BeanManager manager, Path file) throws IOException {
+		this.serializer = new BeanInstanceSerializer(manager);
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		this.hot = new ConcurrentHashMap<>();
+		this.cold = new ConcurrentHashMap<>();
+		this.listeners = new BeanStoreListeners(this);
+		this.buffer = channel.map(MapMode.READ_WRITE, 0, INITIAL_FILE_SIZE);
+	}
+
+	@Override
+	public void addListener(BeanStoreListener listener) {
+		listeners.add(listener);
+	}
+
+	private Region append(byte[] data) throws IOException {
+		if (deadBytes > writePosition / 2) {
+			compact();
+		}
+		if (buffer.capacity() - writePosition < data.length) {
+			long required = (long) writePosition + data.length;
+			long capacity = Math.max(required, Math.min(2L * buffer.capacity(), Integer.MAX_VALUE));
+			if (required > Integer.MAX_VALUE) {
+				throw new IOException("Passivation file exhausted");
+			}
+			MappedByteBuffer previous = buffer;
+			buffer = channel.map(MapMode.READ_WRITE, 0, capacity);
+			unmap(previous);
+		}
+		Region region = new Region(writePosition, data.length);
+		ByteBuffer target = buffer.duplicate();
+		target.position(writePosition);
+		target.put(data);
+		writePosition += data.length;
+		return region;
+	}
+
+	@Override
+	public synchronized void clear() {
+		hot.clear();
+		cold.clear();
+		writePosition = 0;
+		deadBytes = 0;
+		listeners.fireCleared();
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		clear();
+		if (buffer != null) {
+			unmap(buffer);
+			buffer = null;
+		}
+		channel.close();
+	}
+
+	private void compact() {
+		List<Region> regions = new ArrayList<>(cold.values());
+		regions.sort(Comparator.comparingInt(region -> region.offset));
+		int position = 0;
+		for (Region region : regions) {
+			if (region.offset != position) {
+				byte[] data = new byte[region.length];
+				ByteBuffer source = buffer.duplicate();
+				source.position(region.offset);
+				source.get(data);
+				ByteBuffer target = buffer.duplicate();
+				target.position(position);
+				target.put(data);
+				region.offset = position;
+			}
+			position += region.length;
+		}
+		writePosition = position;
+		deadBytes = 0;
+	}
+
+	@Override
+	public boolean contains(BeanIdentifier id) {
+		if (hot.containsKey(id)) {
+			return true;
+		}
+		synchronized (this) {
+			return hot.containsKey(id) || cold.containsKey(id);
+		}
+	}
+
+	private BeanInstance<?> deserialize(BeanIdentifier id, byte[] data) {
+		try {
+			return serializer.deserialize(data);
+		} catch (IOException | ClassNotFoundException e) {
+			throw new IllegalStateException("Could not rehydrate " + id, e);
+		}
+	}
+
+	private void discard(BeanIdentifier id) {
+		Region region = cold.remove(id);
+		if (region != null) {
+			deadBytes += region.length;
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> BeanInstance<T> get(BeanIdentifier id) {
+		HotEntry entry = hot.get(id);
+		if (entry == null && cold.containsKey(id)) {
+			entry = rehydrate(id);
+		}
+		if (entry == null) {
+			return null;
+		}
+		entry.accessTime = System.nanoTime();
+		return (BeanInstance<T>) entry.instance;
+	}
+
+	public int getColdSize() {
+		return cold.size();
+	}
+
+	public int getHotSize() {
+		return hot.size();
+	}
+
+	@Override
+	public boolean isAvailable() {
+		return channel.isOpen();
+	}
+
+	@Override
+	public synchronized Iterator<BeanIdentifier> iterator() {
+		List<BeanIdentifier> identifiers = new ArrayList<>(hot.size() + cold.size());
+		identifiers.addAll(hot.keySet());
+		identifiers.addAll(cold.keySet());
+		return identifiers.iterator();
+	}
+
+	/**
+	 * Passivates the instance with the given id, if it is held on-heap and serializable. The creational context of the on-heap instance is released.
+	 *
+	 * @param id the instance's id
+	 * @return true if the instance has been passivated
+	 * @throws IllegalStateException if the instance could not be written
+	 */
+	public boolean passivate(BeanIdentifier id) {
+		HotEntry entry = hot.get(id);
+		if (entry == null || !serializer.isSerializable(entry.instance)) {
+			return false;
+		}
+		try {
+			byte[] data = serializer.serialize(entry.instance);
+			synchronized (this) {
+				if (hot.get(id) != entry) {
+					return false;
+				}
+				store(id, data);
+				hot.remove(id);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not passivate " + id, e);
+		}
+		release(entry.instance);
+		return true;
+	}
+
+	/**
+	 * Passivates all on-heap instances, that have not been accessed within the given time. Instances, that cannot be written, stay on-heap.
+	 *
+	 * @param idleTime the minimum idle time
+	 * @param unit the unit of the idle time
+	 * @return the number of passivated instances
+	 */
+	public int passivateIdle(long idleTime, TimeUnit unit) {
+		long now = System.nanoTime();
+		long idleNanos = unit.toNanos(idleTime);
+		int passivated = 0;
+		for (Map.Entry<BeanIdentifier, HotEntry> entry : hot.entrySet()) {
+			if (now - entry.getValue().accessTime < idleNanos) {
+				continue;
+			}
+			try {
+				if (passivate(entry.getKey())) {
+					passivated++;
+				}
+			} catch (IllegalStateException e) {
+				// not serializable after all, keep it on-heap
+			}
+		}
+		return passivated;
+	}
+
+	@Override
+	public <T> void put(BeanIdentifier id, BeanInstance<T> instance) {
+		synchronized (this) {
+			hot.put(id, new HotEntry(instance));
+			discard(id);
+		}
+		listeners.fireAdded(id);
+	}
+
+	private byte[] read(Region region) {
+		byte[] data = new byte[region.length];
+		ByteBuffer source = buffer.duplicate();
+		source.position(region.offset);
+		source.get(data);
+		return data;
+	}
+
+	/**
+	 * Moves a passivated instance on-heap. The file is read under the monitor, but deserialized outside of it. If another thread has put or rehydrated the
+	 * id meanwhile, its entry wins and the deserialized copy is released. If the id has been passivated again, the new record is read.
+	 */
+	private HotEntry rehydrate(BeanIdentifier id) {
+		while (true) {
+			Region region;
+			byte[] data;
+			synchronized (this) {
+				region = cold.get(id);
+				if (region == null) {
+					return hot.get(id);
+				}
+				data = read(region);
+			}
+			HotEntry rehydrated = new HotEntry(deserialize(id, data));
+			synchronized (this) {
+				if (cold.get(id) == region) {
+					hot.put(id, rehydrated);
+					discard(id);
+					return rehydrated;
+				}
+				release(rehydrated.instance);
+				HotEntry current = hot.get(id);
+				if (current != null) {
+					return current;
+				}
+			}
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> BeanInstance<T> remove(BeanIdentifier id) {
+		HotEntry entry;
+		byte[] data;
+		synchronized (this) {
+			entry = hot.remove(id);
+			Region region = entry == null ? cold.get(id) : null;
+			data = region != null ? read(region) : null;
+			discard(id);
+		}
+		if (entry == null && data == null) {
+			return null;
+		}
+		BeanInstance<?> removed;
+		try {
+			removed = entry != null ? entry.instance : deserialize(id, data);
+		} catch (IllegalStateException e) {
+			synchronized (this) {
+				if (!contains(id)) {
+					try {
+						store(id, data);
+					} catch (IOException suppressed) {
+						e.addSuppressed(suppressed);
+					}
+				}
+			}
+			throw e;
+		}
+		listeners.fireRemoved(id);
+		return (BeanInstance<T>) removed;
+	}
+
+	@Override
+	public void removeListener(BeanStoreListener listener) {
+		listeners.remove(listener);
+	}
+
+	@Override
+	public synchronized int size() {
+		return hot.size() + cold.size();
+	}
+
+	@Override
+	public boolean supportsListeners() {
+		return true;
+	}
+
+	private synchronized void store(BeanIdentifier id, byte[] data) throws IOException {
+		Region previous = cold.put(id, append(data));
+		if (previous != null) {
+			deadBytes += previous.length;
+		}
+	}
+}
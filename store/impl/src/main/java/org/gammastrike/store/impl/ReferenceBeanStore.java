@@ -0,0 +1,332 @@
+package org.gammastrike.store.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.Closeable;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+import javax.enterprise.context.spi.Contextual;
+import javax.enterprise.context.spi.CreationalContext;
+
+import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.api.BeanInstance;
+import org.gammastrike.store.api.BeanStore;
+import org.gammastrike.store.api.BeanStoreListener;
+
+/**
+ * A {@link BeanStore}, that holds chosen instances through soft or weak references, so they can be reclaimed by the garbage collector. A cleaner thread,
+ * started with the first referenced instance, removes the entries of collected instances and releases their creational contexts. Collected instances
+ * can not be destroyed, so their contextuals must not rely on a destroy callback. Clearing the store destroys the instances, that are still reachable.
+ * <p>
+ * Instances, that have not been materialized yet, are held strongly and not materialized by the store. Once they have been materialized, the next access
+ * chooses how to hold them.
+ */
+public class ReferenceBeanStore implements BeanStore, Closeable {
+
+	public enum Strength {
+		SOFT, WEAK
+	}
+
+	private interface Entry<T> {
+
+		BeanInstance<T> toInstance();
+	}
+
+	private static class StrongEntry<T> implements Entry<T> {
+
+		private final BeanInstance<T> instance;
+
+		public StrongEntry(BeanInstance<T> instance) {
+			this.instance = instance;
+		}
+
+		@Override
+		public BeanInstance<T> toInstance() {
+			return instance;
+		}
+	}
+
+	private static class PendingEntry<T> extends StrongEntry<T> {
+
+		public PendingEntry(BeanInstance<T> instance) {
+			super(instance);
+		}
+	}
+
+	private interface ReferenceEntry<T> extends Entry<T> {
+
+		BeanIdentifier getId();
+
+		CreationalContext<T> getCreationalContext();
+	}
+
+	private static class SoftEntry<T> extends SoftReference<T> implements ReferenceEntry<T> {
+
+		private final BeanIdentifier id;
+		private final Contextual<T> contextual;
+		private final CreationalContext<T> context;
+
+		public SoftEntry(BeanIdentifier id, BeanInstance<T> instance, ReferenceQueue<Object> queue) {
+			super(instance.getInstance(), queue);
+			this.id = id;
+			this.contextual = instance.getContextual();
+			this.context = instance.getCreationalContext();
+		}
+
+		@Override
+		public CreationalContext<T> getCreationalContext() {
+			return context;
+		}
+
+		@Override
+		public BeanIdentifier getId() {
+			return id;
+		}
+
+		@Override
+		public BeanInstance<T> toInstance() {
+			T instance = get();
+			return instance != null ? new BeanInstanceImpl<>(contextual, instance, context) : null;
+		}
+	}
+
+	private static class WeakEntry<T> extends WeakReference<T> implements ReferenceEntry<T> {
+
+		private final BeanIdentifier id;
+		private final Contextual<T> contextual;
+		private final CreationalContext<T> context;
+
+		public WeakEntry(BeanIdentifier id, BeanInstance<T> instance, ReferenceQueue<Object> queue) {
+			super(instance.getInstance(), queue);
+			this.id = id;
+			this.contextual = instance.getContextual();
+			this.context = instance.getCreationalContext();
+		}
+
+		@Override
+		public CreationalContext<T> getCreationalContext() {
+			return context;
+		}
+
+		@Override
+		public BeanIdentifier getId() {
+			return id;
+		}
+
+		@Override
+		public BeanInstance<T> toInstance() {
+			T instance = get();
+			return instance != null ? new BeanInstanceImpl<>(contextual, instance, context) : null;
+		}
+	}
+
+	private final Strength strength;
+	private final Predicate<? super BeanInstance<?>> referenced;
+	private final ConcurrentMap<BeanIdentifier, Entry<?>> entries;
+	private final ReferenceQueue<Object> queue;
+	private final BeanStoreListeners listeners;
+	private final LongAdder collectedCount;
+
+	private volatile Thread cleaner;
+	private boolean closed;
+
+	public ReferenceBeanStore(Strength strength) {
+		this(strength, instance -> true);
+	}
+
+	/**
+	 * @param strength the strength of the references to chosen instances
+	 * @param referenced chooses the instances to hold through references, all others are held strongly
+	 */
+	public ReferenceBeanStore(Strength strength, Predicate<? super BeanInstance<?>> referenced) {
+		this.strength = requireNonNull(strength);
+		this.referenced = requireNonNull(referenced);
+		this.entries = new ConcurrentHashMap<>();
+		this.queue = new ReferenceQueue<>();
+		this.listeners = new BeanStoreListeners(this);
+		this.collectedCount = new LongAdder();
+	}
+
+	@Override
+	public void addListener(BeanStoreListener listener) {
+		listeners.add(listener);
+	}
+
+	private void cleanUp() {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				Reference<?> reference = queue.remove();
+				ReferenceEntry<?> entry = (ReferenceEntry<?>) reference;
+				if (entries.remove(entry.getId(), entry)) {
+					expired(entry);
+				}
+			}
+		} catch (InterruptedException e) {
+			// closed
+		}
+	}
+
+	@Override
+	public void clear() {
+		List<BeanInstance<?>> destroyed = new ArrayList<>();
+		for (BeanIdentifier id : entries.keySet()) {
+			Entry<?> entry = entries.remove(id);
+			if (entry == null) {
+				continue;
+			}
+			BeanInstance<?> instance = entry.toInstance();
+			if (instance != null) {
+				destroyed.add(instance);
+			} else {
+				expired((ReferenceEntry<?>) entry);
+			}
+		}
+		listeners.fireCleared();
+		BeanInstances.destroyAll(destroyed);
+	}
+
+	/**
+	 * Stops the cleaner thread. Entries of instances collected afterwards are only removed, when they are accessed.
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		if (cleaner != null) {
+			cleaner.interrupt();
+		}
+	}
+
+	@Override
+	public boolean contains(BeanIdentifier id) {
+		return get(id) != null;
+	}
+
+	private <T> Entry<T> entryFor(BeanIdentifier id, BeanInstance<T> instance) {
+		if (!instance.isMaterialized()) {
+			return new PendingEntry<>(instance);
+		} else if (!referenced.test(instance)) {
+			return new StrongEntry<>(instance);
+		}
+		startCleaner();
+		if (strength == Strength.SOFT) {
+			return new SoftEntry<>(id, instance, queue);
+		} else {
+			return new WeakEntry<>(id, instance, queue);
+		}
+	}
+
+	/**
+	 * Removes the given entry's instance from the counts and releases its creational context. Only called by the one, that removed the entry from the map,
+	 * so the context is released exactly once.
+	 */
+	private void expired(ReferenceEntry<?> entry) {
+		collectedCount.increment();
+		listeners.fireExpired(entry.getId());
+		if (entry.getCreationalContext() != null) {
+			entry.getCreationalContext().release();
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> BeanInstance<T> get(BeanIdentifier id) {
+		Entry<T> entry = (Entry<T>) entries.get(id);
+		if (entry == null) {
+			return null;
+		}
+		BeanInstance<T> instance = entry.toInstance();
+		if (instance == null && entries.remove(id, entry)) {
+			expired((ReferenceEntry<T>) entry);
+		} else if (entry instanceof PendingEntry && instance.isMaterialized()) {
+			entries.replace(id, entry, entryFor(id, instance));
+		}
+		return instance;
+	}
+
+	/**
+	 * @return the number of entries removed, because their instance has been collected
+	 */
+	public long getCollectedCount() {
+		return collectedCount.sum();
+	}
+
+	@Override
+	public boolean isAvailable() {
+		return true;
+	}
+
+	@Override
+	public Iterator<BeanIdentifier> iterator() {
+		return entries.keySet().iterator();
+	}
+
+	@Override
+	public <T> void put(BeanIdentifier id, BeanInstance<T> instance) {
+		entries.put(id, entryFor(id, instance));
+		listeners.fireAdded(id);
+	}
+
+	/**
+	 * @param id the id of an instance
+	 * @return the reference holding the instance, or null if it is held strongly or not at all. Tests enqueue it to simulate a collection.
+	 */
+	Reference<?> referenceOf(BeanIdentifier id) {
+		Entry<?> entry = entries.get(id);
+		return entry instanceof Reference ? (Reference<?>) entry : null;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> BeanInstance<T> remove(BeanIdentifier id) {
+		Entry<T> entry = (Entry<T>) entries.remove(id);
+		if (entry == null) {
+			return null;
+		}
+		BeanInstance<T> instance = entry.toInstance();
+		if (instance == null) {
+			expired((ReferenceEntry<T>) entry);
+			return null;
+		}
+		listeners.fireRemoved(id);
+		return instance;
+	}
+
+	@Override
+	public void removeListener(BeanStoreListener listener) {
+		listeners.remove(listener);
+	}
+
+	private void startCleaner() {
+		if (cleaner != null) {
+			return;
+		}
+		synchronized (this) {
+			if (cleaner == null && !closed) {
+				Thread thread = new Thread(this::cleanUp, "bean-store-reference-cleaner");
+				thread.setDaemon(true);
+				thread.start();
+				cleaner = thread;
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		return entries.size();
+	}
+
+	@Override
+	public boolean supportsListeners() {
+		return true;
+	}
+}
@@ -0,0 +1,548 @@
+package org.gammastrike.store.impl;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import javax.enterprise.inject.spi.BeanManager;
+
+import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.api.BeanInstance;
+import org.gammastrike.store.api.BeanStore;
+import org.gammastrike.store.api.BeanStoreListener;
+
+/**
+ * A {@link BeanStore} decorator, that replicates its changes to the stores of peer nodes through a {@link ReplicationTransport}. Changes are collected
+ * per id, so only the latest change of an id is sent, and shipped in batches once a batch is full or the flush interval passed. Peers acknowledge batches
+ * asynchronously, writers never wait for them. The changes of a failed batch are queued again with the current local state of their ids, so peers catch
+ * up with the next batch.
+ * <p>
+ * Local changes, received changes and the queueing of changes are serialized by the store's lock, so the order of changes sent matches the order in
+ * which they have been applied locally.
+ * <p>
+ * Concurrent changes of the same id on different nodes are resolved by last-writer-wins: every change carries a version of its wall-clock time and its
+ * node's id, and a received change is only applied, if it is newer than the local version of its id. Local versions never fall behind a received one,
+ * so a change made after receiving another one always wins over it. Versions of removed ids are kept as tombstones until the next clear. A received
+ * batch is decoded completely before any of its changes is applied, so a malformed batch is rejected as a whole.
+ * <p>
+ * Only instances, that are serializable according to {@link BeanInstanceSerializer}, are replicated. Putting any other instance removes a replicated
+ * instance of the same id on the peers.
+ */
+public class ReplicatedBeanStore implements BeanStore, Closeable {
+
+	private static final byte PUT = 1;
+	private static final byte REMOVE = 2;
+	private static final byte CLEAR = 3;
+
+	/**
+	 * A queued local change of an id. The payload is null for a removal.
+	 */
+	private static final class Change {
+
+		private final byte[] payload;
+		private final Version version;
+
+		Change(byte[] payload, Version version) {
+			this.payload = payload;
+			this.version = version;
+		}
+	}
+
+	/**
+	 * A decoded change received from a peer. The id and instance are null for a clear, the instance is null for a removal.
+	 */
+	private static final class ReceivedChange {
+
+		private final byte operation;
+		private final BeanIdentifier id;
+		private final Version version;
+		private final BeanInstance<?> instance;
+
+		ReceivedChange(byte operation, BeanIdentifier id, Version version, BeanInstance<?> instance) {
+			this.operation = operation;
+			this.id = id;
+			this.version = version;
+			this.instance = instance;
+		}
+	}
+
+	/**
+	 * The last-writer-wins version of a change, ordered by time first and by node id for changes made in the same millisecond.
+	 */
+	private static final class Version implements Comparable<Version> {
+
+		private static final Version INITIAL = new Version(Long.MIN_VALUE, Long.MIN_VALUE);
+
+		private static Version readFrom(DataInputStream in) throws IOException {
+			return new Version(in.readLong(), in.readLong());
+		}
+
+		private final long timestamp;
+		private final long node;
+
+		Version(long timestamp, long node) {
+			this.timestamp = timestamp;
+			this.node = node;
+		}
+
+		@Override
+		public int compareTo(Version other) {
+			int result = Long.compare(timestamp, other.timestamp);
+			return result != 0 ? result : Long.compare(node, other.node);
+		}
+
+		private void writeTo(DataOutputStream out) throws IOException {
+			out.writeLong(timestamp);
+			out.writeLong(node);
+		}
+	}
+
+	private final BeanStore delegate;
+	private final BeanInstanceSerializer serializer;
+	private final ReplicationTransport transport;
+	private final int maximumBatchSize;
+	private final ScheduledExecutorService flushExecutor;
+	private final Object sendLock;
+	private final long nodeId;
+	private final LongSupplier clock;
+
+	private final LongAdder sentBatchCount;
+	private final LongAdder sentChangeCount;
+	private final LongAdder acknowledgedBatchCount;
+	private final LongAdder failedBatchCount;
+	private final LongAdder receivedChangeCount;
+	private final LongAdder staleChangeCount;
+
+	private final Map<BeanIdentifier, Version> versions;
+	private Version clearVersion;
+	private long lastTimestamp;
+	private Map<BeanIdentifier, Change> pending;
+	private Version pendingClear;
+	private CompletableFuture<Void> outstanding;
+
+	/**
+	 * @param delegate the local store
+	 * @param manager the bean manager to resolve replicated instances' contextuals with
+	 * @param transport the transport to the peers
+	 * @param maximumBatchSize the number of changes, that triggers sending a batch
+	 * @param flushInterval the maximum time a change waits for its batch to fill up
+	 * @param unit the unit of the interval
+	 */
+	public ReplicatedBeanStore(BeanStore delegate, BeanManager manager, ReplicationTransport transport, int maximumBatchSize, long flushInterval, TimeUnit unit) {
+		this(delegate, manager, transport, maximumBatchSize, flushInterval, unit, UUID.randomUUID().getMostSignificantBits(), System::currentTimeMillis);
+	}
+
+	/**
+	 * @param nodeId the id of this node, that breaks ties between versions of the same time
+	 * @param clock the wall clock in milliseconds
+	 */
+	ReplicatedBeanStore(BeanStore delegate, BeanManager manager, ReplicationTransport transport, int maximumBatchSize, long flushInterval, TimeUnit unit,
+			long nodeId, LongSupplier clock) {
+		if (maximumBatchSize < 1) {
+			throw new IllegalArgumentException("Maximum batch size must be positive: " + maximumBatchSize);
+		}
+		this.delegate = requireNonNull(delegate);
+		this.serializer = new BeanInstanceSerializer(manager);
+		this.transport = requireNonNull(transport);
+		this.maximumBatchSize = maximumBatchSize;
+		this.sentBatchCount = new LongAdder();
+		this.sentChangeCount = new LongAdder();
+		this.acknowledgedBatchCount = new LongAdder();
+		this.failedBatchCount = new LongAdder();
+		this.receivedChangeCount = new LongAdder();
+		this.staleChangeCount = new LongAdder();
+		this.nodeId = nodeId;
+		this.clock = requireNonNull(clock);
+		this.versions = new HashMap<>();
+		this.clearVersion = Version.INITIAL;
+		this.pending = new LinkedHashMap<>();
+		this.sendLock = new Object();
+		this.outstanding = CompletableFuture.completedFuture(null);
+
+		transport.receive(this::apply);
+		flushExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "bean-store-replication");
+			thread.setDaemon(true);
+			return thread;
+		});
+		flushExecutor.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, unit);
+	}
+
+	@Override
+	public void addListener(BeanStoreListener listener) {
+		delegate.addListener(listener);
+	}
+
+	/**
+	 * Applies a received batch. The whole batch is decoded first, so a malformed batch leaves the store unchanged. Changes older than the local version of
+	 * their id are dropped.
+	 */
+	private void apply(byte[] batch) {
+		List<ReceivedChange> changes;
+		try {
+			changes = decode(batch);
+		} catch (IOException | ClassNotFoundException e) {
+			throw new IllegalStateException("Could not apply replicated batch", e);
+		}
+		synchronized (this) {
+			for (ReceivedChange change : changes) {
+				lastTimestamp = Math.max(lastTimestamp, change.version.timestamp);
+				boolean applied = change.operation == CLEAR ? applyClear(change.version) : applyChange(change);
+				if (!applied) {
+					staleChangeCount.increment();
+				}
+				receivedChangeCount.increment();
+			}
+		}
+	}
+
+	private boolean applyChange(ReceivedChange change) {
+		if (change.version.compareTo(clearVersion) <= 0 || change.version.compareTo(versionOf(change.id)) <= 0) {
+			return false;
+		}
+		versions.put(change.id, change.version);
+		if (change.operation == PUT) {
+			delegate.put(change.id, change.instance);
+		} else {
+			delegate.remove(change.id);
+		}
+		return true;
+	}
+
+	/**
+	 * Removes all ids, whose version is older than the clear. Ids changed later survive it.
+	 */
+	private boolean applyClear(Version version) {
+		if (version.compareTo(clearVersion) <= 0) {
+			return false;
+		}
+		clearVersion = version;
+		versions.values().removeIf(current -> current.compareTo(version) < 0);
+		List<BeanIdentifier> cleared = new ArrayList<>();
+		for (BeanIdentifier id : delegate) {
+			if (!versions.containsKey(id)) {
+				cleared.add(id);
+			}
+		}
+		if (cleared.size() == delegate.size()) {
+			delegate.clear();
+		} else {
+			for (BeanIdentifier id : cleared) {
+				delegate.remove(id);
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		synchronized (this) {
+			Version version = nextVersion();
+			delegate.clear();
+			versions.clear();
+			clearVersion = version;
+			pending.clear();
+			pendingClear = version;
+		}
+	}
+
+	/**
+	 * Sends the pending changes and stops the periodic flush.
+	 */
+	@Override
+	public void close() {
+		flushExecutor.shutdown();
+		flush();
+	}
+
+	@Override
+	public boolean contains(BeanIdentifier id) {
+		return delegate.contains(id);
+	}
+
+	private List<ReceivedChange> decode(byte[] batch) throws IOException, ClassNotFoundException {
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(batch))) {
+			int count = in.readInt();
+			if (count < 0) {
+				throw new IOException("Invalid change count " + count);
+			}
+			List<ReceivedChange> changes = new ArrayList<>(Math.min(count, batch.length));
+			for (int i = 0; i < count; i++) {
+				byte operation = in.readByte();
+				switch (operation) {
+				case PUT:
+					BeanIdentifier id = serializer.readIdentifier(in);
+					Version version = Version.readFrom(in);
+					int length = in.readInt();
+					if (length < 0 || length > in.available()) {
+						throw new IOException("Invalid payload length " + length);
+					}
+					byte[] payload = new byte[length];
+					in.readFully(payload);
+					changes.add(new ReceivedChange(PUT, id, version, serializer.deserialize(payload)));
+					break;
+				case REMOVE:
+					BeanIdentifier removed = serializer.readIdentifier(in);
+					changes.add(new ReceivedChange(REMOVE, removed, Version.readFrom(in), null));
+					break;
+				case CLEAR:
+					changes.add(new ReceivedChange(CLEAR, null, Version.readFrom(in), null));
+					break;
+				default:
+					throw new IOException("Unknown replication operation " + operation);
+				}
+			}
+			return changes;
+		}
+	}
+
+	private byte[] encode(Map<BeanIdentifier, Change> changes, Version clear) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(changes.size() + (clear != null ? 1 : 0));
+		if (clear != null) {
+			out.writeByte(CLEAR);
+			clear.writeTo(out);
+		}
+		for (Map.Entry<BeanIdentifier, Change> entry : changes.entrySet()) {
+			Change change = entry.getValue();
+			out.writeByte(change.payload != null ? PUT : REMOVE);
+			serializer.writeIdentifier(out, entry.getKey());
+			change.version.writeTo(out);
+			if (change.payload != null) {
+				out.writeInt(change.payload.length);
+				out.write(change.payload);
+			}
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Sends all pending changes in one batch.
+	 *
+	 * @return completes when all peers acknowledged this and all earlier batches, or exceptionally if this batch failed
+	 */
+	public CompletableFuture<Void> flush() {
+		Map<BeanIdentifier, Change> changes;
+		Version clear;
+		CompletableFuture<Void> acknowledged;
+		CompletableFuture<Void> all;
+		synchronized (sendLock) {
+			synchronized (this) {
+				if (pending.isEmpty() && pendingClear == null) {
+					return outstanding;
+				}
+				changes = pending;
+				clear = pendingClear;
+				pending = new LinkedHashMap<>();
+				pendingClear = null;
+			}
+			try {
+				acknowledged = transport.send(encode(changes, clear));
+			} catch (IOException | RuntimeException e) {
+				acknowledged = new CompletableFuture<>();
+				acknowledged.completeExceptionally(e);
+			}
+			outstanding = CompletableFuture.allOf(outstanding.handle((result, failure) -> null), acknowledged);
+			all = outstanding;
+		}
+		sentBatchCount.increment();
+		sentChangeCount.add(changes.size() + (clear != null ? 1 : 0));
+		acknowledged.whenComplete((result, failure) -> {
+			if (failure == null) {
+				acknowledgedBatchCount.increment();
+			} else {
+				failedBatchCount.increment();
+				requeue(changes, clear);
+			}
+		});
+		return all;
+	}
+
+	@Override
+	public <T> BeanInstance<T> get(BeanIdentifier id) {
+		return delegate.get(id);
+	}
+
+	public long getAcknowledgedBatchCount() {
+		return acknowledgedBatchCount.sum();
+	}
+
+	public long getFailedBatchCount() {
+		return failedBatchCount.sum();
+	}
+
+	public long getReceivedChangeCount() {
+		return receivedChangeCount.sum();
+	}
+
+	public long getSentBatchCount() {
+		return sentBatchCount.sum();
+	}
+
+	public long getSentChangeCount() {
+		return sentChangeCount.sum();
+	}
+
+	/**
+	 * @return the number of received changes, that have been dropped, because a newer change of their id had already been applied
+	 */
+	public long getStaleChangeCount() {
+		return staleChangeCount.sum();
+	}
+
+	@Override
+	public Iterable<BeanIdentifier> identifiersOf(Class<?> type, Annotation... qualifiers) {
+		return delegate.identifiersOf(type, qualifiers);
+	}
+
+	@Override
+	public boolean isAvailable() {
+		return delegate.isAvailable();
+	}
+
+	@Override
+	public Iterator<BeanIdentifier> iterator() {
+		return delegate.iterator();
+	}
+
+	/**
+	 * Creates the version of a local change, that is newer than all versions seen so far. Must be called holding the store's lock.
+	 */
+	private Version nextVersion() {
+		lastTimestamp = Math.max(clock.getAsLong(), lastTimestamp + 1);
+		return new Version(lastTimestamp, nodeId);
+	}
+
+	/**
+	 * @return the serialized instance, or null if it is not replicated
+	 */
+	private byte[] payloadOf(BeanIdentifier id, BeanInstance<?> instance) {
+		if (instance == null || !serializer.isSerializable(instance)) {
+			return null;
+		}
+		try {
+			return serializer.serialize(instance);
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not serialize " + id, e);
+		}
+	}
+
+	@Override
+	public <T> void put(BeanIdentifier id, BeanInstance<T> instance) {
+		byte[] payload = payloadOf(id, instance);
+		boolean full;
+		synchronized (this) {
+			Version version = nextVersion();
+			delegate.put(id, instance);
+			versions.put(id, version);
+			full = queue(id, new Change(payload, version));
+		}
+		if (full) {
+			flush();
+		}
+	}
+
+	/**
+	 * Queues a change, replacing any pending change of the same id. Must be called holding the store's lock.
+	 *
+	 * @return whether the pending changes fill a batch
+	 */
+	private boolean queue(BeanIdentifier id, Change change) {
+		pending.remove(id);
+		pending.put(id, change);
+		return pending.size() >= maximumBatchSize;
+	}
+
+	@Override
+	public <T> BeanInstance<T> remove(BeanIdentifier id) {
+		BeanInstance<T> removed;
+		boolean full = false;
+		synchronized (this) {
+			removed = delegate.remove(id);
+			if (removed != null) {
+				Version version = nextVersion();
+				versions.put(id, version);
+				full = queue(id, new Change(null, version));
+			}
+		}
+		if (full) {
+			flush();
+		}
+		return removed;
+	}
+
+	@Override
+	public void removeListener(BeanStoreListener listener) {
+		delegate.removeListener(listener);
+	}
+
+	/**
+	 * Queues the changes of a failed batch again. Later batches may already have reached the peers, so the current local state of the changed ids is
+	 * queued instead of the failed payloads, with their current versions, and a failed clear is followed by the whole local state. Changes superseded by
+	 * a pending clear are dropped.
+	 */
+	private synchronized void requeue(Map<BeanIdentifier, Change> changes, Version clear) {
+		if (pendingClear != null) {
+			return;
+		}
+		Map<BeanIdentifier, Change> requeued = new LinkedHashMap<>();
+		Iterable<BeanIdentifier> ids = clear != null ? delegate : changes.keySet();
+		for (BeanIdentifier id : ids) {
+			if (!pending.containsKey(id)) {
+				byte[] payload;
+				try {
+					payload = payloadOf(id, delegate.get(id));
+				} catch (IllegalStateException e) {
+					payload = null;
+				}
+				Version version = versions.get(id);
+				if (version == null) {
+					version = changes.containsKey(id) ? changes.get(id).version : nextVersion();
+				}
+				requeued.put(id, new Change(payload, version));
+			}
+		}
+		requeued.putAll(pending);
+		pending = requeued;
+		pendingClear = clear;
+	}
+
+	@Override
+	public int size() {
+		return delegate.size();
+	}
+
+	@Override
+	public boolean supportsListeners() {
+		return delegate.supportsListeners();
+	}
+
+	/**
+	 * @return the version of the id's last change, which is older than any change, if the id has not been changed since the last clear
+	 */
+	private Version versionOf(BeanIdentifier id) {
+		Version version = versions.get(id);
+		return version != null ? version : Version.INITIAL;
+	}
+}
@@ -0,0 +1,25 @@
+package org.gammastrike.store.impl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Carries the change batches of a {@link ReplicatedBeanStore} between nodes.
+ */
+public interface ReplicationTransport {
+
+	/**
+	 * Registers the receiver of batches sent by peers. A batch is acknowledged to its sender, once the receiver returns.
+	 *
+	 * @param receiver applies a received batch
+	 */
+	void receive(Consumer<byte[]> receiver);
+
+	/**
+	 * Sends a batch to all peers. Must not block, and must deliver batches to each peer in the order they have been sent.
+	 *
+	 * @param batch the encoded batch
+	 * @return completes when all peers acknowledged the batch, or exceptionally if any failed to receive it
+	 */
+	CompletableFuture<Void> send(byte[] batch);
+}
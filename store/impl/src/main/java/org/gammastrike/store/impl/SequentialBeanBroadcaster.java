@@ -0,0 +1,44 @@
+package org.gammastrike.store.impl;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.gammastrike.util.MethodDispatcher;
+
+public class SequentialBeanBroadcaster implements BeanBroadcaster {
+
+	public static final SequentialBeanBroadcaster INSTANCE = new SequentialBeanBroadcaster();
+
+	/**
+	 * Attaches the failure to the first one occured. The same failure reported by several targets is attached only once.
+	 */
+	static Throwable collect(Throwable occured, Throwable failure) {
+		if (occured == null) {
+			return failure;
+		}
+		if (occured != failure && !Arrays.asList(occured.getSuppressed()).contains(failure)) {
+			occured.addSuppressed(failure);
+		}
+		return occured;
+	}
+
+	static void invoke(Method method, Object[] args, Object target) throws Throwable {
+		MethodDispatcher.invoke(method, target, args);
+	}
+
+	@Override
+	public void broadcast(Method method, Object[] args, Collection<?> targets) throws Throwable {
+		Throwable occured = null;
+		for (Object target : targets) {
+			try {
+				invoke(method, args, target);
+			} catch (Throwable failure) {
+				occured = collect(occured, failure);
+			}
+		}
+		if (occured != null) {
+			throw occured;
+		}
+	}
+}
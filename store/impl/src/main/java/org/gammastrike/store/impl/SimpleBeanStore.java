@@ -1,24 +1,52 @@
 package org.gammastrike.store.impl;
 
+import java.lang.annotation.Annotation;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
+import org.gammastrike.store.api.BeanCreations;
 import org.gammastrike.store.api.BeanIdentifier;
 import org.gammastrike.store.api.BeanInstance;
 import org.gammastrike.store.api.BeanStore;
+import org.gammastrike.store.api.BeanStoreListener;
 
 public class SimpleBeanStore implements BeanStore {
 
-	private final Map<BeanIdentifier, Object> beans;
+	private final ConcurrentHashMap<BeanIdentifier, BeanInstance<?>> beans;
+	private final BeanCreations creations;
+	private final BeanTypeIndex index;
+	private final BeanStoreListeners listeners;
 
 	public SimpleBeanStore() {
 		beans = new ConcurrentHashMap<>();
+		creations = new BeanCreations();
+		index = new BeanTypeIndex();
+		listeners = new BeanStoreListeners(this);
+	}
+
+	@Override
+	public void addListener(BeanStoreListener listener) {
+		listeners.add(listener);
 	}
 
 	@Override
 	public void clear() {
-		beans.clear();
+		for (BeanIdentifier id : beans.keySet()) {
+			removeIndexed(id);
+		}
+		listeners.fireCleared();
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> BeanInstance<T> computeIfAbsent(BeanIdentifier id, Function<? super BeanIdentifier, ? extends BeanInstance<T>> creator) {
+		BeanInstance<T> instance = (BeanInstance<T>) beans.get(id);
+		return instance != null ? instance : creations.computeIfAbsent(this, id, creator);
 	}
 
 	@Override
@@ -26,12 +54,47 @@ public class SimpleBeanStore implements BeanStore {
 		return beans.containsKey(id);
 	}
 
+	@Override
+	public Map<BeanIdentifier, BeanInstance<?>> drain() {
+		Map<BeanIdentifier, BeanInstance<?>> drained = new HashMap<>(beans.size());
+		for (BeanIdentifier id : beans.keySet()) {
+			BeanInstance<?> instance = removeIndexed(id);
+			if (instance != null) {
+				listeners.fireRemoved(id);
+				drained.put(id, instance);
+			}
+		}
+		return drained;
+	}
+
+	@Override
+	public void forEach(long parallelismThreshold, BiConsumer<BeanIdentifier, BeanInstance<?>> action) {
+		beans.forEach(parallelismThreshold, action);
+	}
+
 	@Override
 	@SuppressWarnings("unchecked")
 	public <T> BeanInstance<T> get(BeanIdentifier id) {
 		return (BeanInstance<T>) beans.get(id);
 	}
 
+	@Override
+	public Map<BeanIdentifier, BeanInstance<?>> getAll(Collection<BeanIdentifier> ids) {
+		Map<BeanIdentifier, BeanInstance<?>> instances = new HashMap<>(ids.size());
+		for (BeanIdentifier id : ids) {
+			BeanInstance<?> instance = beans.get(id);
+			if (instance != null) {
+				instances.put(id, instance);
+			}
+		}
+		return instances;
+	}
+
+	@Override
+	public Iterable<BeanIdentifier> identifiersOf(Class<?> type, Annotation... qualifiers) {
+		return index.identifiersOf(type, qualifiers);
+	}
+
 	@Override
 	public boolean isAvailable() {
 		return true;
@@ -44,12 +107,64 @@ public class SimpleBeanStore implements BeanStore {
 
 	@Override
 	public <T> void put(BeanIdentifier id, BeanInstance<T> instance) {
-		beans.put(id, instance);
+		beans.compute(id, (key, previous) -> {
+			if (previous != null) {
+				index.remove(key, previous);
+			}
+			index.add(key, instance);
+			return instance;
+		});
+		listeners.fireAdded(id);
 	}
 
 	@Override
 	@SuppressWarnings("unchecked")
 	public <T> BeanInstance<T> remove(BeanIdentifier id) {
-		return (BeanInstance<T>) beans.remove(id);
+		BeanInstance<T> removed = (BeanInstance<T>) removeIndexed(id);
+		if (removed != null) {
+			listeners.fireRemoved(id);
+		}
+		return removed;
+	}
+
+	@Override
+	public Map<BeanIdentifier, BeanInstance<?>> removeAll(Collection<BeanIdentifier> ids) {
+		Map<BeanIdentifier, BeanInstance<?>> removed = new HashMap<>(ids.size());
+		for (BeanIdentifier id : ids) {
+			BeanInstance<?> instance = removeIndexed(id);
+			if (instance != null) {
+				listeners.fireRemoved(id);
+				removed.put(id, instance);
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Removes the instance and its index entry in one step of the map, so a concurrent put of the same id cannot interleave with the index update.
+	 */
+	private BeanInstance<?> removeIndexed(BeanIdentifier id) {
+		BeanInstance<?>[] removed = new BeanInstance<?>[1];
+		beans.computeIfPresent(id, (key, instance) -> {
+			index.remove(key, instance);
+			removed[0] = instance;
+			return null;
+		});
+		return removed[0];
+	}
+
+	@Override
+	public void removeListener(BeanStoreListener listener) {
+		listeners.remove(listener);
+	}
+
+	@Override
+	public int size() {
+		return beans.size();
+	}
+
+	@Override
+	public boolean supportsListeners() {
+		return true;
 	}
 }
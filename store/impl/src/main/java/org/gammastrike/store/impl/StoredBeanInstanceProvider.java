@@ -1,26 +1,165 @@
 package org.gammastrike.store.impl;
 
 import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Instance;
 import javax.enterprise.inject.Produces;
+import javax.enterprise.inject.spi.Annotated;
+import javax.enterprise.inject.spi.Bean;
+import javax.enterprise.inject.spi.BeanManager;
 import javax.enterprise.inject.spi.InjectionPoint;
 import javax.inject.Inject;
+import javax.inject.Singleton;
 
 import org.gammastrike.store.api.BeanIdentifier;
 import org.gammastrike.store.api.BeanInstance;
 import org.gammastrike.store.api.BeanStore;
+import org.gammastrike.store.api.BeanStoreEvent;
 import org.gammastrike.store.api.annotation.IdentifiedBy;
 
 @ApplicationScoped
 public class StoredBeanInstanceProvider {
 
+	/**
+	 * The identifier parsed from the qualifiers of an injection point.
+	 */
+	private static class ParsedIdentifier {
+
+		private final Set<Annotation> qualifiers;
+		private final BeanIdentifier identifier;
+
+		ParsedIdentifier(Set<Annotation> qualifiers, BeanIdentifier identifier) {
+			this.qualifiers = qualifiers;
+			this.identifier = identifier;
+		}
+	}
+
+	/**
+	 * @return true if the bean has a single instance for the whole application, so its listeners see every change of it
+	 */
+	private static boolean isShared(Bean<?> bean) {
+		return bean.getScope() == ApplicationScoped.class || bean.getScope() == Singleton.class;
+	}
+
 	@Inject
 	private Instance<BeanStore> beanstores;
 
+	@Inject
+	private BeanManager manager;
+
+	@Inject
+	private BeanStoreExtension extension;
+
+	private final BeanStoreDirectory directory = new BeanStoreDirectory();
+	private final BeanStoreEventPublisher eventPublisher = new BeanStoreEventPublisher();
+	private final List<BeanStore> trackedStores = new ArrayList<>();
+	private final ConcurrentMap<Annotated, ParsedIdentifier> identifiers = new ConcurrentHashMap<>();
+
+	private BeanStoreEventPublisher.Subscription observerSubscription;
+
+	/**
+	 * Gets the instance stored for the given id or creates one of the given bean in the store selected by the id's qualifiers, the same store proxies
+	 * identified by the id invoke. Concurrent calls for the same id create exactly one instance. A created instance is a {@link LazyBeanInstance}, so the
+	 * bean itself is only created on its first use.
+	 *
+	 * @param id the id of the instance
+	 * @param bean the bean to create the instance of
+	 * @return the stored or created instance
+	 * @throws IllegalArgumentException if the id's qualifiers do not select exactly one store
+	 * @throws IllegalStateException if the selected store is not available
+	 */
+	public <T> BeanInstance<T> createStoredBean(BeanIdentifier id, Bean<T> bean) {
+		BeanInstance<T> instance = lookup(id);
+		if (instance != null) {
+			return instance;
+		}
+		BeanStore beanStore = storeFor(id);
+		if (beanStore == null) {
+			throw new IllegalArgumentException("Could not resolve bean store for " + id);
+		}
+		if (!beanStore.isAvailable()) {
+			throw new IllegalStateException("No bean store available for " + id);
+		}
+		return beanStore.computeIfAbsent(id, key -> LazyBeanInstance.create(manager, bean));
+	}
+
+	/**
+	 * Removes the instances for all given ids from all stores and hands them to the extension's destroyer in one batch.
+	 *
+	 * @param ids the ids of the instances to destroy
+	 */
+	public void destroyStoredBeans(Collection<BeanIdentifier> ids) {
+		List<BeanInstance<?>> removed = new ArrayList<>();
+		for (BeanStore beanStore : beanstores) {
+			removed.addAll(beanStore.removeAll(ids).values());
+		}
+		extension.getDestroyer().destroyAll(removed);
+	}
+
+	/**
+	 * Drains all stores and hands their instances to the extension's destroyer in one batch.
+	 */
+	public void destroyStoredBeans() {
+		List<BeanInstance<?>> drained = new ArrayList<>();
+		for (BeanStore beanStore : beanstores) {
+			drained.addAll(beanStore.drain().values());
+		}
+		extension.getDestroyer().destroyAll(drained);
+	}
+
+	@PreDestroy
+	void forgetBeanStores() {
+		for (BeanStore beanStore : trackedStores) {
+			directory.unregister(beanStore);
+			beanStore.removeListener(eventPublisher);
+		}
+		trackedStores.clear();
+		observerSubscription.close();
+		eventPublisher.close();
+		identifiers.clear();
+	}
+
+	/**
+	 * @return the publisher of the tracked stores' events, to subscribe to and to read its metrics
+	 */
+	public BeanStoreEventPublisher getEventPublisher() {
+		return eventPublisher;
+	}
+
+	/**
+	 * Gets the identifier of the given injection point. The parsed identifier is cached per annotated element, which is only reused while the injection
+	 * point's qualifiers are the ones it was parsed from. Injection points selected dynamically with other identifiers are parsed on every call, so they
+	 * do not grow the cache.
+	 */
+	private BeanIdentifier identifierFor(InjectionPoint ip) {
+		Annotated annotated = ip.getAnnotated();
+		if (annotated == null) {
+			return identifiedBy(ip);
+		}
+		Set<Annotation> qualifiers = ip.getQualifiers();
+		ParsedIdentifier parsed = identifiers.get(annotated);
+		if (parsed != null && parsed.qualifiers.equals(qualifiers)) {
+			return parsed.identifier;
+		}
+		BeanIdentifier identifier = identifiedBy(ip);
+		if (parsed == null) {
+			identifiers.putIfAbsent(annotated, new ParsedIdentifier(new HashSet<>(qualifiers), identifier));
+		}
+		return identifier;
+	}
+
 	protected BeanIdentifier identifiedBy(InjectionPoint ip) {
 		Set<Annotation> qualifiers = new HashSet<>();
 		String identifier = null;
@@ -34,22 +173,92 @@ public class StoredBeanInstanceProvider {
 		return BeanIdentifier.buildFrom(identifier, qualifiers);
 	}
 
+	private <T> BeanInstance<T> lookup(BeanIdentifier identifier) {
+		BeanStore owner = directory.ownerOf(identifier);
+		if (owner != null) {
+			BeanInstance<T> instance = owner.get(identifier);
+			if (instance != null) {
+				return instance;
+			}
+		}
+		BeanStore selected = storeFor(identifier);
+		if (selected != null) {
+			BeanInstance<T> instance = selected.get(identifier);
+			if (instance != null) {
+				return instance;
+			}
+		}
+		for (BeanStore beanStore : beanstores) {
+			BeanInstance<T> instance = beanStore.get(identifier);
+			if (instance != null) {
+				return instance;
+			}
+		}
+		return null;
+	}
+
 	@Produces
 	@IdentifiedBy("")
 	public <T> BeanInstance<T> lookupStoredBean(InjectionPoint ip) {
-		BeanIdentifier identifier = identifiedBy(ip);
+		BeanIdentifier identifier = identifierFor(ip);
 		if (identifier.isUndefined()) {
 			throw new IllegalArgumentException(identifier + " for injection at " + ip + " not defined");
 		}
 
-		BeanInstance<T> instance = null;
+		BeanInstance<T> instance = lookup(identifier);
+		if (instance != null) {
+			return instance;
+		}
+
+		throw new IllegalStateException(identifier + " not available for injection at " + ip);
+	}
+
+	/**
+	 * Looks up the instances for all given ids. Each id is resolved from the first store holding an instance for it.
+	 *
+	 * @param ids the ids of the instances to return
+	 * @return the found instances by their ids
+	 */
+	public Map<BeanIdentifier, BeanInstance<?>> lookupStoredBeans(Collection<BeanIdentifier> ids) {
+		Map<BeanIdentifier, BeanInstance<?>> instances = new HashMap<>(ids.size());
+		Set<BeanIdentifier> missing = new HashSet<>(ids);
 		for (BeanStore beanStore : beanstores) {
-			instance = beanStore.get(identifier);
-			if (instance != null) {
-				return instance;
+			if (missing.isEmpty()) {
+				break;
 			}
+			Map<BeanIdentifier, BeanInstance<?>> found = beanStore.getAll(missing);
+			instances.putAll(found);
+			missing.removeAll(found.keySet());
 		}
+		return instances;
+	}
 
-		throw new IllegalStateException(identifier + " not available for injection at " + ip);
+	private BeanStore storeFor(BeanIdentifier id) {
+		Instance<BeanStore> selected = beanstores.select(id.getQualifiers());
+		if (selected.isUnsatisfied() || selected.isAmbiguous()) {
+			return null;
+		}
+		return selected.get();
+	}
+
+	/**
+	 * Registers the directory with all application scoped and singleton stores supporting listeners, so lookups go straight to the owning store. Stores of
+	 * other scopes exist per context, or per injection for dependent ones, so they are not tracked, but resolved by {@link #storeFor(BeanIdentifier)} on
+	 * every lookup, as are stores without listener support. The changes of the tracked stores are also published as {@link BeanStoreEvent}s to CDI
+	 * observers.
+	 */
+	@PostConstruct
+	void trackBeanStores() {
+		observerSubscription = eventPublisher.subscribe(manager::fireEvent);
+		for (Bean<?> bean : manager.getBeans(BeanStore.class)) {
+			if (!isShared(bean)) {
+				continue;
+			}
+			BeanStore beanStore = (BeanStore) manager.getReference(bean, BeanStore.class, manager.createCreationalContext(bean));
+			if (directory.register(beanStore)) {
+				beanStore.addListener(eventPublisher);
+				trackedStores.add(beanStore);
+			}
+		}
 	}
 }
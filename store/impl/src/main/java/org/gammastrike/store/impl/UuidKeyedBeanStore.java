@@ -0,0 +1,299 @@
+package org.gammastrike.store.impl;
+
+import java.lang.annotation.Annotation;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+
+import org.gammastrike.store.api.BeanCreations;
+import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.api.BeanInstance;
+import org.gammastrike.store.api.BeanStore;
+import org.gammastrike.store.api.BeanStoreListener;
+
+/**
+ * A {@link BeanStore} keyed by the two <code>long</code> halves of the identifiers' UUIDs in an open-addressing table with linear probing. The identifiers
+ * themselves are not retained: their qualifiers are interned into a table of distinct qualifier sets, and identifiers are rebuilt only while iterating.
+ * <p>
+ * Lookups are allocation-free and do not block, as they run under an optimistic read stamp, that is validated afterwards. Writes are serialized.
+ * <p>
+ * With 64-bit compressed references a slot takes 24 bytes. At 1M entries the table has 2M slots, so it retains about 50 bytes per entry, against about
+ * 160 bytes for {@link SimpleBeanStore}, that keeps a map node, the identifier, its UUID and qualifier array, and a type index entry (measured by
+ * <code>UuidKeyedBeanStoreBenchmark</code>). Identifiers of undefined beans cannot be stored and are never found.
+ */
+public class UuidKeyedBeanStore implements BeanStore {
+
+	private static final int INITIAL_CAPACITY = 64;
+	private static final float LOAD_FACTOR = 0.75f;
+
+	private static int hash(long mostSignificantBits, long leastSignificantBits) {
+		long hash = (mostSignificantBits ^ leastSignificantBits) * 0x9e3779b97f4a7c15L;
+		return (int) (hash ^ (hash >>> 32));
+	}
+
+	private final BeanCreations creations;
+	private final StampedLock lock;
+	private final BeanStoreListeners listeners;
+	private final List<Annotation[]> qualifierSets;
+	private final Map<List<Annotation>, Integer> qualifierReferences;
+
+	private long[] keys;
+	private int[] qualifiers;
+	private BeanInstance<?>[] values;
+	private int size;
+
+	public UuidKeyedBeanStore() {
+		this(INITIAL_CAPACITY);
+	}
+
+	public UuidKeyedBeanStore(int expectedSize) {
+		creations = new BeanCreations();
+		lock = new StampedLock();
+		listeners = new BeanStoreListeners(this);
+		qualifierSets = new ArrayList<>();
+		qualifierReferences = new HashMap<>();
+		allocate(capacityFor(expectedSize));
+	}
+
+	@Override
+	public void addListener(BeanStoreListener listener) {
+		listeners.add(listener);
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity << 1];
+		qualifiers = new int[capacity];
+		values = new BeanInstance<?>[capacity];
+		size = 0;
+	}
+
+	private int capacityFor(int expectedSize) {
+		int minimum = (int) Math.ceil(Math.max(expectedSize, INITIAL_CAPACITY) / LOAD_FACTOR);
+		return Integer.highestOneBit(minimum - 1) << 1;
+	}
+
+	@Override
+	public void clear() {
+		long stamp = lock.writeLock();
+		try {
+			allocate(INITIAL_CAPACITY);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+		listeners.fireCleared();
+	}
+
+	@Override
+	public <T> BeanInstance<T> computeIfAbsent(BeanIdentifier id, Function<? super BeanIdentifier, ? extends BeanInstance<T>> creator) {
+		return creations.computeIfAbsent(this, id, creator);
+	}
+
+	@Override
+	public boolean contains(BeanIdentifier id) {
+		return get(id) != null;
+	}
+
+	private void deleteSlot(int slot) {
+		int mask = values.length - 1;
+		int hole = slot;
+		int next = slot;
+		while (true) {
+			next = (next + 1) & mask;
+			if (values[next] == null) {
+				break;
+			}
+			int home = hash(keys[next << 1], keys[(next << 1) + 1]) & mask;
+			boolean movable = hole <= next ? home <= hole || home > next : home <= hole && home > next;
+			if (movable) {
+				keys[hole << 1] = keys[next << 1];
+				keys[(hole << 1) + 1] = keys[(next << 1) + 1];
+				qualifiers[hole] = qualifiers[next];
+				values[hole] = values[next];
+				hole = next;
+			}
+		}
+		keys[hole << 1] = 0;
+		keys[(hole << 1) + 1] = 0;
+		qualifiers[hole] = 0;
+		values[hole] = null;
+		size--;
+	}
+
+	private static int findSlot(long[] keys, BeanInstance<?>[] values, long mostSignificantBits, long leastSignificantBits) {
+		int mask = values.length - 1;
+		int slot = hash(mostSignificantBits, leastSignificantBits) & mask;
+		for (int probes = 0; probes < values.length; probes++) {
+			if (values[slot] == null) {
+				return ~slot;
+			}
+			if (keys[slot << 1] == mostSignificantBits && keys[(slot << 1) + 1] == leastSignificantBits) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return ~slot;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> BeanInstance<T> get(BeanIdentifier id) {
+		if (id.isUndefined()) {
+			return null;
+		}
+		long mostSignificantBits = id.getMostSignificantBits();
+		long leastSignificantBits = id.getLeastSignificantBits();
+
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0) {
+			long[] currentKeys = keys;
+			BeanInstance<?>[] currentValues = values;
+			BeanInstance<?> value = null;
+			if (currentKeys.length == currentValues.length << 1) {
+				int slot = findSlot(currentKeys, currentValues, mostSignificantBits, leastSignificantBits);
+				value = slot >= 0 ? currentValues[slot] : null;
+			}
+			if (lock.validate(stamp)) {
+				return (BeanInstance<T>) value;
+			}
+		}
+
+		stamp = lock.readLock();
+		try {
+			int slot = findSlot(keys, values, mostSignificantBits, leastSignificantBits);
+			return slot >= 0 ? (BeanInstance<T>) values[slot] : null;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public boolean isAvailable() {
+		return true;
+	}
+
+	@Override
+	public Iterator<BeanIdentifier> iterator() {
+		List<BeanIdentifier> identifiers;
+		long stamp = lock.readLock();
+		try {
+			identifiers = new ArrayList<>(size);
+			for (int slot = 0; slot < values.length; slot++) {
+				if (values[slot] != null) {
+					Annotation[] qualifierSet = qualifierSets.get(qualifiers[slot]);
+					identifiers.add(BeanIdentifier.buildFrom(keys[slot << 1], keys[(slot << 1) + 1], qualifierSet));
+				}
+			}
+		} finally {
+			lock.unlockRead(stamp);
+		}
+		return identifiers.iterator();
+	}
+
+	@Override
+	public <T> void put(BeanIdentifier id, BeanInstance<T> instance) {
+		if (id.isUndefined()) {
+			throw new IllegalArgumentException("Undefined identifier cannot be stored");
+		}
+		long mostSignificantBits = id.getMostSignificantBits();
+		long leastSignificantBits = id.getLeastSignificantBits();
+		long stamp = lock.writeLock();
+		try {
+			int slot = findSlot(keys, values, mostSignificantBits, leastSignificantBits);
+			if (slot < 0) {
+				if (size + 1 > values.length * LOAD_FACTOR) {
+					resize(values.length << 1);
+					slot = findSlot(keys, values, mostSignificantBits, leastSignificantBits);
+				}
+				slot = ~slot;
+				keys[slot << 1] = mostSignificantBits;
+				keys[(slot << 1) + 1] = leastSignificantBits;
+				size++;
+			}
+			qualifiers[slot] = qualifierReference(id.getQualifiers());
+			values[slot] = instance;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+		listeners.fireAdded(id);
+	}
+
+	private int qualifierReference(Annotation[] qualifierSet) {
+		List<Annotation> key = Arrays.asList(qualifierSet);
+		Integer reference = qualifierReferences.get(key);
+		if (reference == null) {
+			reference = qualifierSets.size();
+			qualifierSets.add(qualifierSet.clone());
+			qualifierReferences.put(new ArrayList<>(key), reference);
+		}
+		return reference;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T> BeanInstance<T> remove(BeanIdentifier id) {
+		if (id.isUndefined()) {
+			return null;
+		}
+		long mostSignificantBits = id.getMostSignificantBits();
+		long leastSignificantBits = id.getLeastSignificantBits();
+		BeanInstance<T> removed;
+		long stamp = lock.writeLock();
+		try {
+			int slot = findSlot(keys, values, mostSignificantBits, leastSignificantBits);
+			if (slot < 0) {
+				return null;
+			}
+			removed = (BeanInstance<T>) values[slot];
+			deleteSlot(slot);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+		listeners.fireRemoved(id);
+		return removed;
+	}
+
+	@Override
+	public void removeListener(BeanStoreListener listener) {
+		listeners.remove(listener);
+	}
+
+	private void resize(int capacity) {
+		long[] oldKeys = keys;
+		int[] oldQualifiers = qualifiers;
+		BeanInstance<?>[] oldValues = values;
+		int oldSize = size;
+		allocate(capacity);
+		for (int oldSlot = 0; oldSlot < oldValues.length; oldSlot++) {
+			if (oldValues[oldSlot] != null) {
+				long mostSignificantBits = oldKeys[oldSlot << 1];
+				long leastSignificantBits = oldKeys[(oldSlot << 1) + 1];
+				int slot = ~findSlot(keys, values, mostSignificantBits, leastSignificantBits);
+				keys[slot << 1] = mostSignificantBits;
+				keys[(slot << 1) + 1] = leastSignificantBits;
+				qualifiers[slot] = oldQualifiers[oldSlot];
+				values[slot] = oldValues[oldSlot];
+			}
+		}
+		size = oldSize;
+	}
+
+	@Override
+	public int size() {
+		long stamp = lock.readLock();
+		try {
+			return size;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public boolean supportsListeners() {
+		return true;
+	}
+}
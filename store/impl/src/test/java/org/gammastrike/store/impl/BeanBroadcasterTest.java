@@ -0,0 +1,78 @@
+package org.gammastrike.store.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class BeanBroadcasterTest {
+
+	public interface Target {
+
+		void notifyTarget();
+	}
+
+	private static final Method NOTIFY;
+
+	static {
+		try {
+			NOTIFY = Target.class.getMethod("notifyTarget");
+		} catch (NoSuchMethodException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private static void assertBroadcastsToAll(BeanBroadcaster broadcaster) {
+		AtomicInteger invoked = new AtomicInteger();
+		AssertionError error = new AssertionError("error");
+		IllegalStateException shared = new IllegalStateException("shared");
+		List<Target> targets = Arrays.asList(() -> {
+			invoked.incrementAndGet();
+			throw error;
+		}, () -> {
+			invoked.incrementAndGet();
+			throw shared;
+		}, () -> {
+			invoked.incrementAndGet();
+			throw shared;
+		}, invoked::incrementAndGet);
+
+		try {
+			broadcaster.broadcast(NOTIFY, null, targets);
+			fail("failures not rethrown");
+		} catch (Throwable failure) {
+			assertEquals(4, invoked.get());
+			Throwable first = failure == error ? error : shared;
+			assertSame(first, failure);
+			assertEquals(1, failure.getSuppressed().length);
+		}
+	}
+
+	@Test
+	public void collectIgnoresSelfSuppression() {
+		IllegalStateException failure = new IllegalStateException();
+		assertSame(failure, SequentialBeanBroadcaster.collect(failure, failure));
+		assertEquals(0, failure.getSuppressed().length);
+	}
+
+	@Test
+	public void defaultExecutorIsShared() {
+		assertSame(ParallelBeanBroadcaster.defaultExecutor(), ParallelBeanBroadcaster.defaultExecutor());
+	}
+
+	@Test
+	public void parallelBroadcastContinuesAfterError() {
+		assertBroadcastsToAll(new ParallelBeanBroadcaster(Runnable::run, ParallelBeanBroadcaster.Completion.WAIT_FOR_ALL));
+	}
+
+	@Test
+	public void sequentialBroadcastContinuesAfterError() {
+		assertBroadcastsToAll(SequentialBeanBroadcaster.INSTANCE);
+	}
+}
@@ -0,0 +1,91 @@
+package org.gammastrike.store.impl;
+
+import static org.gammastrike.store.impl.TestBeans.instance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.enterprise.context.spi.Contextual;
+import javax.enterprise.context.spi.CreationalContext;
+
+import org.gammastrike.store.api.BeanInstance;
+import org.gammastrike.store.impl.TestBeans.RecordingContext;
+import org.gammastrike.store.impl.TestBeans.RecordingContextual;
+import org.junit.Test;
+
+public class BeanDestructionQueueTest {
+
+	private static final class FailingContextual implements Contextual<Object> {
+
+		@Override
+		public Object create(CreationalContext<Object> creationalContext) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void destroy(Object instance, CreationalContext<Object> creationalContext) {
+			throw new IllegalStateException("Failed to destroy " + instance);
+		}
+	}
+
+	private static BeanInstance<Object> failing(Object value) {
+		return new BeanInstanceImpl<>(new FailingContextual(), value, new RecordingContext());
+	}
+
+	@Test
+	public void destroysRemainingInstancesAfterAFailure() {
+		RecordingContextual contextual = new RecordingContextual();
+		BeanInstance<Object> first = failing("first");
+		BeanInstance<Object> second = failing("second");
+		List<BeanInstance<Object>> instances = Arrays.asList(first, instance(contextual, "kept"), second);
+
+		try {
+			BeanDestroyer.SYNCHRONOUS.destroyAll(instances);
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals("Failed to destroy first", e.getMessage());
+			assertEquals(1, e.getSuppressed().length);
+			assertEquals("Failed to destroy second", e.getSuppressed()[0].getMessage());
+		}
+		assertEquals(Arrays.asList("kept"), contextual.destroyed);
+	}
+
+	@Test
+	public void keepsDestroyingThroughCustomDestroyersAfterAFailure() {
+		RecordingContextual contextual = new RecordingContextual();
+		BeanInstance<Object> failing = instance(contextual, "failing");
+		BeanDestroyer destroyer = instance -> {
+			if (instance == failing) {
+				throw new IllegalStateException();
+			}
+			BeanInstances.destroy(instance);
+		};
+
+		try {
+			destroyer.destroyAll(Arrays.asList(failing, instance(contextual, "kept")));
+			fail();
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertEquals(Arrays.asList("kept"), contextual.destroyed);
+	}
+
+	@Test
+	public void destroysOnTheCallingThreadOnceClosed() {
+		RecordingContextual contextual = new RecordingContextual();
+		BeanDestructionQueue queue = new BeanDestructionQueue(16, 4);
+		queue.destroy(instance(contextual, "queued"));
+		queue.close();
+		assertEquals(Arrays.asList("queued"), contextual.destroyed);
+
+		BeanInstance<Object> late = instance(contextual, "late");
+		queue.destroy(late);
+		assertEquals(Arrays.asList("queued", "late"), contextual.destroyed);
+		assertEquals(1, ((RecordingContext) late.getCreationalContext()).releases.get());
+		assertEquals(1, queue.getCallerDestroyedCount());
+		assertEquals(2, queue.getDestroyedCount());
+		assertEquals(0, queue.getQueueSize());
+	}
+}
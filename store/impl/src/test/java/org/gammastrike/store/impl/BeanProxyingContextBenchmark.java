@@ -0,0 +1,68 @@
+package org.gammastrike.store.impl;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+import org.gammastrike.proxy.api.ProxyFactory;
+import org.gammastrike.store.impl.TestBeans.RecordingContextual;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures repeated {@link BeanProxyingContext#get(javax.enterprise.context.spi.Contextual)} calls for the same contextuals against creating a new proxy
+ * on every call. Not picked up by the default test run; start it with <code>-Dtest=BeanProxyingContextBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BeanProxyingContextBenchmark {
+
+	private static final int CONTEXTUALS = 16;
+	private static final Class<?>[] INTERFACES = { Runnable.class };
+
+	private int call;
+	private BeanProxyingContext context;
+	private RecordingContextual[] contextuals;
+	private ProxyFactory factory;
+
+	@Benchmark
+	public Object cachedGet() {
+		return context.get(contextuals[call++ & (CONTEXTUALS - 1)]);
+	}
+
+	@Benchmark
+	public Object proxyPerCall() {
+		return factory.createProxy(RecordingContextual.class.getClassLoader(), new BeanProxyInvocationHandler(), INTERFACES);
+	}
+
+	@Test
+	public void run() throws RunnerException {
+		new Runner(new OptionsBuilder().include(BeanProxyingContextBenchmark.class.getName()).build()).run();
+	}
+
+	@Setup
+	public void setUp() {
+		factory = (classLoader, handler, interfaces) -> Proxy.newProxyInstance(classLoader, interfaces, handler);
+		context = new BeanProxyingContext();
+		context.initWithProxyFactory(factory);
+		contextuals = new RecordingContextual[CONTEXTUALS];
+		for (int i = 0; i < CONTEXTUALS; i++) {
+			contextuals[i] = new RecordingContextual("contextual" + i);
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package org.gammastrike.store.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gammastrike.proxy.api.ProxyFactory;
+import org.gammastrike.store.api.annotation.Proxied;
+import org.gammastrike.store.impl.TestBeans.RecordingContextual;
+import org.junit.Test;
+
+public class BeanProxyingContextTest {
+
+	static ProxyFactory countingFactory(AtomicInteger creations) {
+		return (classLoader, handler, interfaces) -> {
+			creations.incrementAndGet();
+			return Proxy.newProxyInstance(classLoader, interfaces, handler);
+		};
+	}
+
+	@Test
+	public void reusesOneProxyPerContextual() {
+		AtomicInteger creations = new AtomicInteger();
+		BeanProxyingContext context = new BeanProxyingContext();
+		context.initWithProxyFactory(countingFactory(creations));
+		RecordingContextual first = new RecordingContextual("first");
+		RecordingContextual second = new RecordingContextual("second");
+
+		Object proxy = context.get(first);
+		assertSame(proxy, context.get(first));
+		assertSame(proxy, context.get(first, null));
+		assertNotSame(proxy, context.get(second));
+		assertEquals(2, creations.get());
+		assertEquals(Proxied.class, context.getScope());
+	}
+
+	@Test
+	public void forgetsProxiesOnShutdown() {
+		AtomicInteger creations = new AtomicInteger();
+		BeanProxyingContext context = new BeanProxyingContext();
+		assertFalse(context.isActive());
+		context.initWithProxyFactory(countingFactory(creations));
+		assertTrue(context.isActive());
+		RecordingContextual contextual = new RecordingContextual();
+		Object proxy = context.get(contextual);
+
+		context.destroy();
+		assertFalse(context.isActive());
+		context.initWithProxyFactory(countingFactory(creations));
+		assertNotSame(proxy, context.get(contextual));
+		assertEquals(2, creations.get());
+	}
+}
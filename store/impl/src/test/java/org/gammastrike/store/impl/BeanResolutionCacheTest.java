@@ -0,0 +1,70 @@
+package org.gammastrike.store.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.enterprise.context.spi.CreationalContext;
+
+import org.gammastrike.store.impl.BeanResolutionCache.Resolution;
+import org.junit.Test;
+
+public class BeanResolutionCacheTest {
+
+	private static final Annotation[] NO_QUALIFIERS = new Annotation[0];
+
+	private static Method method() throws NoSuchMethodException {
+		return Object.class.getMethod("toString");
+	}
+
+	@Test
+	public void cachesNormalScopedResolutions() throws Exception {
+		BeanResolutionCache cache = new BeanResolutionCache();
+		AtomicInteger resolved = new AtomicInteger();
+		Resolution first = cache.resolve(method(), NO_QUALIFIERS, true, () -> {
+			resolved.incrementAndGet();
+			return new Resolution(Collections.emptyList(), SequentialBeanBroadcaster.INSTANCE, Collections.emptyList());
+		});
+		Resolution second = cache.resolve(method(), NO_QUALIFIERS, true, () -> {
+			throw new AssertionError("not cached");
+		});
+
+		assertSame(first, second);
+		assertEquals(1, resolved.get());
+
+		cache.invalidate();
+		Resolution third = cache.resolve(method(), NO_QUALIFIERS, true,
+				() -> new Resolution(Collections.emptyList(), SequentialBeanBroadcaster.INSTANCE, Collections.emptyList()));
+		assertNotSame(first, third);
+	}
+
+	@Test
+	public void doesNotCacheDependentResolutions() throws Exception {
+		BeanResolutionCache cache = new BeanResolutionCache();
+		AtomicInteger released = new AtomicInteger();
+		CreationalContext<Object> dependent = new CreationalContext<Object>() {
+
+			@Override
+			public void push(Object incompleteInstance) {
+			}
+
+			@Override
+			public void release() {
+				released.incrementAndGet();
+			}
+		};
+
+		for (int i = 0; i < 2; i++) {
+			Resolution resolution = cache.resolve(method(), NO_QUALIFIERS, false,
+					() -> new Resolution(Collections.emptyList(), null, Collections.<CreationalContext<?>> singletonList(dependent)));
+			assertEquals(false, resolution.isCacheable());
+			resolution.release();
+		}
+		assertEquals(2, released.get());
+	}
+}
@@ -0,0 +1,81 @@
+package org.gammastrike.store.impl;
+
+import static org.gammastrike.store.impl.TestBeans.instance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Supplier;
+
+import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.api.BeanInstance;
+import org.gammastrike.store.api.BeanStore;
+import org.junit.Test;
+
+/**
+ * Races threads creating the same identifiers in the stores, that track their own creations.
+ */
+public class BeanStoreCreationTest {
+
+	private static final int THREADS = 16;
+	private static final int IDS = 2000;
+
+	private static void assertCreatedOnce(Supplier<BeanStore> factory) throws Exception {
+		BeanStore store = factory.get();
+		List<BeanIdentifier> ids = new ArrayList<>();
+		for (int i = 0; i < IDS; i++) {
+			ids.add(new BeanIdentifier());
+		}
+		AtomicIntegerArray creations = new AtomicIntegerArray(IDS);
+		CyclicBarrier start = new CyclicBarrier(THREADS);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<BeanInstance<?>[]>> results = new ArrayList<>();
+			for (int t = 0; t < THREADS; t++) {
+				results.add(executor.submit(() -> {
+					start.await();
+					BeanInstance<?>[] seen = new BeanInstance<?>[IDS];
+					for (int i = 0; i < IDS; i++) {
+						int index = i;
+						seen[i] = store.computeIfAbsent(ids.get(i), id -> {
+							creations.incrementAndGet(index);
+							Thread.yield();
+							return instance(index);
+						});
+					}
+					return seen;
+				}));
+			}
+			BeanInstance<?>[] first = results.get(0).get(1, TimeUnit.MINUTES);
+			for (Future<BeanInstance<?>[]> result : results) {
+				BeanInstance<?>[] seen = result.get(1, TimeUnit.MINUTES);
+				for (int i = 0; i < IDS; i++) {
+					assertSame(first[i], seen[i]);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		for (int i = 0; i < IDS; i++) {
+			assertEquals("creations of id " + i, 1, creations.get(i));
+		}
+		assertEquals(IDS, store.size());
+	}
+
+	@Test
+	public void simpleStoreCreatesOncePerIdentifier() throws Exception {
+		assertCreatedOnce(SimpleBeanStore::new);
+	}
+
+	@Test
+	public void uuidKeyedStoreCreatesOncePerIdentifier() throws Exception {
+		assertCreatedOnce(UuidKeyedBeanStore::new);
+	}
+}
@@ -0,0 +1,82 @@
+package org.gammastrike.store.impl;
+
+import static org.gammastrike.store.impl.TestBeans.instance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Iterator;
+
+import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.api.BeanInstance;
+import org.gammastrike.store.api.BeanStore;
+import org.junit.Test;
+
+public class BeanStoreDirectoryTest {
+
+	private static class SilentBeanStore implements BeanStore {
+
+		@Override
+		public void clear() {
+		}
+
+		@Override
+		public boolean contains(BeanIdentifier id) {
+			return false;
+		}
+
+		@Override
+		public <T> BeanInstance<T> get(BeanIdentifier id) {
+			return null;
+		}
+
+		@Override
+		public boolean isAvailable() {
+			return true;
+		}
+
+		@Override
+		public Iterator<BeanIdentifier> iterator() {
+			return Collections.emptyIterator();
+		}
+
+		@Override
+		public <T> void put(BeanIdentifier id, BeanInstance<T> instance) {
+		}
+
+		@Override
+		public <T> BeanInstance<T> remove(BeanIdentifier id) {
+			return null;
+		}
+	}
+
+	@Test
+	public void tracksStoresSupportingListeners() {
+		BeanStoreDirectory directory = new BeanStoreDirectory();
+		SimpleBeanStore store = new SimpleBeanStore();
+		BeanIdentifier present = new BeanIdentifier();
+		store.put(present, instance("present"));
+
+		assertTrue(directory.register(store));
+		BeanIdentifier added = new BeanIdentifier();
+		store.put(added, instance("added"));
+		assertSame(store, directory.ownerOf(present));
+		assertSame(store, directory.ownerOf(added));
+
+		store.remove(present);
+		assertNull(directory.ownerOf(present));
+		directory.unregister(store);
+		assertEquals(0, directory.size());
+	}
+
+	@Test
+	public void skipsStoresWithoutListeners() {
+		BeanStore store = new SilentBeanStore();
+		assertFalse(store.supportsListeners());
+		assertFalse(new BeanStoreDirectory().register(store));
+		store.addListener(new BeanStoreDirectory());
+	}
+}
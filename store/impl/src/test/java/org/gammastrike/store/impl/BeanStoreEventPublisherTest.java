@@ -0,0 +1,115 @@
+package org.gammastrike.store.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.api.BeanStoreEvent;
+import org.gammastrike.store.api.BeanStoreEvent.Type;
+import org.junit.Test;
+
+public class BeanStoreEventPublisherTest {
+
+	private final SimpleBeanStore store = new SimpleBeanStore();
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+	private void runTasks() {
+		Runnable task;
+		while ((task = tasks.poll()) != null) {
+			task.run();
+		}
+	}
+
+	@Test
+	public void closeStopsDelivery() {
+		BeanStoreEventPublisher publisher = new BeanStoreEventPublisher(4, tasks::add);
+		List<BeanStoreEvent> received = new ArrayList<>();
+		publisher.subscribe(received::add);
+		publisher.close();
+		publisher.publish(new BeanStoreEvent(Type.PUT, store, new BeanIdentifier()));
+
+		runTasks();
+		assertEquals(0, received.size());
+		assertEquals(1, publisher.getPublishedCount());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void rejectsSubscriptionsWhenClosed() {
+		BeanStoreEventPublisher publisher = new BeanStoreEventPublisher();
+		publisher.close();
+		publisher.subscribe(event -> {
+		});
+	}
+
+	@Test
+	public void closeShutsDownDefaultExecutor() throws InterruptedException {
+		BeanStoreEventPublisher publisher = new BeanStoreEventPublisher();
+		CountDownLatch delivered = new CountDownLatch(1);
+		publisher.subscribe(event -> delivered.countDown());
+		publisher.publish(new BeanStoreEvent(Type.PUT, store, new BeanIdentifier()));
+		assertTrue(delivered.await(10, TimeUnit.SECONDS));
+
+		publisher.close();
+		// must neither throw for the shut down executor nor deliver
+		publisher.publish(new BeanStoreEvent(Type.PUT, store, new BeanIdentifier()));
+	}
+
+	@Test
+	public void slowSubscribersLoseOverwrittenEvents() {
+		BeanStoreEventPublisher publisher = new BeanStoreEventPublisher(4, tasks::add);
+		List<BeanIdentifier> received = new ArrayList<>();
+		BeanStoreEventPublisher.Subscription subscription = publisher.subscribe(event -> received.add(event.getId()));
+		List<BeanIdentifier> ids = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			BeanIdentifier id = new BeanIdentifier();
+			publisher.publish(new BeanStoreEvent(Type.PUT, store, id));
+			ids.add(id);
+		}
+
+		runTasks();
+		assertEquals(ids.subList(6, 10), received);
+		assertEquals(6, subscription.getDroppedCount());
+		assertEquals(0, subscription.getLag());
+	}
+
+	@Test
+	public void keepsTheNewestEventsWhenWritersLap() throws InterruptedException {
+		int capacity = 8;
+		int writers = 8;
+		int eventsPerWriter = 10_000;
+		BeanStoreEventPublisher publisher = new BeanStoreEventPublisher(capacity, tasks::add);
+		List<BeanStoreEvent> received = new ArrayList<>();
+		BeanStoreEventPublisher.Subscription subscription = publisher.subscribe(received::add);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> threads = new ArrayList<>();
+		for (int i = 0; i < writers; i++) {
+			Thread thread = new Thread(() -> {
+				try {
+					start.await();
+				} catch (InterruptedException e) {
+					return;
+				}
+				for (int j = 0; j < eventsPerWriter; j++) {
+					publisher.publish(new BeanStoreEvent(Type.PUT, store, BeanIdentifier.UNDEFINED));
+				}
+			});
+			thread.start();
+			threads.add(thread);
+		}
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		runTasks();
+		assertEquals(capacity, received.size());
+		assertEquals(writers * eventsPerWriter - capacity, subscription.getDroppedCount());
+	}
+}
@@ -0,0 +1,157 @@
+package org.gammastrike.store.impl;
+
+import static org.gammastrike.store.impl.TestBeans.instance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.impl.TestBeans.RecordingContextual;
+import org.junit.Test;
+
+public class BoundedBeanStoreTest {
+
+	private static List<BeanIdentifier> listOf(Iterable<BeanIdentifier> ids) {
+		List<BeanIdentifier> list = new ArrayList<>();
+		ids.forEach(list::add);
+		return list;
+	}
+
+	@Test
+	public void clearDestroysAllInstances() {
+		RecordingContextual contextual = new RecordingContextual();
+		BoundedBeanStore store = new BoundedBeanStore(10);
+		store.put(new BeanIdentifier(), instance(contextual, "first"));
+		store.put(new BeanIdentifier(), instance(contextual, "second"));
+		store.clear();
+
+		assertEquals(0, store.size());
+		assertEquals(2, contextual.destroyed.size());
+		assertEquals(Collections.emptyList(), listOf(store.identifiersOf(Object.class)));
+	}
+
+	@Test
+	public void cleanUpExpiresAfterTimeToLive() throws InterruptedException {
+		RecordingContextual contextual = new RecordingContextual();
+		BoundedBeanStore store = new BoundedBeanStore(10, 1, 0, TimeUnit.MILLISECONDS);
+		store.put(new BeanIdentifier(), instance(contextual, "value"));
+		Thread.sleep(5);
+		store.cleanUp();
+
+		assertEquals(0, store.size());
+		assertEquals(1, store.getExpirationCount());
+		assertEquals(Arrays.asList("value"), contextual.destroyed);
+	}
+
+	@Test
+	public void evictsBeyondMaximumSize() {
+		RecordingContextual contextual = new RecordingContextual();
+		BoundedBeanStore store = new BoundedBeanStore(10);
+		for (int i = 0; i < 25; i++) {
+			store.put(new BeanIdentifier(), instance(contextual, i));
+		}
+
+		assertEquals(10, store.size());
+		assertEquals(15, store.getEvictionCount());
+		assertEquals(15, contextual.destroyed.size());
+		assertEquals(10, listOf(store.identifiersOf(Object.class)).size());
+	}
+
+	@Test
+	public void expiresAfterTimeToLiveOnAccess() throws InterruptedException {
+		RecordingContextual contextual = new RecordingContextual();
+		BoundedBeanStore store = new BoundedBeanStore(10, 1, 0, TimeUnit.MILLISECONDS);
+		BeanIdentifier id = new BeanIdentifier();
+		store.put(id, instance(contextual, "value"));
+		Thread.sleep(5);
+
+		assertFalse(store.contains(id));
+		assertNull(store.get(id));
+		assertEquals(1, store.getExpirationCount());
+		assertEquals(1, store.getMissCount());
+		assertEquals(Arrays.asList("value"), contextual.destroyed);
+	}
+
+	@Test
+	public void expiresIdleEntriesOnWrite() throws InterruptedException {
+		RecordingContextual contextual = new RecordingContextual();
+		BoundedBeanStore store = new BoundedBeanStore(10, 0, 1, TimeUnit.MILLISECONDS);
+		BeanIdentifier idle = new BeanIdentifier();
+		store.put(idle, instance(contextual, "idle"));
+		Thread.sleep(5);
+		store.put(new BeanIdentifier(), instance(contextual, "fresh"));
+
+		assertEquals(1, store.size());
+		assertNull(store.get(idle));
+		assertEquals(Arrays.asList("idle"), contextual.destroyed);
+	}
+
+	@Test
+	public void iteratorRemoveDestroysAndUnindexes() {
+		RecordingContextual contextual = new RecordingContextual();
+		BoundedBeanStore store = new BoundedBeanStore(2);
+		BeanIdentifier id = new BeanIdentifier();
+		store.put(id, instance(contextual, "removed"));
+		Iterator<BeanIdentifier> ids = store.iterator();
+		assertEquals(id, ids.next());
+		ids.remove();
+
+		assertEquals(0, store.size());
+		assertEquals(Arrays.asList("removed"), contextual.destroyed);
+		assertEquals(Collections.emptyList(), listOf(store.identifiersOf(Object.class)));
+
+		// the queues must not hold the removed node any more
+		store.put(new BeanIdentifier(), instance(contextual, "first"));
+		store.put(new BeanIdentifier(), instance(contextual, "second"));
+		assertEquals(2, store.size());
+		assertEquals(0, store.getEvictionCount());
+	}
+
+	@Test
+	public void removeDoesNotDestroy() {
+		RecordingContextual contextual = new RecordingContextual();
+		BoundedBeanStore store = new BoundedBeanStore(10);
+		BeanIdentifier id = new BeanIdentifier();
+		store.put(id, instance(contextual, "value"));
+
+		assertEquals("value", store.remove(id).getInstance());
+		assertTrue(contextual.destroyed.isEmpty());
+	}
+
+	@Test
+	public void replacingDestroysPreviousInstance() {
+		RecordingContextual contextual = new RecordingContextual();
+		BoundedBeanStore store = new BoundedBeanStore(10);
+		BeanIdentifier id = new BeanIdentifier();
+		store.put(id, instance(contextual, "previous"));
+		store.put(id, instance(contextual, "current"));
+
+		assertEquals("current", store.get(id).getInstance());
+		assertEquals(Arrays.asList("previous"), contextual.destroyed);
+	}
+
+	@Test
+	public void retainsFrequentlyAccessedId() {
+		BoundedBeanStore store = new BoundedBeanStore(100);
+		BeanIdentifier hot = new BeanIdentifier();
+		store.put(hot, instance("hot"));
+		store.put(new BeanIdentifier(), instance("cold"));
+		for (int i = 0; i < 10; i++) {
+			store.get(hot);
+		}
+		for (int i = 0; i < 1000; i++) {
+			store.put(new BeanIdentifier(), instance(i));
+		}
+
+		assertTrue(store.contains(hot));
+		assertEquals(100, store.size());
+	}
+}
@@ -0,0 +1,45 @@
+package org.gammastrike.store.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class FrequencySketchTest {
+
+	@Test
+	public void countsIncrements() {
+		FrequencySketch sketch = new FrequencySketch(16);
+		for (int i = 0; i < 5; i++) {
+			sketch.increment("key");
+		}
+
+		assertEquals(5, sketch.frequency("key"));
+		assertEquals(0, sketch.frequency("other"));
+	}
+
+	@Test
+	public void halvesCountsAfterSample() {
+		FrequencySketch sketch = new FrequencySketch(16);
+		for (int i = 0; i < 8; i++) {
+			sketch.increment("key");
+		}
+		assertTrue(sketch.frequency("key") >= 8);
+
+		// the sample of 160 increments is full after 152 more
+		for (int i = 0; i < 152; i++) {
+			sketch.increment(i);
+		}
+		assertTrue(sketch.frequency("key") < 8);
+	}
+
+	@Test
+	public void saturatesAtFifteen() {
+		FrequencySketch sketch = new FrequencySketch(16);
+		for (int i = 0; i < 20; i++) {
+			sketch.increment("key");
+		}
+
+		assertEquals(15, sketch.frequency("key"));
+	}
+}
@@ -0,0 +1,181 @@
+package org.gammastrike.store.impl;
+
+import static org.gammastrike.store.impl.TestBeans.instance;
+import static org.gammastrike.store.impl.TestBeans.manager;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.enterprise.inject.spi.BeanManager;
+
+import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.api.BeanInstance;
+import org.gammastrike.store.impl.TestBeans.RecordingContextual;
+import org.gammastrike.store.impl.TestBeans.Value;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JournalingBeanStoreTest {
+
+	private RecordingContextual contextual;
+	private Path directory;
+	private BeanManager manager;
+
+	private JournalingBeanStore open(int snapshotThreshold) throws IOException {
+		return new JournalingBeanStore(new SimpleBeanStore(), manager, directory, 1, TimeUnit.HOURS, snapshotThreshold);
+	}
+
+	@Before
+	public void createDirectory() throws IOException {
+		contextual = new RecordingContextual();
+		manager = manager(contextual);
+		directory = Files.createTempDirectory("journal");
+	}
+
+	@After
+	public void deleteDirectory() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path file : (Iterable<Path>) files::iterator) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+
+	@Test
+	public void replaysJournal() throws IOException {
+		BeanIdentifier kept = new BeanIdentifier();
+		BeanIdentifier removed = new BeanIdentifier();
+		try (JournalingBeanStore store = open(1000)) {
+			store.put(kept, instance(contextual, new Value("kept")));
+			store.put(removed, instance(contextual, new Value("removed")));
+			store.remove(removed);
+		}
+
+		try (JournalingBeanStore store = open(1000)) {
+			assertEquals(3, store.getRecoveredRecords());
+			assertEquals(1, store.size());
+			assertEquals(new Value("kept"), store.get(kept).getInstance());
+			assertFalse(store.contains(removed));
+		}
+	}
+
+	@Test
+	public void replaysSnapshotAndJournalTail() throws IOException {
+		BeanIdentifier first = new BeanIdentifier();
+		BeanIdentifier second = new BeanIdentifier();
+		try (JournalingBeanStore store = open(1)) {
+			store.put(first, instance(contextual, new Value("first")));
+			store.sync();
+			store.put(second, instance(contextual, new Value("second")));
+		}
+
+		try (JournalingBeanStore store = open(1000)) {
+			assertEquals(new Value("first"), store.get(first).getInstance());
+			assertEquals(new Value("second"), store.get(second).getInstance());
+		}
+	}
+
+	@Test
+	public void replaysJournalRotatedByFailedSnapshot() throws IOException {
+		BeanIdentifier rotated = new BeanIdentifier();
+		BeanIdentifier current = new BeanIdentifier();
+		try (JournalingBeanStore store = open(1000)) {
+			store.put(rotated, instance(contextual, new Value("rotated")));
+		}
+		// a snapshot, that failed after rotating the journal
+		Files.move(directory.resolve("journal.bin"), directory.resolve("journal.old"));
+
+		try (JournalingBeanStore store = open(1000)) {
+			assertEquals(new Value("rotated"), store.get(rotated).getInstance());
+			store.put(current, instance(contextual, new Value("current")));
+			store.snapshot();
+			assertFalse(Files.exists(directory.resolve("journal.old")));
+			assertEquals(0, Files.size(directory.resolve("journal.bin")));
+		}
+
+		try (JournalingBeanStore store = open(1000)) {
+			assertEquals(2, store.getRecoveredRecords());
+			assertEquals(new Value("rotated"), store.get(rotated).getInstance());
+			assertEquals(new Value("current"), store.get(current).getInstance());
+		}
+	}
+
+	@Test
+	public void truncatesTornTail() throws IOException {
+		BeanIdentifier id = new BeanIdentifier();
+		try (JournalingBeanStore store = open(1000)) {
+			store.put(id, instance(contextual, new Value("intact")));
+		}
+		Path journal = directory.resolve("journal.bin");
+		long intactLength = Files.size(journal);
+		try (OutputStream out = Files.newOutputStream(journal, StandardOpenOption.APPEND)) {
+			DataOutputStream data = new DataOutputStream(out);
+			data.writeInt(Integer.MAX_VALUE);
+			data.writeInt(0);
+			data.write(new byte[16]);
+		}
+
+		BeanIdentifier later = new BeanIdentifier();
+		try (JournalingBeanStore store = open(1000)) {
+			assertEquals(1, store.getRecoveredRecords());
+			assertEquals(intactLength, Files.size(journal));
+			store.put(later, instance(contextual, new Value("later")));
+		}
+
+		try (JournalingBeanStore store = open(1000)) {
+			assertEquals(2, store.getRecoveredRecords());
+			assertEquals(new Value("intact"), store.get(id).getInstance());
+			assertEquals(new Value("later"), store.get(later).getInstance());
+		}
+	}
+
+	@Test
+	public void dropsPartlyWrittenRecord() throws IOException {
+		BeanIdentifier first = new BeanIdentifier();
+		BeanIdentifier second = new BeanIdentifier();
+		try (JournalingBeanStore store = open(1000)) {
+			store.put(first, instance(contextual, new Value("first")));
+			store.put(second, instance(contextual, new Value("second")));
+		}
+		Path journal = directory.resolve("journal.bin");
+		try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 3);
+		}
+
+		try (JournalingBeanStore store = open(1000)) {
+			assertEquals(1, store.getRecoveredRecords());
+			assertEquals(new Value("first"), store.get(first).getInstance());
+			assertNull(store.get(second));
+		}
+	}
+
+	@Test
+	public void persistsLazyInstancesWithoutMaterializing() throws IOException {
+		BeanIdentifier id = new BeanIdentifier();
+		try (JournalingBeanStore store = open(1000)) {
+			BeanInstance<Object> lazy = LazyBeanInstance.create(manager, contextual);
+			store.put(id, lazy);
+			assertFalse(lazy.isMaterialized());
+		}
+
+		try (JournalingBeanStore store = open(1000)) {
+			BeanInstance<Object> restored = store.get(id);
+			assertFalse(restored.isMaterialized());
+			assertEquals(new Value("created"), restored.getInstance());
+			assertTrue(restored.isMaterialized());
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package org.gammastrike.store.impl;
+
+import static org.gammastrike.store.impl.TestBeans.instance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.impl.TestBeans.RecordingContextual;
+import org.junit.Test;
+
+public class OrderedBeanStoreTest {
+
+	private static BeanIdentifier timeOrderedAt(long millis) {
+		return BeanIdentifier.buildFrom(millis << 16 | 0x7000L, 0x8000000000000000L);
+	}
+
+	@Test
+	public void expiresOnlyOldTimeOrderedIds() {
+		RecordingContextual contextual = new RecordingContextual();
+		OrderedBeanStore store = new OrderedBeanStore();
+		long now = System.currentTimeMillis();
+		BeanIdentifier old = timeOrderedAt(now - TimeUnit.HOURS.toMillis(2));
+		BeanIdentifier young = timeOrderedAt(now);
+		// a random id, whose bits sort before any current timestamp
+		BeanIdentifier random = BeanIdentifier.buildFrom(0x4000L, 0x8000000000000000L);
+		store.put(old, instance(contextual, "old"));
+		store.put(young, instance(contextual, "young"));
+		store.put(random, instance(contextual, "random"));
+
+		assertEquals(1, store.expireOlderThan(1, TimeUnit.HOURS));
+		assertEquals(Arrays.asList("old"), contextual.destroyed);
+		assertFalse(store.contains(old));
+		assertTrue(store.contains(young));
+		assertTrue(store.contains(random));
+	}
+
+	@Test
+	public void expiresNothingForAgesBeforeTheEpoch() {
+		OrderedBeanStore store = new OrderedBeanStore();
+		BeanIdentifier epoch = timeOrderedAt(0);
+		store.put(epoch, instance("epoch"));
+
+		assertEquals(0, store.expireOlderThan(Long.MAX_VALUE, TimeUnit.MILLISECONDS));
+		assertEquals(0, store.expireOlderThan(Long.MAX_VALUE, TimeUnit.DAYS));
+		assertTrue(store.contains(epoch));
+	}
+
+	@Test
+	public void expiresAllTimeOrderedIdsForAgeZero() {
+		OrderedBeanStore store = new OrderedBeanStore();
+		BeanIdentifier epoch = timeOrderedAt(0);
+		BeanIdentifier now = timeOrderedAt(System.currentTimeMillis() - 1);
+		store.put(epoch, instance("epoch"));
+		store.put(now, instance("now"));
+
+		assertEquals(2, store.expireOlderThan(0, TimeUnit.MILLISECONDS));
+		assertEquals(0, store.size());
+	}
+
+	@Test
+	public void keepsIdsAtTheEndOfTheTimestampRange() {
+		OrderedBeanStore store = new OrderedBeanStore();
+		BeanIdentifier last = timeOrderedAt((1L << 48) - 1);
+		store.put(last, instance("last"));
+
+		assertEquals(0, store.expireOlderThan(0, TimeUnit.MILLISECONDS));
+		assertTrue(store.contains(last));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsNegativeAge() {
+		new OrderedBeanStore().expireOlderThan(-1, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void indexFollowsConcurrentPutsOfOneId() throws Exception {
+		SimpleBeanStoreTest.assertIndexFollowsConcurrentPuts(new OrderedBeanStore());
+	}
+
+	@Test
+	public void iteratesTimeOrderedIdsFirst() {
+		OrderedBeanStore store = new OrderedBeanStore();
+		BeanIdentifier random = BeanIdentifier.buildFrom(0x4000L, 0x8000000000000000L);
+		BeanIdentifier later = timeOrderedAt(2000);
+		BeanIdentifier earlier = timeOrderedAt(1000);
+		store.put(random, instance("random"));
+		store.put(later, instance("later"));
+		store.put(earlier, instance("earlier"));
+
+		List<BeanIdentifier> ids = new ArrayList<>();
+		store.forEach(ids::add);
+		assertEquals(Arrays.asList(earlier, later, random), ids);
+	}
+
+	@Test
+	public void treatsUndefinedAsAbsent() {
+		OrderedBeanStore store = new OrderedBeanStore();
+		store.put(new BeanIdentifier(), instance("value"));
+
+		assertNull(store.get(BeanIdentifier.UNDEFINED));
+		assertFalse(store.contains(BeanIdentifier.UNDEFINED));
+		assertNull(store.remove(BeanIdentifier.UNDEFINED));
+		assertEquals(1, store.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsUndefinedOnPut() {
+		new OrderedBeanStore().put(BeanIdentifier.UNDEFINED, instance("value"));
+	}
+}
@@ -0,0 +1,168 @@
+package org.gammastrike.store.impl;
+
+import static org.gammastrike.store.impl.TestBeans.instance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import javax.enterprise.util.AnnotationLiteral;
+import javax.inject.Qualifier;
+
+import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.api.BeanInstance;
+import org.gammastrike.store.api.BeanStore;
+import org.gammastrike.store.api.BeanStoreListener;
+import org.junit.Test;
+
+public class PartitionedBeanStoreTest {
+
+	@Qualifier
+	@Retention(RetentionPolicy.RUNTIME)
+	public @interface Tenant {
+
+		String value();
+	}
+
+	@SuppressWarnings("serial")
+	private static final class TenantLiteral extends AnnotationLiteral<Tenant> implements Tenant {
+
+		private final String value;
+
+		TenantLiteral(String value) {
+			this.value = value;
+		}
+
+		@Override
+		public String value() {
+			return value;
+		}
+	}
+
+	private static final class RecordingListener implements BeanStoreListener {
+
+		private final List<String> events = new ArrayList<>();
+
+		@Override
+		public void added(BeanStore store, BeanIdentifier id) {
+			events.add("added " + id.asString());
+		}
+
+		@Override
+		public void cleared(BeanStore store) {
+			events.add("cleared");
+		}
+
+		@Override
+		public void removed(BeanStore store, BeanIdentifier id) {
+			events.add("removed " + id.asString());
+		}
+	}
+
+	private static final Tenant FIRST = new TenantLiteral("first");
+	private static final Tenant SECOND = new TenantLiteral("second");
+
+	private static List<BeanIdentifier> listOf(Iterable<BeanIdentifier> ids) {
+		List<BeanIdentifier> list = new ArrayList<>();
+		ids.forEach(list::add);
+		return list;
+	}
+
+	@Test
+	public void clearsSinglePartition() {
+		PartitionedBeanStore store = new PartitionedBeanStore(Tenant.class);
+		BeanIdentifier first = new BeanIdentifier(FIRST);
+		BeanIdentifier second = new BeanIdentifier(SECOND);
+		store.put(first, instance("first"));
+		store.put(second, instance("second"));
+		RecordingListener listener = new RecordingListener();
+		store.addListener(listener);
+
+		store.clear(FIRST);
+		assertFalse(store.contains(first));
+		assertTrue(store.contains(second));
+		assertEquals(0, store.size(FIRST));
+		assertEquals(1, store.size(SECOND));
+		assertEquals(Arrays.asList("removed " + first.asString()), listener.events);
+	}
+
+	@Test
+	public void forwardsPartitionEvents() {
+		PartitionedBeanStore store = new PartitionedBeanStore(Tenant.class);
+		RecordingListener listener = new RecordingListener();
+		store.addListener(listener);
+		BeanIdentifier id = new BeanIdentifier(FIRST);
+		store.put(id, instance("value"));
+		store.remove(id);
+		store.clear();
+
+		assertTrue(store.supportsListeners());
+		assertEquals(Arrays.asList("added " + id.asString(), "removed " + id.asString(), "cleared"), listener.events);
+	}
+
+	@Test
+	public void iteratesPartitions() {
+		PartitionedBeanStore store = new PartitionedBeanStore(Tenant.class);
+		BeanIdentifier first = new BeanIdentifier(FIRST);
+		BeanIdentifier second = new BeanIdentifier(SECOND);
+		BeanIdentifier unpartitioned = new BeanIdentifier();
+		store.put(first, instance("first"));
+		store.put(second, instance("second"));
+		store.put(unpartitioned, instance("unpartitioned"));
+
+		assertEquals(3, store.size());
+		assertEquals(new HashSet<>(Arrays.asList(first, second, unpartitioned)), new HashSet<>(listOf(store)));
+		assertEquals(Arrays.asList(first), listOf(store.identifiersIn(FIRST)));
+		assertEquals(Arrays.asList(unpartitioned), listOf(store.identifiersIn(null)));
+		assertEquals(new HashSet<>(Arrays.<Object> asList(FIRST, SECOND)), new HashSet<>(store.partitions()));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsOtherQualifiersAsPartition() {
+		new PartitionedBeanStore(Tenant.class).size(new AnnotationLiteral<Qualifier>() {
+
+			private static final long serialVersionUID = 1L;
+		});
+	}
+
+	@Test
+	public void reportsPartitionsWithoutListenerSupport() {
+		PartitionedBeanStore store = new PartitionedBeanStore(Tenant.class, () -> new SimpleBeanStore() {
+
+			@Override
+			public boolean supportsListeners() {
+				return false;
+			}
+		});
+
+		assertFalse(store.supportsListeners());
+	}
+
+	@Test
+	public void routesByPartitionQualifier() {
+		List<BeanStore> created = new ArrayList<>();
+		PartitionedBeanStore store = new PartitionedBeanStore(Tenant.class, () -> {
+			SimpleBeanStore partition = new SimpleBeanStore();
+			created.add(partition);
+			return partition;
+		});
+		BeanIdentifier first = new BeanIdentifier(FIRST);
+		BeanInstance<Object> instance = instance("first");
+		store.put(first, instance);
+
+		assertEquals(2, created.size());
+		assertSame(instance, created.get(1).get(first));
+		assertSame(instance, store.get(first));
+		assertNull(store.get(new BeanIdentifier(SECOND)));
+		assertEquals(1, store.size(FIRST));
+		assertEquals(0, store.size(null));
+	}
+}
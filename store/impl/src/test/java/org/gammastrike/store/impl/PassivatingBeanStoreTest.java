@@ -0,0 +1,180 @@
+package org.gammastrike.store.impl;
+
+import static org.gammastrike.store.impl.TestBeans.instance;
+import static org.gammastrike.store.impl.TestBeans.manager;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.api.BeanInstance;
+import org.gammastrike.store.impl.TestBeans.RecordingContext;
+import org.gammastrike.store.impl.TestBeans.RecordingContextual;
+import org.gammastrike.store.impl.TestBeans.Value;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PassivatingBeanStoreTest {
+
+	private static final class Unwritable implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		@SuppressWarnings("unused")
+		private final Object content = new Object();
+	}
+
+	private RecordingContextual contextual;
+	private Path file;
+	private PassivatingBeanStore store;
+
+	@Before
+	public void openStore() throws IOException {
+		contextual = new RecordingContextual();
+		file = Files.createTempFile("passivating", ".bin");
+		store = new PassivatingBeanStore(manager(contextual), file);
+	}
+
+	@After
+	public void closeStore() throws IOException {
+		store.close();
+		Files.deleteIfExists(file);
+	}
+
+	@Test(timeout = 30_000)
+	public void clearsWhileRehydrating() throws Exception {
+		AtomicBoolean running = new AtomicBoolean(true);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread rehydrating = new Thread(() -> {
+			try {
+				while (running.get()) {
+					BeanIdentifier id = new BeanIdentifier();
+					store.put(id, instance(contextual, new Value("cold")));
+					store.passivate(id);
+					BeanInstance<Object> instance = store.get(id);
+					if (instance != null) {
+						assertEquals(new Value("cold"), instance.getInstance());
+					}
+				}
+			} catch (Throwable e) {
+				failure.set(e);
+			}
+		});
+		rehydrating.start();
+		for (int i = 0; i < 2_000; i++) {
+			store.clear();
+		}
+		running.set(false);
+		rehydrating.join();
+
+		assertNull(failure.get());
+	}
+
+	@Test(timeout = 30_000)
+	public void countsEntriesOnceWhileMovingBetweenTiers() throws Exception {
+		BeanIdentifier id = new BeanIdentifier();
+		store.put(id, instance(contextual, new Value("moving")));
+		AtomicBoolean running = new AtomicBoolean(true);
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread moving = new Thread(() -> {
+			try {
+				while (running.get()) {
+					store.passivate(id);
+					store.get(id);
+				}
+			} catch (Throwable e) {
+				failure.set(e);
+			}
+		});
+		moving.start();
+		for (int i = 0; i < 20_000; i++) {
+			assertEquals(1, store.size());
+			List<BeanIdentifier> ids = new ArrayList<>();
+			store.forEach(ids::add);
+			assertEquals(Arrays.asList(id), ids);
+		}
+		running.set(false);
+		moving.join();
+
+		assertNull(failure.get());
+	}
+
+	@Test
+	public void releasesContextOnPassivation() {
+		BeanIdentifier id = new BeanIdentifier();
+		BeanInstance<Object> instance = instance(contextual, new Value("cold"));
+		store.put(id, instance);
+
+		assertTrue(store.passivate(id));
+		assertEquals(1, ((RecordingContext) instance.getCreationalContext()).releases.get());
+		assertEquals(1, store.getColdSize());
+		assertEquals(0, store.getHotSize());
+
+		BeanInstance<Object> rehydrated = store.get(id);
+		assertEquals(new Value("cold"), rehydrated.getInstance());
+		assertNotSame(instance.getCreationalContext(), rehydrated.getCreationalContext());
+		assertEquals(1, store.getHotSize());
+		assertEquals(0, store.getColdSize());
+	}
+
+	@Test
+	public void skipsUnwritableInstancesWhenPassivatingIdle() {
+		BeanIdentifier unwritable = new BeanIdentifier();
+		store.put(unwritable, instance(contextual, new Unwritable()));
+		BeanIdentifier unserializable = new BeanIdentifier();
+		store.put(unserializable, instance(contextual, new Object()));
+		List<BeanIdentifier> writable = Arrays.asList(new BeanIdentifier(), new BeanIdentifier());
+		for (BeanIdentifier id : writable) {
+			store.put(id, instance(contextual, new Value(id.asString())));
+		}
+
+		assertEquals(2, store.passivateIdle(0, TimeUnit.NANOSECONDS));
+		assertEquals(2, store.getHotSize());
+		assertEquals(2, store.getColdSize());
+		for (BeanIdentifier id : writable) {
+			assertEquals(new Value(id.asString()), store.get(id).getInstance());
+		}
+	}
+
+	@Test
+	public void keepsContentsWhenTheFileGrows() {
+		char[] padding = new char[64 * 1024];
+		Arrays.fill(padding, 'x');
+		List<BeanIdentifier> ids = new ArrayList<>();
+		for (int i = 0; i < 40; i++) {
+			BeanIdentifier id = new BeanIdentifier();
+			store.put(id, instance(contextual, new Value(i + new String(padding))));
+			assertTrue(store.passivate(id));
+			ids.add(id);
+		}
+
+		for (int i = 0; i < ids.size(); i++) {
+			assertEquals(new Value(i + new String(padding)), store.get(ids.get(i)).getInstance());
+		}
+	}
+
+	@Test
+	public void removesColdInstances() {
+		BeanIdentifier id = new BeanIdentifier();
+		store.put(id, instance(contextual, new Value("cold")));
+		store.passivate(id);
+
+		assertEquals(new Value("cold"), store.remove(id).getInstance());
+		assertFalse(store.contains(id));
+		assertNull(store.get(id));
+	}
+}
@@ -0,0 +1,158 @@
+package org.gammastrike.store.impl;
+
+import static org.gammastrike.store.impl.TestBeans.manager;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.Reference;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.api.BeanInstance;
+import org.gammastrike.store.api.BeanStore;
+import org.gammastrike.store.api.BeanStoreListener;
+import org.gammastrike.store.impl.ReferenceBeanStore.Strength;
+import org.gammastrike.store.impl.TestBeans.RecordingContext;
+import org.gammastrike.store.impl.TestBeans.RecordingContextual;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReferenceBeanStoreTest {
+
+	private static final class ExpiryLatch implements BeanStoreListener {
+
+		private final CountDownLatch expired = new CountDownLatch(1);
+
+		@Override
+		public void added(BeanStore store, BeanIdentifier id) {
+		}
+
+		@Override
+		public void cleared(BeanStore store) {
+		}
+
+		@Override
+		public void expired(BeanStore store, BeanIdentifier id) {
+			expired.countDown();
+		}
+
+		@Override
+		public void removed(BeanStore store, BeanIdentifier id) {
+		}
+	}
+
+	private RecordingContextual contextual;
+	private ReferenceBeanStore store;
+
+	/**
+	 * Clears and enqueues the reference of the given id, as the garbage collector would, and waits for the cleaner to remove its entry.
+	 */
+	private void collect(BeanIdentifier id) throws InterruptedException {
+		ExpiryLatch latch = new ExpiryLatch();
+		store.addListener(latch);
+		Reference<?> reference = store.referenceOf(id);
+		reference.clear();
+		assertTrue(reference.enqueue());
+		assertTrue(latch.expired.await(10, TimeUnit.SECONDS));
+		store.removeListener(latch);
+	}
+
+	@Before
+	public void openStore() {
+		contextual = new RecordingContextual();
+		store = new ReferenceBeanStore(Strength.WEAK);
+	}
+
+	@After
+	public void closeStore() {
+		store.close();
+	}
+
+	@Test
+	public void clearDestroysReachableAndReleasesCollectedInstances() {
+		Object value = new Object();
+		BeanInstance<Object> reachable = TestBeans.instance(contextual, value);
+		BeanIdentifier reachableId = new BeanIdentifier();
+		store.put(reachableId, reachable);
+		BeanInstance<Object> collected = TestBeans.instance(contextual, new Object());
+		BeanIdentifier collectedId = new BeanIdentifier();
+		store.put(collectedId, collected);
+		store.referenceOf(collectedId).clear();
+
+		store.clear();
+
+		assertEquals(0, store.size());
+		assertEquals(Arrays.asList(value), contextual.destroyed);
+		assertEquals(1, ((RecordingContext) reachable.getCreationalContext()).releases.get());
+		assertEquals(1, ((RecordingContext) collected.getCreationalContext()).releases.get());
+		assertEquals(1, store.getCollectedCount());
+	}
+
+	@Test
+	public void holdsLazyInstancesUntilMaterialized() throws InterruptedException {
+		BeanIdentifier id = new BeanIdentifier();
+		BeanInstance<Object> lazy = LazyBeanInstance.create(manager(contextual), contextual);
+		store.put(id, lazy);
+		assertFalse(lazy.isMaterialized());
+		assertNull(store.referenceOf(id));
+
+		BeanInstance<Object> pending = store.get(id);
+		assertNotNull(pending);
+		assertFalse(pending.isMaterialized());
+		Object value = pending.getInstance();
+		assertTrue(store.get(id).isMaterialized());
+		assertNotNull(store.referenceOf(id));
+
+		collect(id);
+		assertNull(store.get(id));
+		assertEquals(1, store.getCollectedCount());
+		// keeps the garbage collector from enqueueing the reference first
+		assertNotNull(value);
+	}
+
+	@Test
+	public void releasesContextsOnce() throws InterruptedException {
+		BeanIdentifier collected = new BeanIdentifier();
+		Object value = new Object();
+		BeanInstance<Object> instance = TestBeans.instance(contextual, value);
+		RecordingContext collectedContext = (RecordingContext) instance.getCreationalContext();
+		store.put(collected, instance);
+		BeanIdentifier removed = new BeanIdentifier();
+		instance = TestBeans.instance(contextual, new Object());
+		RecordingContext removedContext = (RecordingContext) instance.getCreationalContext();
+		store.put(removed, instance);
+
+		BeanInstances.destroy(store.remove(removed));
+		collect(collected);
+		assertNull(store.get(collected));
+		assertNull(store.remove(collected));
+
+		assertEquals(1, collectedContext.releases.get());
+		assertEquals(1, removedContext.releases.get());
+		assertEquals(1, store.getCollectedCount());
+		assertNotNull(value);
+	}
+
+	@Test
+	public void returnsStrongInstancesUnchanged() {
+		ReferenceBeanStore strong = new ReferenceBeanStore(Strength.SOFT, instance -> false);
+		try {
+			BeanIdentifier id = new BeanIdentifier();
+			BeanInstance<Object> instance = TestBeans.instance(contextual, "value");
+			strong.put(id, instance);
+			assertNull(strong.referenceOf(id));
+			assertSame(instance, strong.get(id));
+			assertSame(instance, strong.remove(id));
+			assertFalse(strong.contains(id));
+		} finally {
+			strong.close();
+		}
+	}
+}
@@ -0,0 +1,247 @@
+package org.gammastrike.store.impl;
+
+import static org.gammastrike.store.impl.TestBeans.instance;
+import static org.gammastrike.store.impl.TestBeans.manager;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import javax.enterprise.inject.spi.BeanManager;
+
+import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.impl.TestBeans.RecordingContextual;
+import org.gammastrike.store.impl.TestBeans.Value;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReplicatedBeanStoreTest {
+
+	/**
+	 * Fails the given number of batches before passing them on.
+	 */
+	private static final class FailingTransport implements ReplicationTransport {
+
+		private final ReplicationTransport delegate;
+		private final AtomicInteger failures;
+
+		FailingTransport(ReplicationTransport delegate, int failures) {
+			this.delegate = delegate;
+			this.failures = new AtomicInteger(failures);
+		}
+
+		@Override
+		public void receive(Consumer<byte[]> receiver) {
+			delegate.receive(receiver);
+		}
+
+		@Override
+		public CompletableFuture<Void> send(byte[] batch) {
+			if (failures.getAndDecrement() > 0) {
+				CompletableFuture<Void> failed = new CompletableFuture<>();
+				failed.completeExceptionally(new IllegalStateException("Peer unreachable"));
+				return failed;
+			}
+			return delegate.send(batch);
+		}
+	}
+
+	/**
+	 * Keeps the sent batches and the receiver instead of connecting to peers.
+	 */
+	private static final class CapturingTransport implements ReplicationTransport {
+
+		private final List<byte[]> sent = new ArrayList<>();
+		private Consumer<byte[]> receiver;
+
+		@Override
+		public void receive(Consumer<byte[]> receiver) {
+			this.receiver = receiver;
+		}
+
+		@Override
+		public CompletableFuture<Void> send(byte[] batch) {
+			sent.add(batch);
+			return CompletableFuture.completedFuture(null);
+		}
+	}
+
+	private RecordingContextual contextual;
+	private SimpleBeanStore local;
+	private BeanManager manager;
+	private SimpleBeanStore remote;
+	private LoopbackReplicationTransport localTransport;
+	private ReplicatedBeanStore remoteStore;
+
+	@Before
+	public void connectStores() {
+		contextual = new RecordingContextual();
+		manager = manager(contextual);
+		local = new SimpleBeanStore();
+		remote = new SimpleBeanStore();
+		localTransport = new LoopbackReplicationTransport(Runnable::run);
+		LoopbackReplicationTransport remoteTransport = new LoopbackReplicationTransport(Runnable::run);
+		localTransport.connect(remoteTransport);
+		remoteStore = new ReplicatedBeanStore(remote, manager, remoteTransport, 100, 1, TimeUnit.HOURS);
+	}
+
+	@After
+	public void closeStores() {
+		remoteStore.close();
+	}
+
+	private ReplicatedBeanStore node(ReplicationTransport transport, long nodeId, AtomicLong clock) {
+		return new ReplicatedBeanStore(new SimpleBeanStore(), manager, transport, 100, 1, TimeUnit.HOURS, nodeId, clock::get);
+	}
+
+	@Test
+	public void concurrentWritersConverge() {
+		LoopbackReplicationTransport firstTransport = new LoopbackReplicationTransport(Runnable::run);
+		LoopbackReplicationTransport secondTransport = new LoopbackReplicationTransport(Runnable::run);
+		firstTransport.connect(secondTransport);
+		AtomicLong clock = new AtomicLong(1000);
+		try (ReplicatedBeanStore first = node(firstTransport, 1, clock); ReplicatedBeanStore second = node(secondTransport, 2, clock)) {
+			BeanIdentifier written = new BeanIdentifier();
+			BeanIdentifier removed = new BeanIdentifier();
+			first.put(removed, instance(contextual, new Value("initial")));
+			first.flush().join();
+
+			// same time on both nodes, the higher node id wins
+			first.put(written, instance(contextual, new Value("first")));
+			second.put(written, instance(contextual, new Value("second")));
+			// the later removal wins over the earlier put
+			first.put(removed, instance(contextual, new Value("updated")));
+			clock.incrementAndGet();
+			second.remove(removed);
+			first.flush().join();
+			second.flush().join();
+
+			for (ReplicatedBeanStore store : Arrays.asList(first, second)) {
+				assertEquals(new Value("second"), store.get(written).getInstance());
+				assertNull(store.get(removed));
+			}
+			assertEquals(2, second.getStaleChangeCount());
+			assertEquals(0, first.getStaleChangeCount());
+		}
+	}
+
+	@Test
+	public void localWriteAfterReceivingWinsOverLaggingClock() {
+		LoopbackReplicationTransport firstTransport = new LoopbackReplicationTransport(Runnable::run);
+		LoopbackReplicationTransport secondTransport = new LoopbackReplicationTransport(Runnable::run);
+		firstTransport.connect(secondTransport);
+		try (ReplicatedBeanStore first = node(firstTransport, 1, new AtomicLong(5000));
+				ReplicatedBeanStore second = node(secondTransport, 2, new AtomicLong(1000))) {
+			BeanIdentifier id = new BeanIdentifier();
+			first.put(id, instance(contextual, new Value("first")));
+			first.flush().join();
+			assertEquals(new Value("first"), second.get(id).getInstance());
+
+			second.put(id, instance(contextual, new Value("second")));
+			second.flush().join();
+			assertEquals(new Value("second"), first.get(id).getInstance());
+		}
+	}
+
+	@Test
+	public void rejectsMalformedBatchAsAWhole() {
+		CapturingTransport sender = new CapturingTransport();
+		CapturingTransport receiver = new CapturingTransport();
+		try (ReplicatedBeanStore source = node(sender, 1, new AtomicLong(1000)); ReplicatedBeanStore target = node(receiver, 2, new AtomicLong(1000))) {
+			source.put(new BeanIdentifier(), instance(contextual, new Value("valid")));
+			source.flush().join();
+			byte[] valid = sender.sent.get(0);
+			// announces a second change, that has an unknown operation
+			byte[] malformed = Arrays.copyOf(valid, valid.length + 1);
+			ByteBuffer.wrap(malformed).putInt(2);
+			malformed[valid.length] = 99;
+
+			try {
+				receiver.receiver.accept(malformed);
+				fail("malformed batch applied");
+			} catch (IllegalStateException e) {
+				// expected
+			}
+			assertEquals(0, target.size());
+			assertEquals(0, target.getReceivedChangeCount());
+
+			receiver.receiver.accept(valid);
+			assertEquals(1, target.size());
+		}
+	}
+
+	@Test
+	public void replicatesChangesInOrder() {
+		try (ReplicatedBeanStore store = new ReplicatedBeanStore(local, manager, localTransport, 100, 1, TimeUnit.HOURS)) {
+			BeanIdentifier kept = new BeanIdentifier();
+			BeanIdentifier removed = new BeanIdentifier();
+			store.put(removed, instance(contextual, new Value("removed")));
+			store.flush().join();
+			assertTrue(remote.contains(removed));
+
+			store.clear();
+			store.put(kept, instance(contextual, new Value("first")));
+			store.put(kept, instance(contextual, new Value("kept")));
+			store.flush().join();
+
+			assertEquals(1, remote.size());
+			assertEquals(new Value("kept"), remote.get(kept).getInstance());
+			assertEquals(3, remoteStore.getReceivedChangeCount());
+		}
+	}
+
+	@Test
+	public void requeuesFailedBatches() {
+		try (ReplicatedBeanStore store = new ReplicatedBeanStore(local, manager, new FailingTransport(localTransport, 1), 100, 1, TimeUnit.HOURS)) {
+			BeanIdentifier id = new BeanIdentifier();
+			store.put(id, instance(contextual, new Value("first")));
+			try {
+				store.flush().join();
+			} catch (CompletionException e) {
+				// expected
+			}
+			assertEquals(1, store.getFailedBatchCount());
+			assertFalse(remote.contains(id));
+
+			store.put(id, instance(contextual, new Value("second")));
+			BeanIdentifier other = new BeanIdentifier();
+			store.put(other, instance(contextual, new Value("other")));
+			store.flush().join();
+
+			assertEquals(new Value("second"), remote.get(id).getInstance());
+			assertEquals(new Value("other"), remote.get(other).getInstance());
+		}
+	}
+
+	@Test
+	public void resendsLocalStateAfterAFailedClear() {
+		try (ReplicatedBeanStore store = new ReplicatedBeanStore(local, manager, new FailingTransport(localTransport, 1), 100, 1, TimeUnit.HOURS)) {
+			remote.put(new BeanIdentifier(), instance(contextual, new Value("stale")));
+			store.clear();
+			BeanIdentifier id = new BeanIdentifier();
+			store.put(id, instance(contextual, new Value("current")));
+			try {
+				store.flush().join();
+			} catch (CompletionException e) {
+				// expected
+			}
+
+			store.flush().join();
+			assertEquals(1, remote.size());
+			assertEquals(new Value("current"), remote.get(id).getInstance());
+		}
+	}
+}
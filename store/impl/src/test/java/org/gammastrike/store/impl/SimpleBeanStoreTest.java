@@ -0,0 +1,75 @@
+package org.gammastrike.store.impl;
+
+import static org.gammastrike.store.impl.TestBeans.instance;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+
+import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.api.BeanStore;
+import org.gammastrike.store.impl.TestBeans.RecordingContextual;
+import org.junit.Test;
+
+public class SimpleBeanStoreTest {
+
+	static final int ROUNDS = 20_000;
+	static final int WRITERS = 4;
+
+	static <T> List<T> listOf(Iterable<T> iterable) {
+		List<T> list = new ArrayList<>();
+		iterable.forEach(list::add);
+		return list;
+	}
+
+	/**
+	 * Several threads keep replacing the instance of one id by instances of different bean types. Afterwards the index must list the id under the type of
+	 * the stored instance only.
+	 */
+	static void assertIndexFollowsConcurrentPuts(BeanStore store) throws Exception {
+		BeanIdentifier id = new BeanIdentifier();
+		RecordingContextual strings = new RecordingContextual("strings", String.class);
+		RecordingContextual numbers = new RecordingContextual("numbers", Integer.class);
+		CyclicBarrier start = new CyclicBarrier(WRITERS);
+		List<Thread> writers = new ArrayList<>();
+		for (int w = 0; w < WRITERS; w++) {
+			boolean writesStrings = w % 2 == 0;
+			Thread writer = new Thread(() -> {
+				try {
+					start.await();
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				}
+				for (int i = 0; i < ROUNDS; i++) {
+					store.put(id, writesStrings ? instance(strings, "value") : instance(numbers, i));
+				}
+			});
+			writer.start();
+			writers.add(writer);
+		}
+		for (Thread writer : writers) {
+			writer.join();
+		}
+
+		boolean storedString = store.get(id).getInstance() instanceof String;
+		assertEquals(storedString ? Collections.singletonList(id) : Collections.emptyList(), listOf(store.identifiersOf(String.class)));
+		assertEquals(storedString ? Collections.emptyList() : Collections.singletonList(id), listOf(store.identifiersOf(Integer.class)));
+	}
+
+	@Test
+	public void indexFollowsConcurrentPutsOfOneId() throws Exception {
+		assertIndexFollowsConcurrentPuts(new SimpleBeanStore());
+	}
+
+	@Test
+	public void clearEmptiesIndex() {
+		SimpleBeanStore store = new SimpleBeanStore();
+		store.put(new BeanIdentifier(), instance(new RecordingContextual("strings", String.class), "value"));
+		store.clear();
+
+		assertEquals(0, store.size());
+		assertEquals(Collections.emptyList(), listOf(store.identifiersOf(String.class)));
+	}
+}
@@ -0,0 +1,184 @@
+package org.gammastrike.store.impl;
+
+import java.io.Serializable;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.enterprise.context.Dependent;
+import javax.enterprise.context.spi.CreationalContext;
+import javax.enterprise.inject.spi.Bean;
+import javax.enterprise.inject.spi.BeanManager;
+import javax.enterprise.inject.spi.InjectionPoint;
+import javax.enterprise.inject.spi.PassivationCapable;
+
+import org.gammastrike.store.api.BeanInstance;
+
+/**
+ * Contextuals and creational contexts for store tests, that record their destructions and releases, and a bean manager, that only knows about the
+ * passivation ids of the given contextuals.
+ */
+final class TestBeans {
+
+	static final class RecordingContext implements CreationalContext<Object> {
+
+		final AtomicInteger releases = new AtomicInteger();
+
+		@Override
+		public void push(Object incompleteInstance) {
+		}
+
+		@Override
+		public void release() {
+			releases.incrementAndGet();
+		}
+	}
+
+	static final class RecordingContextual implements Bean<Object>, PassivationCapable, Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		final transient List<Object> destroyed = new CopyOnWriteArrayList<>();
+		private final String id;
+		private final Set<Type> types;
+
+		RecordingContextual() {
+			this("recording");
+		}
+
+		RecordingContextual(String id) {
+			this(id, Object.class);
+		}
+
+		RecordingContextual(String id, Type... types) {
+			this.id = id;
+			this.types = new HashSet<>(Arrays.asList(types));
+		}
+
+		@Override
+		public Object create(CreationalContext<Object> creationalContext) {
+			return new Value("created");
+		}
+
+		@Override
+		public void destroy(Object instance, CreationalContext<Object> creationalContext) {
+			destroyed.add(instance);
+			creationalContext.release();
+		}
+
+		@Override
+		public Class<?> getBeanClass() {
+			return Value.class;
+		}
+
+		@Override
+		public String getId() {
+			return id;
+		}
+
+		@Override
+		public Set<InjectionPoint> getInjectionPoints() {
+			return Collections.emptySet();
+		}
+
+		@Override
+		public String getName() {
+			return null;
+		}
+
+		@Override
+		public Set<Annotation> getQualifiers() {
+			return Collections.emptySet();
+		}
+
+		@Override
+		public Class<? extends Annotation> getScope() {
+			return Dependent.class;
+		}
+
+		@Override
+		public Set<Class<? extends Annotation>> getStereotypes() {
+			return Collections.emptySet();
+		}
+
+		@Override
+		public Set<Type> getTypes() {
+			return types;
+		}
+
+		@Override
+		public boolean isAlternative() {
+			return false;
+		}
+
+		@Override
+		public boolean isNullable() {
+			return false;
+		}
+	}
+
+	static final class Value implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		final String content;
+
+		Value(String content) {
+			this.content = content;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Value && ((Value) obj).content.equals(content);
+		}
+
+		@Override
+		public int hashCode() {
+			return content.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return content;
+		}
+	}
+
+	static BeanInstance<Object> instance(Object value) {
+		return instance(new RecordingContextual(), value);
+	}
+
+	static BeanInstance<Object> instance(RecordingContextual contextual, Object value) {
+		return new BeanInstanceImpl<>(contextual, value, new RecordingContext());
+	}
+
+	static BeanManager manager(RecordingContextual... contextuals) {
+		Map<String, RecordingContextual> passivationCapables = new HashMap<>();
+		for (RecordingContextual contextual : contextuals) {
+			passivationCapables.put(contextual.getId(), contextual);
+		}
+		return (BeanManager) Proxy.newProxyInstance(TestBeans.class.getClassLoader(), new Class<?>[] { BeanManager.class }, (proxy, method, args) -> {
+			switch (method.getName()) {
+			case "getPassivationCapableBean":
+				return passivationCapables.get(args[0]);
+			case "createCreationalContext":
+				return new RecordingContext();
+			case "getReference":
+				return ((RecordingContextual) args[0]).create(null);
+			default:
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+
+	private TestBeans() {
+	}
+}
@@ -0,0 +1,105 @@
+package org.gammastrike.store.impl;
+
+import static org.gammastrike.store.impl.TestBeans.instance;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.enterprise.inject.Default;
+import javax.enterprise.util.AnnotationLiteral;
+
+import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.api.BeanInstance;
+import org.gammastrike.store.api.BeanStore;
+import org.junit.Test;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the retained heap per entry of {@link UuidKeyedBeanStore} and {@link SimpleBeanStore} at 1M entries, reported as the
+ * <code>bytesPerEntry</code> counter next to the time it takes to fill the store. All entries share one {@link BeanInstance}, so only the stores' own
+ * structures are measured. JMH sums the counter over iterations, so there is a single measurement iteration. Not picked up by the default test run;
+ * start it with <code>-Dtest=UuidKeyedBeanStoreBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 1)
+@Fork(1)
+public class UuidKeyedBeanStoreBenchmark {
+
+	@SuppressWarnings("serial")
+	private static final class DefaultLiteral extends AnnotationLiteral<Default> implements Default {
+	}
+
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Footprint {
+
+		public double bytesPerEntry;
+	}
+
+	private static final int ENTRIES = 1_000_000;
+
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+		}
+		return used;
+	}
+
+	@Param({ "simple", "uuid-keyed" })
+	public String implementation;
+
+	private final BeanInstance<Object> instance = instance("shared");
+	private final DefaultLiteral qualifier = new DefaultLiteral();
+	private long before;
+	private BeanStore store;
+
+	@Benchmark
+	public BeanStore fill() {
+		store = "simple".equals(implementation) ? new SimpleBeanStore() : new UuidKeyedBeanStore();
+		for (int i = 0; i < ENTRIES; i++) {
+			store.put(BeanIdentifier.timeOrdered(qualifier), instance);
+		}
+		return store;
+	}
+
+	@Test
+	public void run() throws RunnerException {
+		new Runner(new OptionsBuilder().include(UuidKeyedBeanStoreBenchmark.class.getName()).build()).run();
+	}
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		store = null;
+		before = usedMemory();
+	}
+
+	@TearDown(Level.Iteration)
+	public void tearDown(Footprint footprint) {
+		footprint.bytesPerEntry = (double) (usedMemory() - before) / ENTRIES;
+		if (store.size() != ENTRIES) {
+			throw new IllegalStateException("Lost entries");
+		}
+		store = null;
+	}
+}
@@ -0,0 +1,114 @@
+package org.gammastrike.store.impl;
+
+import static org.gammastrike.store.impl.TestBeans.instance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.enterprise.inject.Default;
+import javax.enterprise.util.AnnotationLiteral;
+
+import org.gammastrike.store.api.BeanIdentifier;
+import org.gammastrike.store.api.BeanInstance;
+import org.junit.Test;
+
+public class UuidKeyedBeanStoreTest {
+
+	@SuppressWarnings("serial")
+	private static final class DefaultLiteral extends AnnotationLiteral<Default> implements Default {
+	}
+
+	@Test
+	public void storesAcrossResizes() {
+		UuidKeyedBeanStore store = new UuidKeyedBeanStore();
+		List<BeanIdentifier> ids = new ArrayList<>();
+		List<BeanInstance<Object>> instances = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			BeanIdentifier id = new BeanIdentifier(new DefaultLiteral());
+			BeanInstance<Object> instance = instance(i);
+			store.put(id, instance);
+			ids.add(id);
+			instances.add(instance);
+		}
+
+		assertEquals(1000, store.size());
+		for (int i = 0; i < ids.size(); i++) {
+			assertSame(instances.get(i), store.get(ids.get(i)));
+			assertSame(instances.get(i), store.get(BeanIdentifier.buildFrom(ids.get(i).asString())));
+		}
+
+		Set<BeanIdentifier> iterated = new HashSet<>();
+		for (BeanIdentifier id : store) {
+			assertEquals(1, id.getQualifiers().length);
+			iterated.add(id);
+		}
+		assertEquals(new HashSet<>(ids), iterated);
+	}
+
+	@Test
+	public void removesWithoutBreakingProbeChains() {
+		UuidKeyedBeanStore store = new UuidKeyedBeanStore();
+		List<BeanIdentifier> ids = new ArrayList<>();
+		for (int i = 0; i < 40; i++) {
+			BeanIdentifier id = new BeanIdentifier();
+			store.put(id, instance(i));
+			ids.add(id);
+		}
+
+		for (int i = 0; i < ids.size(); i += 2) {
+			assertEquals(i, store.remove(ids.get(i)).getInstance());
+		}
+		assertEquals(20, store.size());
+		for (int i = 0; i < ids.size(); i++) {
+			assertEquals(i % 2 == 1, store.contains(ids.get(i)));
+		}
+		assertNull(store.remove(ids.get(0)));
+	}
+
+	@Test
+	public void replacesExistingEntries() {
+		UuidKeyedBeanStore store = new UuidKeyedBeanStore();
+		BeanIdentifier id = new BeanIdentifier();
+		store.put(id, instance("first"));
+		BeanInstance<Object> second = instance("second");
+		store.put(id, second);
+
+		assertEquals(1, store.size());
+		assertSame(second, store.get(id));
+	}
+
+	@Test
+	public void treatsUndefinedAsAbsent() {
+		UuidKeyedBeanStore store = new UuidKeyedBeanStore();
+		store.put(new BeanIdentifier(), instance("value"));
+
+		assertNull(store.get(BeanIdentifier.UNDEFINED));
+		assertFalse(store.contains(BeanIdentifier.UNDEFINED));
+		assertNull(store.remove(BeanIdentifier.UNDEFINED));
+		assertEquals(1, store.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsUndefinedOnPut() {
+		new UuidKeyedBeanStore().put(BeanIdentifier.UNDEFINED, instance("value"));
+	}
+
+	@Test
+	public void clearsAllEntries() {
+		UuidKeyedBeanStore store = new UuidKeyedBeanStore();
+		BeanIdentifier id = new BeanIdentifier();
+		store.put(id, instance("value"));
+		store.clear();
+
+		assertEquals(0, store.size());
+		assertFalse(store.contains(id));
+		assertTrue(store.isAvailable());
+	}
+}
@@ -0,0 +1,151 @@
+package org.gammastrike.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Invokes reflected methods through cached {@link MethodHandle}s, that are adapted to the generic type <code>(Object, Object[])Object</code>. Compared to
+ * {@link Method#invoke(Object, Object...)} this avoids repeated access checks and the wrapping of thrown exceptions into {@link InvocationTargetException}s.
+ * <p>
+ * Handles are only used from Java 18 on, where {@link Method#invoke(Object, Object...)} is itself built on method handles and becomes slow for call sites
+ * that see many different methods. Before that, reflection compiles its own accessors that are as fast as an uncached handle, so the methods are
+ * invoked reflectively and only the exceptions are unwrapped.
+ * <p>
+ * Targets and arguments are checked like {@link Method#invoke(Object, Object...)} does, so a mismatch raises an {@link IllegalArgumentException}. Access
+ * is never widened: methods that are not public members of public types are invoked reflectively, so they honour the caller's
+ * {@link Method#setAccessible(boolean)} and otherwise fail with the same {@link IllegalAccessException}. Handles are cached per declaring class and do
+ * not keep its class loader reachable.
+ */
+public final class MethodDispatcher {
+
+	private static final class Dispatch {
+
+		private final Class<?>[] argumentTypes;
+		private final Class<?> declaringClass;
+		private final MethodHandle handle;
+		private final Class<?>[] parameterTypes;
+		private final boolean statical;
+
+		Dispatch(Method method, MethodHandle handle) {
+			this.declaringClass = method.getDeclaringClass();
+			this.handle = handle;
+			this.parameterTypes = method.getParameterTypes();
+			this.argumentTypes = new Class<?>[parameterTypes.length];
+			this.statical = Modifier.isStatic(method.getModifiers());
+			for (int i = 0; i < parameterTypes.length; i++) {
+				argumentTypes[i] = MethodType.methodType(parameterTypes[i]).wrap().returnType();
+			}
+		}
+
+		Object[] check(Object target, Object[] args) {
+			if (!statical) {
+				if (target == null) {
+					throw new NullPointerException();
+				}
+				if (!declaringClass.isInstance(target)) {
+					throw new IllegalArgumentException("object is not an instance of declaring class");
+				}
+			}
+			Object[] arguments = args != null ? args : NO_ARGS;
+			if (arguments.length != parameterTypes.length) {
+				throw new IllegalArgumentException("wrong number of arguments");
+			}
+			for (int i = 0; i < arguments.length; i++) {
+				Object argument = arguments[i];
+				if (argument == null ? parameterTypes[i].isPrimitive() : !argumentTypes[i].isInstance(argument)) {
+					throw new IllegalArgumentException("argument type mismatch");
+				}
+			}
+			return arguments;
+		}
+	}
+
+	private static final boolean DISPATCH_HANDLES = javaVersion() >= 18;
+	private static final MethodType DISPATCH_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+	private static final Object[] NO_ARGS = new Object[0];
+	private static final ClassValue<ConcurrentMap<Method, Dispatch>> DISPATCHES = new ClassValue<ConcurrentMap<Method, Dispatch>>() {
+
+		@Override
+		protected ConcurrentMap<Method, Dispatch> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<>();
+		}
+	};
+
+	private static Dispatch adapt(Method method) {
+		return new Dispatch(method, adaptHandle(method));
+	}
+
+	/**
+	 * Looks the method up by name and type rather than unreflecting it, so the handle only exists if the method is accessible regardless of the
+	 * accessible flag of this particular {@link Method} instance. Returns null if it is not, in which case every call is invoked reflectively.
+	 */
+	private static MethodHandle adaptHandle(Method method) {
+		try {
+			Class<?> declaringClass = method.getDeclaringClass();
+			MethodType type = MethodType.methodType(method.getReturnType(), method.getParameterTypes());
+			MethodHandle handle;
+			if (Modifier.isStatic(method.getModifiers())) {
+				handle = MethodHandles.dropArguments(MethodHandles.lookup().findStatic(declaringClass, method.getName(), type), 0, Object.class);
+			} else {
+				handle = MethodHandles.lookup().findVirtual(declaringClass, method.getName(), type);
+			}
+			int parameterCount = method.getParameterCount();
+			return handle.asFixedArity().asType(MethodType.genericMethodType(parameterCount + 1)).asSpreader(Object[].class, parameterCount)
+					.asType(DISPATCH_TYPE);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return null;
+		}
+	}
+
+	private static int javaVersion() {
+		String version = System.getProperty("java.specification.version", "1.8");
+		try {
+			return Integer.parseInt(version.startsWith("1.") ? version.substring(2) : version);
+		} catch (NumberFormatException e) {
+			return 8;
+		}
+	}
+
+	/**
+	 * Invokes the given method on the given target.
+	 *
+	 * @param method the method to invoke
+	 * @param target the target instance, ignored for static methods
+	 * @param args the method arguments, may be null for methods without parameters
+	 * @return the method's result, null for void methods
+	 * @throws IllegalArgumentException if the target or the arguments do not match the method
+	 * @throws Throwable anything thrown by the invoked method, unwrapped
+	 */
+	public static Object invoke(Method method, Object target, Object[] args) throws Throwable {
+		if (!DISPATCH_HANDLES) {
+			return invokeReflectively(method, target, args);
+		}
+		ConcurrentMap<Method, Dispatch> dispatches = DISPATCHES.get(method.getDeclaringClass());
+		Dispatch dispatch = dispatches.get(method);
+		if (dispatch == null) {
+			dispatch = dispatches.computeIfAbsent(method, MethodDispatcher::adapt);
+		}
+		if (dispatch.handle == null) {
+			return invokeReflectively(method, target, args);
+		}
+		Object[] arguments = dispatch.check(target, args);
+		return (Object) dispatch.handle.invokeExact(target, arguments);
+	}
+
+	private static Object invokeReflectively(Method method, Object target, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	private MethodDispatcher() {
+	}
+}
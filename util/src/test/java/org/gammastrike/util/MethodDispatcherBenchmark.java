@@ -0,0 +1,128 @@
+package org.gammastrike.util;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares {@link MethodDispatcher} against {@link Method#invoke(Object, Object...)} on a megamorphic call site: several methods of several
+ * implementations are dispatched through the same call. Not picked up by the default test run; start it with <code>-Dtest=MethodDispatcherBenchmark</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MethodDispatcherBenchmark {
+
+	public interface Operation {
+
+		int apply(int value);
+
+		int combine(int left, int right);
+	}
+
+	public static class Add implements Operation {
+
+		@Override
+		public int apply(int value) {
+			return value + 1;
+		}
+
+		@Override
+		public int combine(int left, int right) {
+			return left + right;
+		}
+	}
+
+	public static class Multiply implements Operation {
+
+		@Override
+		public int apply(int value) {
+			return value * 3;
+		}
+
+		@Override
+		public int combine(int left, int right) {
+			return left * right;
+		}
+	}
+
+	public static class Negate implements Operation {
+
+		@Override
+		public int apply(int value) {
+			return -value;
+		}
+
+		@Override
+		public int combine(int left, int right) {
+			return left - right;
+		}
+	}
+
+	public static class Shift implements Operation {
+
+		@Override
+		public int apply(int value) {
+			return value << 1;
+		}
+
+		@Override
+		public int combine(int left, int right) {
+			return left << (right & 7);
+		}
+	}
+
+	private Object[][] args;
+	private int call;
+	private Method[] methods;
+	private Object[] targets;
+
+	@Benchmark
+	public Object methodDispatcher() throws Throwable {
+		int i = call++ & Integer.MAX_VALUE;
+		int m = i % methods.length;
+		return MethodDispatcher.invoke(methods[m], targets[(i >>> 1) % targets.length], args[m]);
+	}
+
+	@Benchmark
+	public Object reflection() throws Throwable {
+		int i = call++ & Integer.MAX_VALUE;
+		int m = i % methods.length;
+		try {
+			return methods[m].invoke(targets[(i >>> 1) % targets.length], args[m]);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+
+	@Test
+	public void run() throws RunnerException {
+		new Runner(new OptionsBuilder().include(MethodDispatcherBenchmark.class.getName()).build()).run();
+	}
+
+	@Setup
+	public void setUp() throws NoSuchMethodException {
+		methods = new Method[] { Operation.class.getMethod("apply", int.class), Operation.class.getMethod("combine", int.class, int.class),
+				Object.class.getMethod("hashCode") };
+		targets = new Object[] { new Add(), new Multiply(), new Negate(), new Shift() };
+		args = new Object[][] { { 7 }, { 5, 3 }, null };
+	}
+}
@@ -0,0 +1,103 @@
+package org.gammastrike.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+import org.junit.Test;
+
+public class MethodDispatcherTest {
+
+	public static class Target {
+
+		public static int twice(int value) {
+			return value * 2;
+		}
+
+		public String concat(String prefix, int value) {
+			return prefix + value;
+		}
+
+		public void fail(Throwable failure) throws Throwable {
+			throw failure;
+		}
+
+		@SuppressWarnings("unused")
+		private String hidden() {
+			return "hidden";
+		}
+
+		public void nothing() {
+		}
+	}
+
+	private static Method method(String name, Class<?>... parameterTypes) throws NoSuchMethodException {
+		return Target.class.getDeclaredMethod(name, parameterTypes);
+	}
+
+	@Test
+	public void invokesInstanceAndStaticMethods() throws Throwable {
+		assertEquals("a1", MethodDispatcher.invoke(method("concat", String.class, int.class), new Target(), new Object[] { "a", 1 }));
+		assertEquals(4, MethodDispatcher.invoke(method("twice", int.class), null, new Object[] { 2 }));
+		assertNull(MethodDispatcher.invoke(method("nothing"), new Target(), null));
+	}
+
+	@Test
+	public void rethrowsUnwrapped() throws Throwable {
+		IOException failure = new IOException();
+		try {
+			MethodDispatcher.invoke(method("fail", Throwable.class), new Target(), new Object[] { failure });
+			fail();
+		} catch (IOException e) {
+			assertSame(failure, e);
+		}
+	}
+
+	@Test
+	public void rejectsMismatchesLikeReflection() throws Throwable {
+		Method concat = method("concat", String.class, int.class);
+		assertIllegalArgument(concat, new Object(), new Object[] { "a", 1 });
+		assertIllegalArgument(concat, new Target(), new Object[] { "a" });
+		assertIllegalArgument(concat, new Target(), new Object[] { 1, 1 });
+		assertIllegalArgument(concat, new Target(), new Object[] { "a", null });
+		assertIllegalArgument(method("twice", int.class), null, new Object[] { "a" });
+		try {
+			MethodDispatcher.invoke(concat, null, new Object[] { "a", 1 });
+			fail();
+		} catch (NullPointerException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void doesNotWidenAccess() throws Throwable {
+		try {
+			MethodDispatcher.invoke(method("hidden"), new Target(), null);
+			fail();
+		} catch (IllegalAccessException e) {
+			// expected
+		}
+		Method hidden = method("hidden");
+		hidden.setAccessible(true);
+		assertEquals("hidden", MethodDispatcher.invoke(hidden, new Target(), null));
+		try {
+			MethodDispatcher.invoke(method("hidden"), new Target(), null);
+			fail();
+		} catch (IllegalAccessException e) {
+			// expected
+		}
+	}
+
+	private void assertIllegalArgument(Method method, Object target, Object[] args) throws Throwable {
+		try {
+			MethodDispatcher.invoke(method, target, args);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}